@@ -4,6 +4,7 @@ import chess.ChessGame;
 import chess.ChessMove;
 import chess.ChessPiece;
 import chess.ChessPosition;
+import chess.InvalidMoveException;
 import client.ServerFacade;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -11,6 +12,7 @@ import model.AuthData;
 import server.GameSummary;
 import websocket.WebSocketCommunicator;
 import websocket.commands.UserGameCommand;
+import websocket.messages.ServerMessage;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -293,10 +295,12 @@ public class Main {
         try {
             communicator = new WebSocketCommunicator("ws://localhost:8080/ws");
 
+            // Ask for just the moves after the first LOAD_GAME; the board is kept up to date here.
             UserGameCommand command = new UserGameCommand(
                     UserGameCommand.CommandType.CONNECT,
                     authData.authToken(),
-                    gameID
+                    gameID,
+                    true
             );
 
             communicator.sendCommand(command);
@@ -438,6 +442,47 @@ public class Main {
         }
     }
 
+    public static void handleMoveApplied(ServerMessage message) {
+        if (!applyMoveApplied(currentGame, message)) {
+            // Out of step with the server, e.g. after a missed message; fetch the whole game.
+            requestResync();
+            return;
+        }
+        drawBoard(whitePerspective);
+    }
+
+    /**
+     * Plays a MOVE_APPLIED message's move on the client's copy of the game.
+     *
+     * @return false if there is no game, the move does not apply, or the
+     * resulting position hash differs from the server's; the client should resync
+     */
+    static boolean applyMoveApplied(ChessGame game, ServerMessage message) {
+        if (game == null || message.getPositionHash() == null) {
+            return false;
+        }
+        try {
+            game.makeMove(message.getMove());
+        } catch (InvalidMoveException e) {
+            return false;
+        }
+        return game.getPositionHash() == message.getPositionHash();
+    }
+
+    private static void requestResync() {
+        try {
+            if (communicator != null && activeGameId != null) {
+                communicator.sendCommand(new UserGameCommand(
+                        UserGameCommand.CommandType.RESYNC,
+                        authData.authToken(),
+                        activeGameId
+                ));
+            }
+        } catch (Exception e) {
+            System.out.println("Resync failed: " + e.getMessage());
+        }
+    }
+
     public static void handleNotification(String message) {
         try {
             JsonObject json = GSON.fromJson(message, JsonObject.class);
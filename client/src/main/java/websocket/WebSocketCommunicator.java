@@ -44,6 +44,7 @@ public class WebSocketCommunicator {
 
         switch (serverMessage.getServerMessageType()) {
             case LOAD_GAME -> Main.handleLoadGame(message);
+            case MOVE_APPLIED -> Main.handleMoveApplied(serverMessage);
             case NOTIFICATION -> Main.handleNotification(message);
             case ERROR -> Main.handleError(message);
         }
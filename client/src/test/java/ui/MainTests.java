@@ -0,0 +1,43 @@
+package ui;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import org.junit.jupiter.api.Test;
+import websocket.messages.ServerMessage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MainTests {
+    private static final ChessMove E4 = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+
+    @Test
+    void matchingHashKeepsTheClientInStep() throws Exception {
+        ChessGame server = new ChessGame();
+        server.makeMove(E4);
+        ChessGame client = new ChessGame();
+
+        assertTrue(Main.applyMoveApplied(client,
+                ServerMessage.moveApplied(E4, server.getPositionHash(), ServerMessage.GameStatus.ACTIVE)));
+        assertEquals(server.toFen(), client.toFen());
+    }
+
+    @Test
+    void hashMismatchAsksForResync() {
+        // The client missed a move, so the server's position differs from its own.
+        ChessGame client = new ChessGame();
+        assertFalse(Main.applyMoveApplied(client,
+                ServerMessage.moveApplied(E4, 12345L, ServerMessage.GameStatus.ACTIVE)));
+    }
+
+    @Test
+    void moveThatDoesNotApplyAsksForResync() {
+        ChessMove illegal = new ChessMove(new ChessPosition(2, 5), new ChessPosition(5, 5), null);
+        ChessGame client = new ChessGame();
+
+        assertFalse(Main.applyMoveApplied(client,
+                ServerMessage.moveApplied(illegal, client.getPositionHash(), ServerMessage.GameStatus.ACTIVE)));
+        assertFalse(Main.applyMoveApplied(null,
+                ServerMessage.moveApplied(E4, 0L, ServerMessage.GameStatus.ACTIVE)));
+    }
+}
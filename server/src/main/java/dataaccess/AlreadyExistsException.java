@@ -0,0 +1,11 @@
+package dataaccess;
+
+/**
+ * Thrown when an insert collides with an existing row, e.g. two registrations
+ * racing for the same username.
+ */
+public class AlreadyExistsException extends DataAccessException {
+    public AlreadyExistsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,179 @@
+package dataaccess;
+
+import model.AuthData;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-through cache in front of another {@link DataAccess}.
+ * <p>
+ * Auth lookups are by far the most frequent query the server makes, and they
+ * almost always hit the same handful of live tokens. Results of {@link #getAuth}
+ * are kept for a short time-to-live, unknown tokens are cached as misses for a
+ * shorter one, and {@link #deleteAuth} / {@link #clear} invalidate immediately.
+ */
+public class CachingDataAccess extends ForwardingDataAccess {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(10);
+
+    private record CachedAuth(AuthData auth, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier clock;
+
+    private final Map<String, CachedAuth> auths;
+
+    // Bumped on every invalidation so that a load racing with a delete
+    // never re-populates the cache with the token it just lost.
+    private final AtomicLong invalidations;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    public CachingDataAccess(DataAccess delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    public CachingDataAccess(DataAccess delegate, int maxEntries, Duration ttl, Duration negativeTtl) {
+        this(delegate, maxEntries, ttl, negativeTtl, System::nanoTime);
+    }
+
+    CachingDataAccess(DataAccess delegate, int maxEntries, Duration ttl, Duration negativeTtl,
+                      LongSupplier clock) {
+        super(delegate);
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.clock = clock;
+        this.auths = new ConcurrentHashMap<>();
+        this.invalidations = new AtomicLong();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /*
+     * A view over a transaction's DataAccess that shares this cache, so auth
+     * changes made inside the transaction still invalidate it.
+     */
+    private CachingDataAccess(CachingDataAccess cache, DataAccess tx) {
+        super(tx);
+        this.maxEntries = cache.maxEntries;
+        this.ttlNanos = cache.ttlNanos;
+        this.negativeTtlNanos = cache.negativeTtlNanos;
+        this.clock = cache.clock;
+        this.auths = cache.auths;
+        this.invalidations = cache.invalidations;
+        this.hits = cache.hits;
+        this.misses = cache.misses;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return auths.size();
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        invalidateAll();
+        delegate.clear();
+        invalidateAll();
+    }
+
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        // Drop any cached miss for this token before it becomes valid.
+        invalidate(auth.authToken());
+        delegate.createAuth(auth);
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            return delegate.getAuth(null);
+        }
+
+        long now = clock.getAsLong();
+        CachedAuth cached = auths.get(authToken);
+        if (cached != null && !cached.isExpired(now)) {
+            hits.incrementAndGet();
+            return cached.auth();
+        }
+
+        misses.incrementAndGet();
+        long generation = invalidations.get();
+        AuthData auth = delegate.getAuth(authToken);
+
+        long ttl = (auth != null) ? ttlNanos : negativeTtlNanos;
+        if (ttl > 0) {
+            auths.put(authToken, new CachedAuth(auth, now + ttl));
+            if (invalidations.get() != generation) {
+                auths.remove(authToken);
+            }
+            evictIfFull(now);
+        }
+        return auth;
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        invalidate(authToken);
+        try {
+            delegate.deleteAuth(authToken);
+        } finally {
+            invalidate(authToken);
+        }
+    }
+
+    @Override
+    public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+        return delegate.inTransaction(tx -> work.run(new CachingDataAccess(this, tx)));
+    }
+
+    private void invalidate(String authToken) {
+        invalidations.incrementAndGet();
+        if (authToken != null) {
+            auths.remove(authToken);
+        }
+    }
+
+    private void invalidateAll() {
+        invalidations.incrementAndGet();
+        auths.clear();
+    }
+
+    private void evictIfFull(long now) {
+        if (auths.size() <= maxEntries) {
+            return;
+        }
+
+        auths.values().removeIf(entry -> entry.isExpired(now));
+
+        // Still over budget: shed arbitrary entries, they are cheap to reload.
+        var iterator = auths.keySet().iterator();
+        while (auths.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
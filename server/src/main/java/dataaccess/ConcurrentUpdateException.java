@@ -0,0 +1,11 @@
+package dataaccess;
+
+/**
+ * Thrown when an update was based on a version of a row that has since been
+ * changed by someone else. The caller should reload and try again.
+ */
+public class ConcurrentUpdateException extends DataAccessException {
+    public ConcurrentUpdateException(String message) {
+        super(message);
+    }
+}
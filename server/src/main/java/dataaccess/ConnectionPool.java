@@ -0,0 +1,192 @@
+package dataaccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps physical connections open between uses so that the driver's
+ * per-connection prepared statement cache actually gets reused.
+ * <p>
+ * Callers get a wrapper whose {@code close()} hands the connection back instead
+ * of closing it. JDBC does not expose the driver's statement cache, so the pool
+ * estimates its hit rate by replaying each connection's prepares through a
+ * model of it: least recently used first out, the same size, and SQL longer
+ * than {@link #STATEMENT_CACHE_SQL_LIMIT} never cached. The driver's real
+ * eviction may differ, so the numbers are an estimate, not a count.
+ */
+class ConnectionPool {
+
+    /**
+     * Opens a new physical connection.
+     */
+    @FunctionalInterface
+    interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Longest SQL the driver caches a statement for.
+     */
+    static final int STATEMENT_CACHE_SQL_LIMIT = 2048;
+
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 30_000;
+
+    private final class Pooled {
+        final Connection physical;
+        // Model of the driver's statement cache for this connection.
+        final Map<String, Boolean> modelledCache;
+        long returnedAt;
+
+        Pooled(Connection physical) {
+            this.physical = physical;
+            this.modelledCache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > statementCacheSize;
+                }
+            };
+        }
+    }
+
+    private final ConnectionFactory factory;
+    private final int statementCacheSize;
+    private final long borrowTimeoutMillis;
+    private final Semaphore permits;
+    private final BlockingDeque<Pooled> idle;
+    private final AtomicInteger open;
+    private final AtomicLong estimatedHits;
+    private final AtomicLong estimatedMisses;
+
+    ConnectionPool(ConnectionFactory factory, int maxSize, int statementCacheSize, long borrowTimeoutMillis) {
+        this.factory = factory;
+        this.statementCacheSize = statementCacheSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+        this.idle = new LinkedBlockingDeque<>();
+        this.open = new AtomicInteger();
+        this.estimatedHits = new AtomicLong();
+        this.estimatedMisses = new AtomicLong();
+    }
+
+    Connection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection");
+        }
+
+        try {
+            return wrap(takeUsable());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    DatabaseManager.PoolStats stats() {
+        long hits = estimatedHits.get();
+        long misses = estimatedMisses.get();
+        long total = hits + misses;
+        double hitRate = (total == 0) ? 0.0 : (double) hits / total;
+        return new DatabaseManager.PoolStats(open.get(), idle.size(), hits, misses, hitRate);
+    }
+
+    private Pooled takeUsable() throws SQLException {
+        Pooled pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            boolean stale = System.currentTimeMillis() - pooled.returnedAt > VALIDATE_AFTER_IDLE_MILLIS;
+            if (!stale || pooled.physical.isValid(2)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+
+        Pooled fresh = new Pooled(factory.open());
+        open.incrementAndGet();
+        return fresh;
+    }
+
+    private void giveBack(Pooled pooled) {
+        try {
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.returnedAt = System.currentTimeMillis();
+            // Most recently used first: keeps the hottest connections warm.
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(Pooled pooled) {
+        open.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+            // already unusable
+        }
+    }
+
+    private Connection wrap(Pooled pooled) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (!closed) {
+                            closed = true;
+                            giveBack(pooled);
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return closed || pooled.physical.isClosed();
+                    }
+                    case "prepareStatement" -> estimateCacheHit(pooled, (String) args[0]);
+                    default -> { }
+                }
+
+                if (closed) {
+                    throw new SQLException("Connection has been returned to the pool");
+                }
+                try {
+                    return method.invoke(pooled.physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, handler);
+    }
+
+    private void estimateCacheHit(Pooled pooled, String sql) {
+        if (sql.length() <= STATEMENT_CACHE_SQL_LIMIT && pooled.modelledCache.put(sql, Boolean.TRUE) != null) {
+            estimatedHits.incrementAndGet();
+        } else {
+            estimatedMisses.incrementAndGet();
+        }
+    }
+}
@@ -4,7 +4,11 @@ import model.AuthData;
 import model.GameData;
 import model.UserData;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface DataAccess {
 
@@ -17,9 +21,91 @@ public interface DataAccess {
     AuthData getAuth(String authToken) throws DataAccessException;
     void deleteAuth(String authToken) throws DataAccessException;
 
+    /**
+     * Records that the token with {@code tokenId} was revoked. The record is
+     * only needed until {@code expiresAt} (epoch millis), after which the token
+     * is refused anyway, so backends may drop it from then on.
+     */
+    void addRevokedToken(String tokenId, long expiresAt) throws DataAccessException;
+
+    /**
+     * @return revoked token IDs that expire after {@code now}, with when they expire
+     */
+    Map<String, Long> getRevokedTokens(long now) throws DataAccessException;
+
+    /**
+     * Revokes every token issued before {@code notBefore} (epoch millis). The
+     * epoch only moves forward; an earlier one than the stored epoch is ignored.
+     */
+    void setTokenEpoch(long notBefore) throws DataAccessException;
+
+    /**
+     * @return the token epoch, or 0 if it was never set or has been cleared
+     */
+    long getTokenEpoch() throws DataAccessException;
+
     int createGame(String gameName) throws DataAccessException;
     GameData getGame(int gameID) throws DataAccessException;
+    /**
+     * Lists live games. Games moved out by {@link #archiveFinishedGames} are
+     * left out, though {@link #getGame} still finds them.
+     */
     Collection<GameData> listGames() throws DataAccessException;
+
+    /**
+     * Stores complete games, for bulk imports. Backends that can batch writes do,
+     * instead of creating and then updating each game.
+     *
+     * @return the new game IDs, in the same order as {@code games}
+     */
+    default List<Integer> importGames(List<GameData> games) throws DataAccessException {
+        List<Integer> gameIDs = new ArrayList<>(games.size());
+        for (GameData game : games) {
+            int gameID = createGame(game.gameName());
+            // A game that was just created is still at version 0.
+            updateGame(new GameData(gameID, game.whiteUsername(), game.blackUsername(), game.gameName(),
+                    game.game(), 0));
+            gameIDs.add(gameID);
+        }
+        return gameIDs;
+    }
+
+    /**
+     * Hands every game, live and archived, to {@code visitor} one at a time.
+     * Backends that can read games incrementally do so, so exporting does not
+     * need all games in memory at once.
+     */
+    default <E extends Exception> void streamGames(GameVisitor<E> visitor) throws DataAccessException, E {
+        for (GameData game : listGames()) {
+            visitor.visit(game);
+        }
+    }
+
+    /**
+     * Stores {@code game} if the stored copy still has {@code game.version()},
+     * bumping the stored version by one.
+     *
+     * @throws ConcurrentUpdateException if the game was updated since it was read
+     */
     void updateGame(GameData game) throws DataAccessException;
+
+    /**
+     * Moves up to {@code limit} games that finished more than {@code gracePeriod}
+     * ago out of the live set, so listing and scanning live games stays cheap.
+     *
+     * @return how many games were archived; backends without an archive return 0
+     */
+    default int archiveFinishedGames(Duration gracePeriod, int limit) throws DataAccessException {
+        return 0;
+    }
+
+    /**
+     * Runs {@code work} as one unit of work: on a single connection and inside a
+     * single transaction when the backend supports it, rolled back if the work
+     * throws. Backends without transactions simply run the work against themselves.
+     */
+    default <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+        return work.run(this);
+    }
 }
 
@@ -8,6 +8,14 @@ public class DatabaseManager {
     private static String dbUsername;
     private static String dbPassword;
     private static String connectionUrl;
+    private static ConnectionPool pool;
+
+    /**
+     * Pool occupancy and an estimate of how often a prepared statement was
+     * already cached on the connection it was prepared on; see {@link ConnectionPool}.
+     */
+    public record PoolStats(int open, int idle, long estimatedStatementCacheHits,
+                            long estimatedStatementCacheMisses, double estimatedStatementCacheHitRate) { }
 
     /*
      * Load the database information for the db.properties file.
@@ -33,6 +41,7 @@ public class DatabaseManager {
      * Create a connection to the database and sets the catalog based upon the
      * properties specified in db.properties. Connections to the database should
      * be short-lived, and you must close the connection when you are done with it.
+     * Connections come from a pool, and closing one returns it there.
      * The easiest way to do that is with a try-with-resource block.
      * <br/>
      * <code>
@@ -44,14 +53,16 @@ public class DatabaseManager {
     static Connection getConnection() throws DataAccessException {
         try {
             //do not wrap the following line with a try-with-resources
-            var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
-            conn.setCatalog(databaseName);
-            return conn;
+            return pool.borrow();
         } catch (SQLException ex) {
             throw new DataAccessException("failed to get connection", ex);
         }
     }
 
+    public static PoolStats getPoolStats() {
+        return pool.stats();
+    }
+
     private static void loadPropertiesFromResources() {
         try (var propStream = Thread.currentThread().getContextClassLoader().getResourceAsStream("db.properties")) {
             if (propStream == null) {
@@ -72,6 +83,20 @@ public class DatabaseManager {
 
         var host = props.getProperty("db.host");
         var port = Integer.parseInt(props.getProperty("db.port"));
-        connectionUrl = String.format("jdbc:mysql://%s:%d", host, port);
+        var statementCacheSize = Integer.parseInt(props.getProperty("db.statementCacheSize", "64"));
+        var poolSize = Integer.parseInt(props.getProperty("db.poolSize", "10"));
+
+        // Server-side prepares, cached per connection, so each pooled connection
+        // parses a query once instead of on every call. Batches go out as multi-row statements.
+        connectionUrl = String.format(
+                "jdbc:mysql://%s:%d?useServerPrepStmts=true&cachePrepStmts=true"
+                        + "&prepStmtCacheSize=%d&prepStmtCacheSqlLimit=%d&rewriteBatchedStatements=true",
+                host, port, statementCacheSize, ConnectionPool.STATEMENT_CACHE_SQL_LIMIT);
+
+        pool = new ConnectionPool(() -> {
+            var conn = DriverManager.getConnection(connectionUrl, dbUsername, dbPassword);
+            conn.setCatalog(databaseName);
+            return conn;
+        }, poolSize, statementCacheSize, 10_000);
     }
 }
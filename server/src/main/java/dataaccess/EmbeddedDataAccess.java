@@ -0,0 +1,751 @@
+package dataaccess;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persists everything to a local directory without any database server.
+ * <p>
+ * Every change is appended to {@code data.log} as a checksummed record. Users,
+ * auth tokens and token revocations are replayed into memory on startup; games stay on disk and
+ * are found through a memory-mapped {@link GameIndex}. A torn or corrupt tail
+ * left by a crash is detected by its checksum and cut off during recovery.
+ * After an orderly close the index is reused, so reopening only checksums the
+ * game records instead of decoding each one; after a crash it is rebuilt.
+ * <p>
+ * Appends reach the OS immediately but are only fsynced by a background
+ * flusher every {@code syncIntervalMillis} (0 syncs every write), so a crash
+ * can lose at most that window. The same thread compacts the log once
+ * superseded records outweigh live ones. Each record is atomic on its own;
+ * {@link #inTransaction} gives isolation but not multi-record crash atomicity.
+ */
+public class EmbeddedDataAccess implements DataAccess, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedDataAccess.class);
+    private static final byte[] MAGIC = "CHESSLOG".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = MAGIC.length + 4;
+    private static final int RECORD_HEADER_BYTES = 9;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    private static final byte USER = 1;
+    private static final byte AUTH = 2;
+    private static final byte DELETE_AUTH = 3;
+    private static final byte GAME = 4;
+    private static final byte REVOKE_TOKEN = 5;
+    private static final byte TOKEN_EPOCH = 6;
+
+    private static final Gson GSON = LegacyGameAdapter.gson();
+    private static final String EPOCH_KEY = "epoch";
+
+    private record RevokedToken(String tokenId, long expiresAt) { }
+
+    private final Path directory;
+    private final Path logFile;
+    private final long syncIntervalMillis;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+
+    private final Map<String, UserData> users = new ConcurrentHashMap<>();
+    private final Map<String, AuthData> auths = new ConcurrentHashMap<>();
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final Map<String, Integer> recordSizes = new ConcurrentHashMap<>();
+    private final GameIndex index;
+    private final AtomicLong maintenanceFailures = new AtomicLong();
+
+    private FileChannel log;
+    private long logSize;
+    // Offset of the newest record, or 0 while the log has none.
+    private long lastRecordOffset;
+    private long garbageBytes;
+    private volatile long tokenEpoch;
+    private int nextGameID = 1;
+    private boolean dirty;
+    private boolean indexReused;
+
+    public EmbeddedDataAccess(Path directory, long syncIntervalMillis) throws DataAccessException {
+        this.directory = directory;
+        this.logFile = directory.resolve("data.log");
+        this.syncIntervalMillis = syncIntervalMillis;
+
+        try {
+            Files.createDirectories(directory);
+            this.index = new GameIndex(directory.resolve("games.idx"));
+            this.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to open embedded store: " + e.getMessage(), e);
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "embedded-store-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(syncIntervalMillis, 50);
+        flusher.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            log.truncate(FILE_HEADER_BYTES);
+            log.force(true);
+            logSize = FILE_HEADER_BYTES;
+            garbageBytes = 0;
+            users.clear();
+            auths.clear();
+            revokedTokens.clear();
+            recordSizes.clear();
+            index.clear();
+            lastRecordOffset = 0;
+            tokenEpoch = 0;
+            nextGameID = 1;
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to clear embedded store: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            if (users.containsKey(user.username())) {
+                throw new AlreadyExistsException("User already exists");
+            }
+            int size = append(USER, GSON.toJson(user));
+            recordSizes.put(userKey(user.username()), size);
+            users.put(user.username(), user);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public UserData getUser(String username) {
+        return username == null ? null : users.get(username);
+    }
+
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            int size = append(AUTH, GSON.toJson(auth));
+            Integer previous = recordSizes.put(authKey(auth.authToken()), size);
+            if (previous != null) {
+                garbageBytes += previous;
+            }
+            auths.put(auth.authToken(), auth);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) {
+        return authToken == null ? null : auths.get(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!auths.containsKey(authToken)) {
+                return;
+            }
+            int size = append(DELETE_AUTH, GSON.toJson(authToken));
+            auths.remove(authToken);
+            Integer previous = recordSizes.remove(authKey(authToken));
+            garbageBytes += size + (previous == null ? 0 : previous);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addRevokedToken(String tokenId, long expiresAt) throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (var entry : revokedTokens.entrySet()) {
+                if (entry.getValue() <= now) {
+                    revokedTokens.remove(entry.getKey());
+                    Integer size = recordSizes.remove(revokedKey(entry.getKey()));
+                    garbageBytes += size == null ? 0 : size;
+                }
+            }
+
+            int size = append(REVOKE_TOKEN, GSON.toJson(new RevokedToken(tokenId, expiresAt)));
+            Integer previous = recordSizes.put(revokedKey(tokenId), size);
+            if (previous != null) {
+                garbageBytes += previous;
+            }
+            revokedTokens.put(tokenId, expiresAt);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens(long now) {
+        Map<String, Long> live = new HashMap<>();
+        revokedTokens.forEach((tokenId, expiresAt) -> {
+            if (expiresAt > now) {
+                live.put(tokenId, expiresAt);
+            }
+        });
+        return live;
+    }
+
+    @Override
+    public void setTokenEpoch(long notBefore) throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            if (notBefore <= tokenEpoch) {
+                return;
+            }
+            int size = append(TOKEN_EPOCH, GSON.toJson(notBefore));
+            Integer previous = recordSizes.put(EPOCH_KEY, size);
+            if (previous != null) {
+                garbageBytes += previous;
+            }
+            tokenEpoch = notBefore;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getTokenEpoch() {
+        return tokenEpoch;
+    }
+
+    @Override
+    public int createGame(String gameName) throws DataAccessException {
+        if (gameName == null) {
+            throw new DataAccessException("Unable to create game: name is required");
+        }
+
+        lock.writeLock().lock();
+        try {
+            int id = nextGameID;
+            writeGame(new GameData(id, null, null, gameName, new ChessGame(), 0));
+            nextGameID = id + 1;
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            GameIndex.Slot slot = index.get(gameID);
+            return slot == null ? null : readGame(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        lock.readLock().lock();
+        try {
+            Collection<GameData> games = new ArrayList<>();
+            for (int id = 1; id < nextGameID; id++) {
+                GameIndex.Slot slot = index.get(id);
+                if (slot != null) {
+                    games.add(readGame(slot));
+                }
+            }
+            return games;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        if (game == null || game.game() == null || game.gameID() <= 0) {
+            throw new DataAccessException("Invalid game");
+        }
+
+        lock.writeLock().lock();
+        try {
+            GameIndex.Slot current = index.get(game.gameID());
+            if (current == null) {
+                throw new DataAccessException("Game not found");
+            }
+            if (current.version() != game.version()) {
+                throw new ConcurrentUpdateException("Game was modified concurrently");
+            }
+
+            writeGame(new GameData(game.gameID(), game.whiteUsername(), game.blackUsername(),
+                    game.gameName(), game.game(), game.version() + 1));
+            garbageBytes += current.length();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Holds the write lock for the whole unit of work, so no other writer can
+     * interleave with it. Records are still written one at a time.
+     */
+    @Override
+    public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+        lock.writeLock().lock();
+        try {
+            return work.run(this);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live records and swaps it in atomically.
+     */
+    public void compact() throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            Path compacted = directory.resolve("data.log.compact");
+            Map<Integer, GameIndex.Slot> moved = new HashMap<>();
+            Map<String, Integer> sizes = new HashMap<>();
+            long size;
+            long compactedLast;
+
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFileHeader(out);
+                size = FILE_HEADER_BYTES;
+                long last = 0;
+
+                for (UserData user : users.values()) {
+                    int written = writeRecord(out, size, USER, GSON.toJson(user).getBytes(StandardCharsets.UTF_8));
+                    sizes.put(userKey(user.username()), written);
+                    last = size;
+                    size += written;
+                }
+                for (AuthData auth : auths.values()) {
+                    int written = writeRecord(out, size, AUTH, GSON.toJson(auth).getBytes(StandardCharsets.UTF_8));
+                    sizes.put(authKey(auth.authToken()), written);
+                    last = size;
+                    size += written;
+                }
+                long now = System.currentTimeMillis();
+                for (var entry : revokedTokens.entrySet()) {
+                    if (entry.getValue() <= now) {
+                        continue;
+                    }
+                    String json = GSON.toJson(new RevokedToken(entry.getKey(), entry.getValue()));
+                    int written = writeRecord(out, size, REVOKE_TOKEN, json.getBytes(StandardCharsets.UTF_8));
+                    sizes.put(revokedKey(entry.getKey()), written);
+                    last = size;
+                    size += written;
+                }
+                if (tokenEpoch > 0) {
+                    int written = writeRecord(out, size, TOKEN_EPOCH,
+                            GSON.toJson(tokenEpoch).getBytes(StandardCharsets.UTF_8));
+                    sizes.put(EPOCH_KEY, written);
+                    last = size;
+                    size += written;
+                }
+                for (int id = 1; id < nextGameID; id++) {
+                    GameIndex.Slot slot = index.get(id);
+                    if (slot == null) {
+                        continue;
+                    }
+                    ByteBuffer record = readFully(log, slot.offset(), slot.length());
+                    writeFully(out, size, record);
+                    moved.put(id, new GameIndex.Slot(size, slot.length(), slot.version()));
+                    last = size;
+                    size += slot.length();
+                }
+                out.force(true);
+                compactedLast = last;
+            }
+
+            log.close();
+            try {
+                Files.move(compacted, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                syncDirectory();
+            } finally {
+                // Either way logFile is a complete log; reopen whichever one it is.
+                log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            for (var entry : moved.entrySet()) {
+                index.put(entry.getKey(), entry.getValue());
+            }
+            recordSizes.clear();
+            recordSizes.putAll(sizes);
+            logSize = size;
+            lastRecordOffset = compactedLast;
+            garbageBytes = 0;
+            dirty = false;
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to compact embedded store: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many background syncs or compactions failed; unsynced writes stay dirty and are retried
+     */
+    public long getMaintenanceFailureCount() {
+        return maintenanceFailures.get();
+    }
+
+    /**
+     * @return whether opening reused the index left by an orderly close instead of rebuilding it
+     */
+    boolean reusedIndex() {
+        return indexReused;
+    }
+
+    public long getLogSize() {
+        lock.readLock().lock();
+        try {
+            return logSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws DataAccessException {
+        flusher.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            log.force(true);
+            int checksum = (lastRecordOffset == 0) ? 0 : readFully(log, lastRecordOffset + 4, 4).getInt();
+            index.markClean(new GameIndex.Stamp(lastRecordOffset, checksum));
+            log.close();
+            index.close();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to close embedded store: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        GameIndex.Stamp stamp = index.stamp();
+        // Until the next orderly close, the index may run ahead of what reached the log.
+        index.markDirty();
+
+        if (log.size() < FILE_HEADER_BYTES) {
+            index.clear();
+            log.truncate(0);
+            writeFileHeader(log);
+            log.force(true);
+            logSize = FILE_HEADER_BYTES;
+            return;
+        }
+
+        ByteBuffer header = readFully(log, 0, FILE_HEADER_BYTES);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || header.getInt() != FORMAT_VERSION) {
+            throw new IOException(logFile + " is not a chess data log");
+        }
+
+        long covered = coveredBy(stamp);
+        long position = scan(covered);
+        if (covered >= 0 && position < covered) {
+            // Stale or unstamped index, or the log lost records it points at: rebuild from scratch.
+            users.clear();
+            auths.clear();
+            revokedTokens.clear();
+            recordSizes.clear();
+            garbageBytes = 0;
+            tokenEpoch = 0;
+            nextGameID = 1;
+            covered = -1;
+            position = scan(covered);
+        }
+        indexReused = covered >= 0;
+
+        long end = log.size();
+        if (position < end) {
+            // Everything after the last intact record is a torn write.
+            log.truncate(position);
+            log.force(true);
+        }
+        logSize = position;
+    }
+
+    /*
+     * Replays intact records until the first torn or corrupt one and returns
+     * its position. Game records ending at or before covered are already in
+     * the index, so they are only checksummed.
+     */
+    private long scan(long covered) throws IOException {
+        Set<Long> live = new HashSet<>();
+        if (covered < 0) {
+            index.clear();
+        } else {
+            int highest = index.highestGameID();
+            for (int id = 1; id <= highest; id++) {
+                GameIndex.Slot slot = index.get(id);
+                if (slot != null) {
+                    live.add(slot.offset());
+                }
+            }
+            nextGameID = highest + 1;
+        }
+
+        long position = FILE_HEADER_BYTES;
+        long end = log.size();
+        lastRecordOffset = 0;
+        while (position + RECORD_HEADER_BYTES <= end) {
+            ByteBuffer recordHeader = readFully(log, position, RECORD_HEADER_BYTES);
+            int payloadLength = recordHeader.getInt();
+            int checksum = recordHeader.getInt();
+            byte type = recordHeader.get();
+
+            if (payloadLength < 0 || payloadLength > MAX_RECORD_BYTES
+                    || position + RECORD_HEADER_BYTES + payloadLength > end) {
+                break;
+            }
+
+            byte[] payload = new byte[payloadLength];
+            readFully(log, position + RECORD_HEADER_BYTES, payloadLength).get(payload);
+            if (checksum(type, payload) != checksum) {
+                break;
+            }
+
+            int size = RECORD_HEADER_BYTES + payloadLength;
+            if (type == GAME && position + size <= covered) {
+                if (!live.contains(position)) {
+                    garbageBytes += size;
+                }
+            } else {
+                replay(type, payload, position, size);
+            }
+            lastRecordOffset = position;
+            position += size;
+        }
+        return position;
+    }
+
+    /*
+     * @return where the last record the stamp covers ends, or -1 if the log
+     * has no such record, which means the index does not belong to this log
+     */
+    private long coveredBy(GameIndex.Stamp stamp) throws IOException {
+        if (stamp == null) {
+            return -1;
+        }
+        if (stamp.lastRecordOffset() == 0) {
+            return FILE_HEADER_BYTES;
+        }
+        if (stamp.lastRecordOffset() < FILE_HEADER_BYTES
+                || stamp.lastRecordOffset() + RECORD_HEADER_BYTES > log.size()) {
+            return -1;
+        }
+        ByteBuffer recordHeader = readFully(log, stamp.lastRecordOffset(), RECORD_HEADER_BYTES);
+        int payloadLength = recordHeader.getInt();
+        if (recordHeader.getInt() != stamp.checksum() || payloadLength < 0 || payloadLength > MAX_RECORD_BYTES) {
+            return -1;
+        }
+        return stamp.lastRecordOffset() + RECORD_HEADER_BYTES + payloadLength;
+    }
+
+    private void replay(byte type, byte[] payload, long offset, int size) throws IOException {
+        String json = new String(payload, StandardCharsets.UTF_8);
+        switch (type) {
+            case USER -> {
+                UserData user = GSON.fromJson(json, UserData.class);
+                users.put(user.username(), user);
+                recordSizes.put(userKey(user.username()), size);
+            }
+            case AUTH -> {
+                AuthData auth = GSON.fromJson(json, AuthData.class);
+                auths.put(auth.authToken(), auth);
+                Integer previous = recordSizes.put(authKey(auth.authToken()), size);
+                garbageBytes += previous == null ? 0 : previous;
+            }
+            case DELETE_AUTH -> {
+                String token = GSON.fromJson(json, String.class);
+                auths.remove(token);
+                Integer previous = recordSizes.remove(authKey(token));
+                garbageBytes += size + (previous == null ? 0 : previous);
+            }
+            case REVOKE_TOKEN -> {
+                RevokedToken revoked = GSON.fromJson(json, RevokedToken.class);
+                revokedTokens.put(revoked.tokenId(), revoked.expiresAt());
+                Integer previous = recordSizes.put(revokedKey(revoked.tokenId()), size);
+                garbageBytes += previous == null ? 0 : previous;
+            }
+            case TOKEN_EPOCH -> {
+                tokenEpoch = Math.max(tokenEpoch, GSON.fromJson(json, Long.class));
+                Integer previous = recordSizes.put(EPOCH_KEY, size);
+                garbageBytes += previous == null ? 0 : previous;
+            }
+            case GAME -> {
+                GameData game = GSON.fromJson(json, GameData.class);
+                GameIndex.Slot previous = index.get(game.gameID());
+                if (previous != null) {
+                    garbageBytes += previous.length();
+                }
+                index.put(game.gameID(), new GameIndex.Slot(offset, size, game.version()));
+                nextGameID = Math.max(nextGameID, game.gameID() + 1);
+            }
+            default -> throw new IOException("Unknown record type " + type + " at offset " + offset);
+        }
+    }
+
+    // Caller holds the write lock.
+    private void writeGame(GameData game) throws DataAccessException {
+        long offset = logSize;
+        int size = append(GAME, GSON.toJson(game));
+        try {
+            index.put(game.gameID(), new GameIndex.Slot(offset, size, game.version()));
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to index game: " + e.getMessage(), e);
+        }
+    }
+
+    private GameData readGame(GameIndex.Slot slot) throws DataAccessException {
+        try {
+            ByteBuffer record = readFully(log, slot.offset() + RECORD_HEADER_BYTES,
+                    slot.length() - RECORD_HEADER_BYTES);
+            return GSON.fromJson(StandardCharsets.UTF_8.decode(record).toString(), GameData.class);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read game: " + e.getMessage(), e);
+        }
+    }
+
+    // Caller holds the write lock.
+    private int append(byte type, String json) throws DataAccessException {
+        try {
+            int size = writeRecord(log, logSize, type, json.getBytes(StandardCharsets.UTF_8));
+            lastRecordOffset = logSize;
+            logSize += size;
+            if (syncIntervalMillis <= 0) {
+                log.force(false);
+            } else {
+                dirty = true;
+            }
+            return size;
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to write to embedded store: " + e.getMessage(), e);
+        }
+    }
+
+    private void maintain() {
+        lock.writeLock().lock();
+        try {
+            if (dirty) {
+                log.force(false);
+                dirty = false;
+            }
+            if (logSize > MIN_COMPACT_BYTES && garbageBytes > logSize / 2) {
+                compact();
+            }
+        } catch (IOException | DataAccessException | RuntimeException e) {
+            // Letting it escape would cancel every later sync.
+            maintenanceFailures.incrementAndGet();
+            LOG.warn("Embedded store maintenance failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ignored) {
+            // Not every platform can open a directory; the rename is still atomic.
+        }
+    }
+
+    private static void writeFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        header.put(MAGIC).putInt(FORMAT_VERSION).flip();
+        writeFully(channel, 0, header);
+    }
+
+    private static int writeRecord(FileChannel channel, long position, byte type, byte[] payload)
+            throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt(checksum(type, payload)).put(type).put(payload).flip();
+        writeFully(channel, position, record);
+        return RECORD_HEADER_BYTES + payload.length;
+    }
+
+    private static void writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of log at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static String userKey(String username) {
+        return "u:" + username;
+    }
+
+    private static String authKey(String authToken) {
+        return "a:" + authToken;
+    }
+
+    private static String revokedKey(String tokenId) {
+        return "r:" + tokenId;
+    }
+}
@@ -0,0 +1,120 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base for decorators: passes every call through to the wrapped
+ * {@link DataAccess}, so subclasses only override what they change.
+ */
+public abstract class ForwardingDataAccess implements DataAccess, AutoCloseable {
+
+    protected final DataAccess delegate;
+
+    protected ForwardingDataAccess(DataAccess delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        delegate.clear();
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        delegate.createUser(user);
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return delegate.getUser(username);
+    }
+
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        delegate.createAuth(auth);
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return delegate.getAuth(authToken);
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        delegate.deleteAuth(authToken);
+    }
+
+    @Override
+    public void addRevokedToken(String tokenId, long expiresAt) throws DataAccessException {
+        delegate.addRevokedToken(tokenId, expiresAt);
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens(long now) throws DataAccessException {
+        return delegate.getRevokedTokens(now);
+    }
+
+    @Override
+    public void setTokenEpoch(long notBefore) throws DataAccessException {
+        delegate.setTokenEpoch(notBefore);
+    }
+
+    @Override
+    public long getTokenEpoch() throws DataAccessException {
+        return delegate.getTokenEpoch();
+    }
+
+    @Override
+    public int createGame(String gameName) throws DataAccessException {
+        return delegate.createGame(gameName);
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return delegate.getGame(gameID);
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        return delegate.listGames();
+    }
+
+    @Override
+    public List<Integer> importGames(List<GameData> games) throws DataAccessException {
+        return delegate.importGames(games);
+    }
+
+    @Override
+    public <E extends Exception> void streamGames(GameVisitor<E> visitor) throws DataAccessException, E {
+        delegate.streamGames(visitor);
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        delegate.updateGame(game);
+    }
+
+    @Override
+    public int archiveFinishedGames(Duration gracePeriod, int limit) throws DataAccessException {
+        return delegate.archiveFinishedGames(gracePeriod, limit);
+    }
+
+    @Override
+    public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+        return delegate.inTransaction(work);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
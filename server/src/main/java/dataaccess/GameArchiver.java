@@ -0,0 +1,92 @@
+package dataaccess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically moves finished games out of the live set with
+ * {@link DataAccess#archiveFinishedGames}, a batch at a time so no single
+ * transaction holds locks on many rows.
+ */
+public class GameArchiver implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(GameArchiver.class);
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(1);
+    public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofMinutes(10);
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final DataAccess dataAccess;
+    private final Duration gracePeriod;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong archived;
+    private final AtomicLong failures;
+
+    /**
+     * @param gracePeriod how long a game stays live after it finishes, so players
+     *                    can still look at the final position
+     */
+    public GameArchiver(DataAccess dataAccess, Duration interval, Duration gracePeriod, int batchSize) {
+        this.dataAccess = dataAccess;
+        this.gracePeriod = gracePeriod;
+        this.batchSize = batchSize;
+        this.archived = new AtomicLong();
+        this.failures = new AtomicLong();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "game-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::runQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Archives every eligible game now.
+     *
+     * @return how many games were archived
+     */
+    public int runOnce() throws DataAccessException {
+        int total = 0;
+        int moved;
+        do {
+            moved = dataAccess.archiveFinishedGames(gracePeriod, batchSize);
+            total += moved;
+        } while (moved == batchSize);
+
+        archived.addAndGet(total);
+        return total;
+    }
+
+    public long getArchivedCount() {
+        return archived.get();
+    }
+
+    /**
+     * @return how many scheduled runs failed; the games they missed are picked up by the next run
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void runQuietly() {
+        try {
+            runOnce();
+        } catch (DataAccessException | RuntimeException e) {
+            // Letting it escape would cancel every later run.
+            failures.incrementAndGet();
+            LOG.warn("Archiving finished games failed", e);
+        }
+    }
+}
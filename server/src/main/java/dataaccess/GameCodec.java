@@ -0,0 +1,72 @@
+package dataaccess;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Turns a {@link ChessGame} into the bytes stored in binary columns and back.
+ * <p>
+ * The first byte names the format so the encoding can change without a data
+ * migration; today it is the game's JSON, deflated. A board's JSON is mostly
+ * repeated piece names and nulls, so it shrinks to a fraction of its size.
+ */
+final class GameCodec {
+    private static final byte FORMAT_DEFLATED_JSON = 1;
+    private static final Gson GSON = LegacyGameAdapter.gson();
+
+    private GameCodec() {
+    }
+
+    static byte[] encode(ChessGame game) {
+        byte[] json = GSON.toJson(game).getBytes(StandardCharsets.UTF_8);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(json);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 16);
+            out.write(FORMAT_DEFLATED_JSON);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static ChessGame decode(byte[] bytes) throws DataAccessException {
+        if (bytes == null || bytes.length == 0 || bytes[0] != FORMAT_DEFLATED_JSON) {
+            throw new DataAccessException("Unknown game encoding");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataAccessException("Truncated game data");
+                }
+                out.write(buffer, 0, length);
+            }
+            return GSON.fromJson(out.toString(StandardCharsets.UTF_8), ChessGame.class);
+        } catch (DataFormatException e) {
+            throw new DataAccessException("Corrupt game data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dataaccess;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped table from game ID to where the game's latest record sits in
+ * the log. Each slot holds the record offset, its length and the game version,
+ * so version checks and lookups never touch the heap or the log itself.
+ * <p>
+ * Game IDs start at 1, so slot 0 holds a stamp instead: the offset and checksum
+ * of the last log record the index covers. It is written only by
+ * {@link #markClean} on an orderly close and wiped by {@link #markDirty} on
+ * open, so after a crash the stamp is gone and the index is rebuilt from the
+ * log. Not thread-safe; {@link EmbeddedDataAccess} guards it.
+ */
+class GameIndex implements AutoCloseable {
+    private static final int SLOT_BYTES = 16;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int CLEAN = 0x1DC1EA11;
+
+    record Slot(long offset, int length, int version) { }
+
+    /**
+     * The last record the index covers: its offset, or 0 for an empty log, and its checksum.
+     */
+    record Stamp(long lastRecordOffset, int checksum) { }
+
+    private final FileChannel channel;
+    private MappedByteBuffer slots;
+    private int capacity;
+
+    GameIndex(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        map((int) Math.max(INITIAL_SLOTS, channel.size() / SLOT_BYTES));
+    }
+
+    /**
+     * @return the stamp left by the last orderly close, or null if there was none
+     */
+    Stamp stamp() {
+        if (slots.getInt(12) != CLEAN) {
+            return null;
+        }
+        return new Stamp(slots.getLong(0), slots.getInt(8));
+    }
+
+    /**
+     * Records that the index matches the log up to and including the given
+     * record, once every slot has reached the disk.
+     */
+    void markClean(Stamp stamp) {
+        slots.force();
+        slots.putLong(0, stamp.lastRecordOffset());
+        slots.putInt(8, stamp.checksum());
+        slots.putInt(12, CLEAN);
+        slots.force();
+    }
+
+    void markDirty() {
+        slots.putLong(0, 0L);
+        slots.putLong(8, 0L);
+        slots.force();
+    }
+
+    Slot get(int gameID) {
+        if (gameID <= 0 || gameID >= capacity) {
+            return null;
+        }
+        int base = gameID * SLOT_BYTES;
+        long offset = slots.getLong(base);
+        if (offset == 0) {
+            return null;
+        }
+        return new Slot(offset, slots.getInt(base + 8), slots.getInt(base + 12));
+    }
+
+    void put(int gameID, Slot slot) throws IOException {
+        if (gameID >= capacity) {
+            map(Math.max(capacity * 2, gameID + 1));
+        }
+        int base = gameID * SLOT_BYTES;
+        slots.putLong(base, slot.offset());
+        slots.putInt(base + 8, slot.length());
+        slots.putInt(base + 12, slot.version());
+    }
+
+    /**
+     * @return the highest ID with a game, or 0 if there are none
+     */
+    int highestGameID() {
+        for (int id = capacity - 1; id > 0; id--) {
+            if (slots.getLong(id * SLOT_BYTES) != 0) {
+                return id;
+            }
+        }
+        return 0;
+    }
+
+    void clear() {
+        // Zero in place; truncating a file that is still mapped is not safe.
+        for (int base = 0; base < capacity * SLOT_BYTES; base += 8) {
+            slots.putLong(base, 0L);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map(int newCapacity) throws IOException {
+        // Growing the file zero-fills the new slots, and 0 means "no game".
+        slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) newCapacity * SLOT_BYTES);
+        capacity = newCapacity;
+    }
+}
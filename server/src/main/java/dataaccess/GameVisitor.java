@@ -0,0 +1,14 @@
+package dataaccess;
+
+import model.GameData;
+
+/**
+ * Receives games one at a time from {@link DataAccess#streamGames}.
+ *
+ * @param <E> checked exception the visitor may throw, such as an {@code IOException}
+ *            from writing each game out
+ */
+@FunctionalInterface
+public interface GameVisitor<E extends Exception> {
+    void visit(GameData game) throws E;
+}
@@ -5,36 +5,60 @@ import model.AuthData;
 import model.GameData;
 import model.UserData;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Keeps everything in memory. Safe to share between request threads: lookups
+ * never block, and game updates only lock the stripe their game ID falls in.
+ * <p>
+ * Games are copied on the way in and out so callers can never change the
+ * stored state except through {@link #updateGame}. There are no transactions;
+ * each operation is atomic on its own and game updates are guarded by version.
+ */
 public class InMemoryDataAccess implements DataAccess {
+    private static final int LOCK_STRIPES = 64;
 
-    private final Map<String, UserData> users = new HashMap<>();
-    private final Map<String, AuthData> auths = new HashMap<>();
-    private final Map<Integer, GameData> games = new HashMap<>();
-    private int nextGameID = 1;
+    private final Map<String, UserData> users = new ConcurrentHashMap<>();
+    private final Map<String, AuthData> auths = new ConcurrentHashMap<>();
+    private final Map<Integer, GameData> games = new ConcurrentHashMap<>();
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final AtomicLong tokenEpoch = new AtomicLong();
+    private final AtomicInteger nextGameID = new AtomicInteger(1);
+    private final ReentrantLock[] gameLocks = new ReentrantLock[LOCK_STRIPES];
+
+    public InMemoryDataAccess() {
+        for (int i = 0; i < gameLocks.length; i++) {
+            gameLocks[i] = new ReentrantLock();
+        }
+    }
 
     @Override
     public void clear() {
         users.clear();
         auths.clear();
         games.clear();
-        nextGameID = 1;
+        revokedTokens.clear();
+        tokenEpoch.set(0);
+        nextGameID.set(1);
     }
 
     @Override
     public void createUser(UserData user) throws DataAccessException {
-        if (users.containsKey(user.username())) {
-            throw new DataAccessException("User already exists");
+        if (users.putIfAbsent(user.username(), user) != null) {
+            throw new AlreadyExistsException("User already exists");
         }
-        users.put(user.username(), user);
     }
 
     @Override
     public UserData getUser(String username) {
-        return users.get(username);
+        return username == null ? null : users.get(username);
     }
 
     @Override
@@ -44,17 +68,40 @@ public class InMemoryDataAccess implements DataAccess {
 
     @Override
     public AuthData getAuth(String authToken) {
-        return auths.get(authToken);
+        return authToken == null ? null : auths.get(authToken);
     }
 
     @Override
     public void deleteAuth(String authToken) {
-        auths.remove(authToken);
+        if (authToken != null) {
+            auths.remove(authToken);
+        }
+    }
+
+    @Override
+    public void addRevokedToken(String tokenId, long expiresAt) {
+        revokedTokens.put(tokenId, expiresAt);
+    }
+
+    @Override
+    public Map<String, Long> getRevokedTokens(long now) {
+        revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+        return new HashMap<>(revokedTokens);
+    }
+
+    @Override
+    public void setTokenEpoch(long notBefore) {
+        tokenEpoch.accumulateAndGet(notBefore, Math::max);
+    }
+
+    @Override
+    public long getTokenEpoch() {
+        return tokenEpoch.get();
     }
 
     @Override
     public int createGame(String gameName) {
-        int id = nextGameID++;
+        int id = nextGameID.getAndIncrement();
         GameData game = new GameData(id, null, null, gameName, new ChessGame());
         games.put(id, game);
         return id;
@@ -62,19 +109,45 @@ public class InMemoryDataAccess implements DataAccess {
 
     @Override
     public GameData getGame(int gameID) {
-        return games.get(gameID);
+        GameData game = games.get(gameID);
+        return game == null ? null : copyOf(game, game.version());
     }
 
     @Override
     public Collection<GameData> listGames() {
-        return games.values();
+        Collection<GameData> snapshot = new ArrayList<>(games.size());
+        for (GameData game : games.values()) {
+            snapshot.add(copyOf(game, game.version()));
+        }
+        return snapshot;
     }
 
     @Override
     public void updateGame(GameData game) throws DataAccessException {
-        if (!games.containsKey(game.gameID())) {
-            throw new DataAccessException("Game not found");
+        ReentrantLock lock = gameLocks[Math.floorMod(game.gameID(), LOCK_STRIPES)];
+        lock.lock();
+        try {
+            GameData current = games.get(game.gameID());
+            if (current == null) {
+                throw new DataAccessException("Game not found");
+            }
+            if (current.version() != game.version()) {
+                throw new ConcurrentUpdateException("Game was modified concurrently");
+            }
+            games.put(game.gameID(), copyOf(game, game.version() + 1));
+        } finally {
+            lock.unlock();
         }
-        games.put(game.gameID(), game);
+    }
+
+    private static GameData copyOf(GameData game, int version) {
+        return new GameData(
+                game.gameID(),
+                game.whiteUsername(),
+                game.blackUsername(),
+                game.gameName(),
+                game.game() == null ? null : new ChessGame(game.game()),
+                version
+        );
     }
 }
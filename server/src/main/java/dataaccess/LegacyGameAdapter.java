@@ -0,0 +1,38 @@
+package dataaccess;
+
+import chess.ChessGame;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+import java.lang.reflect.Type;
+
+/**
+ * Reads stored games, fixing up ones written before {@link ChessGame} kept
+ * castling rights. Those load with every right set, which would let a king or
+ * rook that moved and came back castle; {@link ChessGame#recoverCastlingRights}
+ * works out the real ones instead.
+ */
+final class LegacyGameAdapter implements JsonDeserializer<ChessGame> {
+    private static final Gson PLAIN = new Gson();
+
+    /**
+     * @return a Gson for stored records, which reads games with this adapter
+     */
+    static Gson gson() {
+        return new GsonBuilder().registerTypeAdapter(ChessGame.class, new LegacyGameAdapter()).create();
+    }
+
+    @Override
+    public ChessGame deserialize(JsonElement json, Type type, JsonDeserializationContext context)
+            throws JsonParseException {
+        ChessGame game = PLAIN.fromJson(json, ChessGame.class);
+        if (game != null && json.isJsonObject() && !json.getAsJsonObject().has("castlingRights")) {
+            game.recoverCastlingRights();
+        }
+        return game;
+    }
+}
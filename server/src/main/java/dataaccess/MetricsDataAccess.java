@@ -0,0 +1,185 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records call counts, failures and latency for every operation on the wrapped
+ * {@link DataAccess}. Placed outermost it measures what the services see;
+ * placed directly over a backend it measures the backend alone.
+ */
+public class MetricsDataAccess extends ForwardingDataAccess {
+
+    /**
+     * Point-in-time figures for one operation. Latencies are in microseconds.
+     */
+    public record OperationStats(long calls, long failures, long averageMicros, long maxMicros) { }
+
+    private static final class Counter {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos, boolean failed) {
+            calls.increment();
+            if (failed) {
+                failures.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        OperationStats snapshot() {
+            long count = calls.sum();
+            long average = (count == 0) ? 0 : totalNanos.sum() / count;
+            return new OperationStats(count, failures.sum(), average / 1_000, maxNanos.get() / 1_000);
+        }
+    }
+
+    private interface Call<T> {
+        T run() throws DataAccessException;
+    }
+
+    private interface VoidCall {
+        void run() throws DataAccessException;
+    }
+
+    private final Map<String, Counter> counters;
+
+    public MetricsDataAccess(DataAccess delegate) {
+        this(delegate, new ConcurrentHashMap<>());
+    }
+
+    private MetricsDataAccess(DataAccess delegate, Map<String, Counter> counters) {
+        super(delegate);
+        this.counters = counters;
+    }
+
+    /**
+     * @return stats for every operation called so far, keyed by operation name
+     */
+    public Map<String, OperationStats> snapshot() {
+        Map<String, OperationStats> result = new TreeMap<>();
+        counters.forEach((operation, counter) -> result.put(operation, counter.snapshot()));
+        return result;
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        time("clear", delegate::clear);
+    }
+
+    @Override
+    public void createUser(UserData user) throws DataAccessException {
+        time("createUser", () -> delegate.createUser(user));
+    }
+
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return time("getUser", () -> delegate.getUser(username));
+    }
+
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        time("createAuth", () -> delegate.createAuth(auth));
+    }
+
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return time("getAuth", () -> delegate.getAuth(authToken));
+    }
+
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        time("deleteAuth", () -> delegate.deleteAuth(authToken));
+    }
+
+    @Override
+    public int createGame(String gameName) throws DataAccessException {
+        return time("createGame", () -> delegate.createGame(gameName));
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return time("getGame", () -> delegate.getGame(gameID));
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        return time("listGames", delegate::listGames);
+    }
+
+    @Override
+    public List<Integer> importGames(List<GameData> games) throws DataAccessException {
+        return time("importGames", () -> delegate.importGames(games));
+    }
+
+    @Override
+    public <E extends Exception> void streamGames(GameVisitor<E> visitor) throws DataAccessException, E {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.streamGames(visitor);
+            failed = false;
+        } finally {
+            counter("streamGames").record(System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        time("updateGame", () -> delegate.updateGame(game));
+    }
+
+    @Override
+    public int archiveFinishedGames(Duration gracePeriod, int limit) throws DataAccessException {
+        return time("archiveFinishedGames", () -> delegate.archiveFinishedGames(gracePeriod, limit));
+    }
+
+    @Override
+    public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = delegate.inTransaction(tx -> work.run(new MetricsDataAccess(tx, counters)));
+            failed = false;
+            return result;
+        } finally {
+            counter("transaction").record(System.nanoTime() - start, failed);
+        }
+    }
+
+    private <T> T time(String operation, Call<T> call) throws DataAccessException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.run();
+            failed = false;
+            return result;
+        } finally {
+            counter(operation).record(System.nanoTime() - start, failed);
+        }
+    }
+
+    private void time(String operation, VoidCall call) throws DataAccessException {
+        time(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private Counter counter(String operation) {
+        return counters.computeIfAbsent(operation, key -> new Counter());
+    }
+}
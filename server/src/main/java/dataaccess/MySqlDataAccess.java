@@ -4,11 +4,20 @@ import model.AuthData;
 import model.GameData;
 import model.UserData;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import org.mindrot.jbcrypt.BCrypt;
 import chess.ChessGame;
-import com.google.gson.Gson;
 import java.util.ArrayList;
 
 public class MySqlDataAccess implements DataAccess {
@@ -19,319 +28,707 @@ public class MySqlDataAccess implements DataAccess {
     }
 
     private void configureDatabase() throws DataAccessException {
-        String[] statements = {
-                """
-                CREATE TABLE IF NOT EXISTS users (
-                    username VARCHAR(255) NOT NULL PRIMARY KEY,
-                    password_hash VARCHAR(255) NOT NULL,
-                    email VARCHAR(255) NOT NULL
-                )
-                """,
-                """
-                CREATE TABLE IF NOT EXISTS auth (
-                    auth_token VARCHAR(255) NOT NULL PRIMARY KEY,
-                    username VARCHAR(255) NOT NULL,
-                    FOREIGN KEY (username) REFERENCES users(username) ON DELETE CASCADE
-                )
-                """,
-                """
-                CREATE TABLE IF NOT EXISTS games (
-                    game_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
-                    white_username VARCHAR(255),
-                    black_username VARCHAR(255),
-                    game_name VARCHAR(255) NOT NULL,
-                    game_json TEXT NOT NULL
-                )
-                """
-        };
-
         try (var conn = DatabaseManager.getConnection()) {
-            for (String statement : statements) {
-                try (var ps = conn.prepareStatement(statement)) {
-                    ps.executeUpdate();
-                }
-            }
+            SchemaMigrations.apply(conn);
         } catch (Exception e) {
             throw new DataAccessException("Unable to configure database: " + e.getMessage());
         }
     }
 
-    @Override
-    public void clear() throws DataAccessException {
-        String[] statements = {
-                "DELETE FROM auth",
-                "DELETE FROM games",
-                "DELETE FROM users"
-        };
+    @FunctionalInterface
+    private interface ScopedWork<T> {
+        T run(ConnectionScope scope) throws DataAccessException;
+    }
 
+    private <T> T withConnection(ScopedWork<T> work) throws DataAccessException {
         try (var conn = DatabaseManager.getConnection()) {
-            for (String statement : statements) {
-                try (var ps = conn.prepareStatement(statement)) {
-                    ps.executeUpdate();
-                }
+            return work.run(new ConnectionScope(conn));
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to release connection: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+        try (var conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                T result = work.run(new ConnectionScope(conn));
+                conn.commit();
+                return result;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
             }
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to clear database: " + e.getMessage());
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to complete transaction: " + e.getMessage());
         }
     }
 
+    @Override
+    public void clear() throws DataAccessException {
+        withConnection(scope -> {
+            scope.clear();
+            return null;
+        });
+    }
+
     @Override
     public void createUser(UserData user) throws DataAccessException {
-        String statement = """
-                INSERT INTO users (username, password_hash, email)
-                VALUES (?, ?, ?)
-                """;
+        withConnection(scope -> {
+            scope.createUser(user);
+            return null;
+        });
+    }
 
-        String hashedPassword = BCrypt.hashpw(user.password(), BCrypt.gensalt());
+    @Override
+    public UserData getUser(String username) throws DataAccessException {
+        return withConnection(scope -> scope.getUser(username));
+    }
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement)) {
+    @Override
+    public void createAuth(AuthData auth) throws DataAccessException {
+        withConnection(scope -> {
+            scope.createAuth(auth);
+            return null;
+        });
+    }
 
-            ps.setString(1, user.username());
-            ps.setString(2, hashedPassword);
-            ps.setString(3, user.email());
+    @Override
+    public AuthData getAuth(String authToken) throws DataAccessException {
+        return withConnection(scope -> scope.getAuth(authToken));
+    }
 
-            ps.executeUpdate();
+    @Override
+    public void deleteAuth(String authToken) throws DataAccessException {
+        withConnection(scope -> {
+            scope.deleteAuth(authToken);
+            return null;
+        });
+    }
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to create user: " + e.getMessage());
-        }
+    @Override
+    public void addRevokedToken(String tokenId, long expiresAt) throws DataAccessException {
+        withConnection(scope -> {
+            scope.addRevokedToken(tokenId, expiresAt);
+            return null;
+        });
     }
 
     @Override
-    public UserData getUser(String username) throws DataAccessException {
-        String statement = """
-                SELECT username, password_hash, email
-                FROM users
-                WHERE username = ?
-                """;
+    public Map<String, Long> getRevokedTokens(long now) throws DataAccessException {
+        return withConnection(scope -> scope.getRevokedTokens(now));
+    }
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement)) {
+    @Override
+    public void setTokenEpoch(long notBefore) throws DataAccessException {
+        withConnection(scope -> {
+            scope.setTokenEpoch(notBefore);
+            return null;
+        });
+    }
 
-            ps.setString(1, username);
+    @Override
+    public long getTokenEpoch() throws DataAccessException {
+        return withConnection(ConnectionScope::getTokenEpoch);
+    }
 
-            try (var rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return new UserData(
-                            rs.getString("username"),
-                            rs.getString("password_hash"),
-                            rs.getString("email")
-                    );
-                }
-            }
+    @Override
+    public int createGame(String gameName) throws DataAccessException {
+        return withConnection(scope -> scope.createGame(gameName));
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        return withConnection(scope -> scope.getGame(gameID));
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        return withConnection(ConnectionScope::listGames);
+    }
 
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        withConnection(scope -> {
+            scope.updateGame(game);
             return null;
+        });
+    }
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to get user: " + e.getMessage());
+    @Override
+    public List<Integer> importGames(List<GameData> games) throws DataAccessException {
+        return inTransaction(tx -> tx.importGames(games));
+    }
+
+    @Override
+    public <E extends Exception> void streamGames(GameVisitor<E> visitor) throws DataAccessException, E {
+        try (var conn = DatabaseManager.getConnection()) {
+            new ConnectionScope(conn).streamGames(visitor);
+        } catch (SQLException e) {
+            throw new DataAccessException("Unable to release connection: " + e.getMessage());
         }
     }
 
     @Override
-    public void createAuth(AuthData auth) throws DataAccessException {
-        String statement = """
-                INSERT INTO auth (auth_token, username)
-                VALUES (?, ?)
-                """;
+    public int archiveFinishedGames(Duration gracePeriod, int limit) throws DataAccessException {
+        return inTransaction(tx -> tx.archiveFinishedGames(gracePeriod, limit));
+    }
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement)) {
+    private static boolean isBcryptHash(String password) {
+        return password != null && password.startsWith("$2") && password.length() == 60;
+    }
 
-            ps.setString(1, auth.authToken());
-            ps.setString(2, auth.username());
+    /**
+     * Runs every operation on one borrowed connection. Used directly for
+     * single operations and handed to {@link Transaction}s as their {@code tx}.
+     */
+    private static class ConnectionScope implements DataAccess {
+        private static final int IMPORT_BATCH_SIZE = 1_000;
 
-            ps.executeUpdate();
+        private final Connection conn;
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to create auth: " + e.getMessage());
+        ConnectionScope(Connection conn) {
+            this.conn = conn;
         }
-    }
 
-    @Override
-    public AuthData getAuth(String authToken) throws DataAccessException {
-        String statement = """
-                SELECT auth_token, username
-                FROM auth
-                WHERE auth_token = ?
-                """;
+        @Override
+        public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+            // Already inside a unit of work; nested work joins it.
+            return work.run(this);
+        }
+
+        @Override
+        public void clear() throws DataAccessException {
+            String[] statements = {
+                    "DELETE FROM auth",
+                    "DELETE FROM games",
+                    "DELETE FROM games_archive",
+                    "DELETE FROM users",
+                    "DELETE FROM revoked_tokens",
+                    "DELETE FROM token_epoch"
+            };
+
+            try (var batch = conn.createStatement()) {
+                for (String statement : statements) {
+                    batch.addBatch(statement);
+                }
+                batch.executeBatch();
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to clear database: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void createUser(UserData user) throws DataAccessException {
+            String statement = """
+                    INSERT INTO users (username, password_hash, email)
+                    VALUES (?, ?, ?)
+                    """;
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement)) {
+            // Hashing belongs on UserService's hashing executor, never on a thread holding a connection.
+            if (!isBcryptHash(user.password())) {
+                throw new DataAccessException("Unable to create user: password must be a bcrypt hash");
+            }
+
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setString(1, user.username());
+                ps.setString(2, user.password());
+                ps.setString(3, user.email());
 
-            ps.setString(1, authToken);
+                ps.executeUpdate();
+
+            } catch (SQLIntegrityConstraintViolationException e) {
+                throw new AlreadyExistsException("User already exists");
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to create user: " + e.getMessage());
+            }
+        }
 
-            try (var rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return new AuthData(
-                            rs.getString("auth_token"),
-                            rs.getString("username")
-                    );
+        @Override
+        public UserData getUser(String username) throws DataAccessException {
+            String statement = """
+                    SELECT username, password_hash, email
+                    FROM users
+                    WHERE username = ?
+                    """;
+
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setString(1, username);
+
+                try (var rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        return new UserData(
+                                rs.getString("username"),
+                                rs.getString("password_hash"),
+                                rs.getString("email")
+                        );
+                    }
                 }
+
+                return null;
+
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to get user: " + e.getMessage());
             }
+        }
 
-            return null;
+        @Override
+        public void createAuth(AuthData auth) throws DataAccessException {
+            String statement = """
+                    INSERT INTO auth (auth_token, username)
+                    VALUES (?, ?)
+                    """;
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to get auth: " + e.getMessage());
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setString(1, auth.authToken());
+                ps.setString(2, auth.username());
+
+                ps.executeUpdate();
+
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to create auth: " + e.getMessage());
+            }
         }
-    }
 
-    @Override
-    public void deleteAuth(String authToken) throws DataAccessException {
-        String statement = """
-                DELETE FROM auth
-                WHERE auth_token = ?
-                """;
+        @Override
+        public AuthData getAuth(String authToken) throws DataAccessException {
+            String statement = """
+                    SELECT auth_token, username
+                    FROM auth
+                    WHERE auth_token = ?
+                    """;
+
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setString(1, authToken);
+
+                try (var rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        return new AuthData(
+                                rs.getString("auth_token"),
+                                rs.getString("username")
+                        );
+                    }
+                }
+
+                return null;
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement)) {
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to get auth: " + e.getMessage());
+            }
+        }
 
-            ps.setString(1, authToken);
-            ps.executeUpdate();
+        @Override
+        public void deleteAuth(String authToken) throws DataAccessException {
+            String statement = """
+                    DELETE FROM auth
+                    WHERE auth_token = ?
+                    """;
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to delete auth: " + e.getMessage());
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setString(1, authToken);
+                ps.executeUpdate();
+
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to delete auth: " + e.getMessage());
+            }
         }
-    }
 
-    @Override
-    public int createGame(String gameName) throws DataAccessException {
-        String statement = """
-                INSERT INTO games (white_username, black_username, game_name, game_json)
-                VALUES (?, ?, ?, ?)
-                """;
+        @Override
+        public void addRevokedToken(String tokenId, long expiresAt) throws DataAccessException {
+            String statement = """
+                    INSERT INTO revoked_tokens (token_id, expires_at)
+                    VALUES (?, ?)
+                    ON DUPLICATE KEY UPDATE expires_at = VALUES(expires_at)
+                    """;
+
+            try (var prune = conn.prepareStatement("DELETE FROM revoked_tokens WHERE expires_at <= ?");
+                 var ps = conn.prepareStatement(statement)) {
+
+                prune.setLong(1, System.currentTimeMillis());
+                prune.executeUpdate();
 
-        ChessGame game = new ChessGame();
-        String gameJson = new Gson().toJson(game);
+                ps.setString(1, tokenId);
+                ps.setLong(2, expiresAt);
+                ps.executeUpdate();
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement, java.sql.Statement.RETURN_GENERATED_KEYS)) {
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to revoke token: " + e.getMessage());
+            }
+        }
 
-            ps.setString(1, null);
-            ps.setString(2, null);
-            ps.setString(3, gameName);
-            ps.setString(4, gameJson);
+        @Override
+        public Map<String, Long> getRevokedTokens(long now) throws DataAccessException {
+            String statement = """
+                    SELECT token_id, expires_at
+                    FROM revoked_tokens
+                    WHERE expires_at > ?
+                    """;
 
-            ps.executeUpdate();
+            try (var ps = conn.prepareStatement(statement)) {
 
-            try (var rs = ps.getGeneratedKeys()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
+                ps.setLong(1, now);
+
+                Map<String, Long> revoked = new HashMap<>();
+                try (var rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        revoked.put(rs.getString("token_id"), rs.getLong("expires_at"));
+                    }
                 }
+                return revoked;
+
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to get revoked tokens: " + e.getMessage());
             }
+        }
 
-            throw new DataAccessException("Unable to get game ID");
+        @Override
+        public void setTokenEpoch(long notBefore) throws DataAccessException {
+            String statement = """
+                    INSERT INTO token_epoch (id, not_before)
+                    VALUES (1, ?)
+                    ON DUPLICATE KEY UPDATE not_before = GREATEST(not_before, VALUES(not_before))
+                    """;
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to create game: " + e.getMessage());
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setLong(1, notBefore);
+                ps.executeUpdate();
+
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to set token epoch: " + e.getMessage());
+            }
         }
-    }
 
-    @Override
-    public GameData getGame(int gameID) throws DataAccessException {
-        String statement = """
-                SELECT game_id, white_username, black_username, game_name, game_json
-                FROM games
-                WHERE game_id = ?
-                """;
+        @Override
+        public long getTokenEpoch() throws DataAccessException {
+            try (var ps = conn.prepareStatement("SELECT not_before FROM token_epoch WHERE id = 1");
+                 var rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong("not_before") : 0;
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to get token epoch: " + e.getMessage());
+            }
+        }
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement)) {
+        @Override
+        public int createGame(String gameName) throws DataAccessException {
+            String statement = """
+                    INSERT INTO games (white_username, black_username, game_name, game_state)
+                    VALUES (?, ?, ?, ?)
+                    """;
 
-            ps.setInt(1, gameID);
+            byte[] gameState = GameCodec.encode(new ChessGame());
 
-            try (var rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    String white = rs.getString("white_username");
-                    String black = rs.getString("black_username");
-                    String name = rs.getString("game_name");
-                    String json = rs.getString("game_json");
+            try (var ps = conn.prepareStatement(statement, java.sql.Statement.RETURN_GENERATED_KEYS)) {
 
-                    ChessGame game = new Gson().fromJson(json, ChessGame.class);
+                ps.setString(1, null);
+                ps.setString(2, null);
+                ps.setString(3, gameName);
+                ps.setBytes(4, gameState);
 
-                    return new GameData(
-                            rs.getInt("game_id"),
-                            white,
-                            black,
-                            name,
-                            game
-                    );
+                ps.executeUpdate();
+
+                try (var rs = ps.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        return rs.getInt(1);
+                    }
                 }
+
+                throw new DataAccessException("Unable to get game ID");
+
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to create game: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public GameData getGame(int gameID) throws DataAccessException {
+            try {
+                GameData game = readGame("games", gameID);
+                // Finished games move to the archive after a while; fetch those on demand.
+                return (game != null) ? game : readGame("games_archive", gameID);
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to get game: " + e.getMessage());
             }
+        }
 
-            return null;
+        private GameData readGame(String table, int gameID) throws SQLException, DataAccessException {
+            String statement = """
+                    SELECT game_id, white_username, black_username, game_name, game_state, version
+                    FROM %s
+                    WHERE game_id = ?
+                    """.formatted(table);
+
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setInt(1, gameID);
+
+                try (var rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        String white = rs.getString("white_username");
+                        String black = rs.getString("black_username");
+                        String name = rs.getString("game_name");
+                        ChessGame game = GameCodec.decode(rs.getBytes("game_state"));
+
+                        return new GameData(
+                                rs.getInt("game_id"),
+                                white,
+                                black,
+                                name,
+                                game,
+                                rs.getInt("version")
+                        );
+                    }
+                }
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to get game: " + e.getMessage());
+                return null;
+            }
         }
-    }
 
-    @Override
-    public Collection<GameData> listGames() throws DataAccessException {
-        String statement = """
-                SELECT game_id, white_username, black_username, game_name, game_json
-                FROM games
-                """;
+        @Override
+        public Collection<GameData> listGames() throws DataAccessException {
+            String statement = """
+                    SELECT game_id, white_username, black_username, game_name, game_state, version
+                    FROM games
+                    """;
+
+            Collection<GameData> games = new ArrayList<>();
 
-        Collection<GameData> games = new ArrayList<>();
+            try (var ps = conn.prepareStatement(statement);
+                 var rs = ps.executeQuery()) {
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement);
-             var rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ChessGame game = GameCodec.decode(rs.getBytes("game_state"));
 
-            while (rs.next()) {
-                String json = rs.getString("game_json");
-                ChessGame game = new Gson().fromJson(json, ChessGame.class);
+                    games.add(new GameData(
+                            rs.getInt("game_id"),
+                            rs.getString("white_username"),
+                            rs.getString("black_username"),
+                            rs.getString("game_name"),
+                            game,
+                            rs.getInt("version")
+                    ));
+                }
+
+                return games;
 
-                games.add(new GameData(
-                        rs.getInt("game_id"),
-                        rs.getString("white_username"),
-                        rs.getString("black_username"),
-                        rs.getString("game_name"),
-                        game
-                ));
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to list games: " + e.getMessage());
             }
+        }
 
-            return games;
+        @Override
+        public List<Integer> importGames(List<GameData> games) throws DataAccessException {
+            String statement = """
+                    INSERT INTO games (white_username, black_username, game_name, game_state, status, finished_at)
+                    VALUES (?, ?, ?, ?, ?, IF(? = 'FINISHED', CURRENT_TIMESTAMP, NULL))
+                    """;
+
+            List<Integer> gameIDs = new ArrayList<>(games.size());
+
+            // The driver rewrites each batch into multi-row INSERTs (rewriteBatchedStatements).
+            try (var ps = conn.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS)) {
+                int batched = 0;
+                for (GameData game : games) {
+                    String status = game.game().isGameOver() ? "FINISHED" : "ACTIVE";
+                    ps.setString(1, game.whiteUsername());
+                    ps.setString(2, game.blackUsername());
+                    ps.setString(3, game.gameName());
+                    ps.setBytes(4, GameCodec.encode(game.game()));
+                    ps.setString(5, status);
+                    ps.setString(6, status);
+                    ps.addBatch();
+
+                    if (++batched % IMPORT_BATCH_SIZE == 0) {
+                        executeImportBatch(ps, gameIDs);
+                    }
+                }
+                executeImportBatch(ps, gameIDs);
+                return gameIDs;
 
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to list games: " + e.getMessage());
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to import games: " + e.getMessage());
+            }
         }
-    }
 
-    @Override
-    public void updateGame(GameData game) throws DataAccessException {
-        if (game == null || game.game() == null || game.gameID() <= 0) {
-            throw new DataAccessException("Invalid game");
+        private void executeImportBatch(PreparedStatement ps, List<Integer> gameIDs) throws SQLException {
+            ps.executeBatch();
+            try (var rs = ps.getGeneratedKeys()) {
+                while (rs.next()) {
+                    gameIDs.add(rs.getInt(1));
+                }
+            }
+        }
+
+        @Override
+        public <E extends Exception> void streamGames(GameVisitor<E> visitor) throws DataAccessException, E {
+            for (String table : List.of("games", "games_archive")) {
+                String statement = """
+                        SELECT game_id, white_username, black_username, game_name, game_state, version
+                        FROM %s
+                        """.formatted(table);
+
+                try (var ps = conn.prepareStatement(statement, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+                    // Tells Connector/J to stream rows one by one instead of buffering the whole result.
+                    ps.setFetchSize(Integer.MIN_VALUE);
+
+                    try (var rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            visitor.visit(new GameData(
+                                    rs.getInt("game_id"),
+                                    rs.getString("white_username"),
+                                    rs.getString("black_username"),
+                                    rs.getString("game_name"),
+                                    GameCodec.decode(rs.getBytes("game_state")),
+                                    rs.getInt("version")
+                            ));
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new DataAccessException("Unable to stream games: " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void updateGame(GameData game) throws DataAccessException {
+            if (game == null || game.game() == null || game.gameID() <= 0) {
+                throw new DataAccessException("Invalid game");
+            }
+
+            // Compare-and-set on the version the caller read.
+            String statement = """
+                UPDATE games
+                SET white_username = ?, black_username = ?, game_name = ?, game_state = ?,
+                    status = ?, finished_at = IF(? = 'FINISHED', COALESCE(finished_at, CURRENT_TIMESTAMP), NULL),
+                    version = version + 1
+                WHERE game_id = ? AND version = ?
+                """;
+
+            byte[] gameState = GameCodec.encode(game.game());
+            String status = game.game().isGameOver() ? "FINISHED" : "ACTIVE";
+
+            try (var ps = conn.prepareStatement(statement)) {
+
+                ps.setString(1, game.whiteUsername());
+                ps.setString(2, game.blackUsername());
+                ps.setString(3, game.gameName());
+                ps.setBytes(4, gameState);
+                ps.setString(5, status);
+                ps.setString(6, status);
+                ps.setInt(7, game.gameID());
+                ps.setInt(8, game.version());
+
+                int rowsUpdated = ps.executeUpdate();
+                if (rowsUpdated == 0) {
+                    rowsUpdated = updateArchivedGame(game, gameState);
+                }
+                if (rowsUpdated == 0) {
+                    if (gameExists(game.gameID())) {
+                        throw new ConcurrentUpdateException("Game was modified concurrently");
+                    }
+                    throw new DataAccessException("Game not found");
+                }
+
+            } catch (DataAccessException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to update game: " + e.getMessage());
+            }
         }
 
-        String statement = """
-            UPDATE games
-            SET white_username = ?, black_username = ?, game_name = ?, game_json = ?
-            WHERE game_id = ?
-            """;
+        // Archived games are finished, but players can still give up their seats.
+        private int updateArchivedGame(GameData game, byte[] gameState) throws SQLException {
+            String statement = """
+                UPDATE games_archive
+                SET white_username = ?, black_username = ?, game_name = ?, game_state = ?, version = version + 1
+                WHERE game_id = ? AND version = ?
+                """;
 
-        String gameJson = new Gson().toJson(game.game());
+            try (var ps = conn.prepareStatement(statement)) {
+                ps.setString(1, game.whiteUsername());
+                ps.setString(2, game.blackUsername());
+                ps.setString(3, game.gameName());
+                ps.setBytes(4, gameState);
+                ps.setInt(5, game.gameID());
+                ps.setInt(6, game.version());
+                return ps.executeUpdate();
+            }
+        }
 
-        try (var conn = DatabaseManager.getConnection();
-             var ps = conn.prepareStatement(statement)) {
+        @Override
+        public int archiveFinishedGames(Duration gracePeriod, int limit) throws DataAccessException {
+            String select = """
+                    SELECT game_id
+                    FROM games
+                    WHERE status = 'FINISHED' AND finished_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND
+                    ORDER BY game_id
+                    LIMIT ?
+                    FOR UPDATE
+                    """;
+
+            try {
+                List<Integer> gameIDs = new ArrayList<>();
+                try (var ps = conn.prepareStatement(select)) {
+                    ps.setLong(1, gracePeriod.toSeconds());
+                    ps.setInt(2, limit);
+
+                    try (var rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            gameIDs.add(rs.getInt("game_id"));
+                        }
+                    }
+                }
+                if (gameIDs.isEmpty()) {
+                    return 0;
+                }
 
-            ps.setString(1, game.whiteUsername());
-            ps.setString(2, game.blackUsername());
-            ps.setString(3, game.gameName());
-            ps.setString(4, gameJson);
-            ps.setInt(5, game.gameID());
+                String placeholders = String.join(", ", Collections.nCopies(gameIDs.size(), "?"));
+                String copy = """
+                        INSERT INTO games_archive
+                            (game_id, white_username, black_username, game_name, game_state, version, finished_at)
+                        SELECT game_id, white_username, black_username, game_name, game_state, version, finished_at
+                        FROM games
+                        WHERE game_id IN (%s)
+                        """.formatted(placeholders);
+                String delete = "DELETE FROM games WHERE game_id IN (%s)".formatted(placeholders);
+
+                for (String statement : List.of(copy, delete)) {
+                    try (var ps = conn.prepareStatement(statement)) {
+                        for (int i = 0; i < gameIDs.size(); i++) {
+                            ps.setInt(i + 1, gameIDs.get(i));
+                        }
+                        ps.executeUpdate();
+                    }
+                }
+                return gameIDs.size();
 
-            int rowsUpdated = ps.executeUpdate();
-            if (rowsUpdated == 0) {
-                throw new DataAccessException("Game not found");
+            } catch (Exception e) {
+                throw new DataAccessException("Unable to archive games: " + e.getMessage());
             }
+        }
 
-        } catch (DataAccessException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new DataAccessException("Unable to update game: " + e.getMessage());
+        private boolean gameExists(int gameID) throws SQLException {
+            String statement = """
+                    SELECT 1 FROM games WHERE game_id = ?
+                    UNION ALL
+                    SELECT 1 FROM games_archive WHERE game_id = ?
+                    """;
+
+            try (var ps = conn.prepareStatement(statement)) {
+                ps.setInt(1, gameID);
+                ps.setInt(2, gameID);
+
+                try (var rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,239 @@
+package dataaccess;
+
+import chess.ChessGame;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Brings the MySQL schema up to date at startup.
+ * <p>
+ * Each migration runs once, in order, and is recorded in {@code schema_version}.
+ * MySQL commits DDL implicitly, so a migration cannot be rolled back; instead
+ * every step is written to be safe to re-run if the server stops halfway.
+ * Add new migrations to the end of the list and never edit applied ones.
+ */
+final class SchemaMigrations {
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection conn) throws SQLException, DataAccessException;
+    }
+
+    private record Migration(int version, String description, Step step) { }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "create users, auth and games", sql(
+                    """
+                    CREATE TABLE IF NOT EXISTS users (
+                        username VARCHAR(255) NOT NULL PRIMARY KEY,
+                        password_hash VARCHAR(255) NOT NULL,
+                        email VARCHAR(255) NOT NULL
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS auth (
+                        auth_token VARCHAR(255) NOT NULL PRIMARY KEY,
+                        username VARCHAR(255) NOT NULL,
+                        FOREIGN KEY (username) REFERENCES users(username) ON DELETE CASCADE
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS games (
+                        game_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                        white_username VARCHAR(255),
+                        black_username VARCHAR(255),
+                        game_name VARCHAR(255) NOT NULL,
+                        game_json TEXT NOT NULL
+                    )
+                    """
+            )),
+            new Migration(2, "add games.version for optimistic updates",
+                    conn -> addColumnIfMissing(conn, "games", "version", "INT NOT NULL DEFAULT 0")),
+            new Migration(3, "index player and token owner lookups", conn -> {
+                createIndexIfMissing(conn, "games", "idx_games_white_username", "white_username");
+                createIndexIfMissing(conn, "games", "idx_games_black_username", "black_username");
+                createIndexIfMissing(conn, "auth", "idx_auth_username", "username");
+            }),
+            new Migration(4, "add games.status and finished_at", conn -> {
+                addColumnIfMissing(conn, "games", "status",
+                        "ENUM('ACTIVE', 'FINISHED') NOT NULL DEFAULT 'ACTIVE'");
+                addColumnIfMissing(conn, "games", "finished_at", "TIMESTAMP NULL");
+                if (columnExists(conn, "games", "game_json")) {
+                    execute(conn, """
+                            UPDATE games
+                            SET status = 'FINISHED', finished_at = CURRENT_TIMESTAMP
+                            WHERE status = 'ACTIVE' AND JSON_EXTRACT(game_json, '$.gameOver') = true
+                            """);
+                }
+                createIndexIfMissing(conn, "games", "idx_games_status", "status");
+            }),
+            new Migration(5, "store games as encoded binary", conn -> {
+                addColumnIfMissing(conn, "games", "game_state", "MEDIUMBLOB NULL");
+                if (columnExists(conn, "games", "game_json")) {
+                    encodeJsonGames(conn);
+                    execute(conn, "ALTER TABLE games DROP COLUMN game_json");
+                }
+                execute(conn, "ALTER TABLE games MODIFY game_state MEDIUMBLOB NOT NULL");
+            }),
+            new Migration(6, "create games_archive for finished games", sql(
+                    """
+                    CREATE TABLE IF NOT EXISTS games_archive (
+                        game_id INT NOT NULL PRIMARY KEY,
+                        white_username VARCHAR(255),
+                        black_username VARCHAR(255),
+                        game_name VARCHAR(255) NOT NULL,
+                        game_state MEDIUMBLOB NOT NULL,
+                        version INT NOT NULL,
+                        finished_at TIMESTAMP NULL,
+                        archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                        INDEX idx_games_archive_white_username (white_username),
+                        INDEX idx_games_archive_black_username (black_username)
+                    )
+                    """
+            )),
+            new Migration(7, "create revoked_tokens and token_epoch for signed tokens", sql(
+                    """
+                    CREATE TABLE IF NOT EXISTS revoked_tokens (
+                        token_id VARCHAR(64) NOT NULL PRIMARY KEY,
+                        expires_at BIGINT NOT NULL,
+                        INDEX idx_revoked_tokens_expires_at (expires_at)
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS token_epoch (
+                        id TINYINT NOT NULL PRIMARY KEY,
+                        not_before BIGINT NOT NULL
+                    )
+                    """
+            )),
+            // The foreign key from migration 1 already indexes auth.username.
+            new Migration(8, "drop idx_auth_username, a duplicate of the foreign key index",
+                    conn -> dropIndexIfExists(conn, "auth", "idx_auth_username"))
+    );
+
+    private SchemaMigrations() {
+    }
+
+    static void apply(Connection conn) throws SQLException, DataAccessException {
+        execute(conn, """
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INT NOT NULL PRIMARY KEY,
+                    description VARCHAR(255) NOT NULL,
+                    applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+
+        int current = currentVersion(conn);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() <= current) {
+                continue;
+            }
+            migration.step().apply(conn);
+            try (var ps = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                ps.setInt(1, migration.version());
+                ps.setString(2, migration.description());
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private static int currentVersion(Connection conn) throws SQLException {
+        try (var ps = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM schema_version");
+             var rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static Step sql(String... statements) {
+        return conn -> {
+            for (String statement : statements) {
+                execute(conn, statement);
+            }
+        };
+    }
+
+    private static void execute(Connection conn, String statement) throws SQLException {
+        try (var ps = conn.prepareStatement(statement)) {
+            ps.executeUpdate();
+        }
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        String statement = """
+                SELECT COUNT(*)
+                FROM information_schema.columns
+                WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?
+                """;
+
+        try (var ps = conn.prepareStatement(statement)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+
+            try (var rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static void addColumnIfMissing(Connection conn, String table, String column, String definition)
+            throws SQLException {
+        if (!columnExists(conn, table, column)) {
+            execute(conn, "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    private static boolean indexExists(Connection conn, String table, String index) throws SQLException {
+        String statement = """
+                SELECT COUNT(*)
+                FROM information_schema.statistics
+                WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?
+                """;
+
+        try (var ps = conn.prepareStatement(statement)) {
+            ps.setString(1, table);
+            ps.setString(2, index);
+
+            try (var rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static void createIndexIfMissing(Connection conn, String table, String index, String column)
+            throws SQLException {
+        if (!indexExists(conn, table, index)) {
+            execute(conn, "CREATE INDEX " + index + " ON " + table + " (" + column + ")");
+        }
+    }
+
+    private static void dropIndexIfExists(Connection conn, String table, String index) throws SQLException {
+        if (indexExists(conn, table, index)) {
+            execute(conn, "DROP INDEX " + index + " ON " + table);
+        }
+    }
+
+    // Re-encodes rows still holding only JSON; rows done by an earlier attempt are skipped.
+    private static void encodeJsonGames(Connection conn) throws SQLException {
+        var gson = LegacyGameAdapter.gson();
+
+        try (var select = conn.prepareStatement("SELECT game_id, game_json FROM games WHERE game_state IS NULL");
+             var update = conn.prepareStatement("UPDATE games SET game_state = ? WHERE game_id = ?");
+             var rs = select.executeQuery()) {
+
+            int batched = 0;
+            while (rs.next()) {
+                var game = gson.fromJson(rs.getString("game_json"), ChessGame.class);
+                update.setBytes(1, GameCodec.encode(game));
+                update.setInt(2, rs.getInt("game_id"));
+                update.addBatch();
+
+                if (++batched % 500 == 0) {
+                    update.executeBatch();
+                }
+            }
+            update.executeBatch();
+        }
+    }
+}
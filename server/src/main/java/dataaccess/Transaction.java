@@ -0,0 +1,10 @@
+package dataaccess;
+
+/**
+ * Work run by {@link DataAccess#inTransaction}. Every call made through the
+ * supplied {@code tx} is part of the same unit of work.
+ */
+@FunctionalInterface
+public interface Transaction<T, E extends Exception> {
+    T run(DataAccess tx) throws DataAccessException, E;
+}
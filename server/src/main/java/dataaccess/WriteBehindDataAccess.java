@@ -0,0 +1,399 @@
+package dataaccess;
+
+import chess.ChessGame;
+import model.GameData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers game updates in memory and writes them to the wrapped {@link DataAccess}
+ * in the background. A game that changes several times between flushes is written
+ * once, with its latest state; every other operation goes straight through.
+ * <p>
+ * Version checks happen here, against the buffered state, so this layer must be
+ * the only writer of games to the backend it wraps. If something else changes a
+ * game anyway, the flush keeps that change and drops the buffered one, counting
+ * it in {@link #getConflictCount}. Updates that have not been flushed are lost if
+ * the process dies; {@link #close} flushes them.
+ * <p>
+ * A transaction's game updates are staged and checked, with their games locked,
+ * before the backend commits, so a conflict rolls back the whole transaction.
+ * They are buffered once it has committed.
+ * <p>
+ * Games stay buffered after a flush until they have been idle for a while, so
+ * that the versions handed out keep matching. A caller that holds a version from
+ * before an eviction gets one {@link ConcurrentUpdateException} and re-reads.
+ */
+public class WriteBehindDataAccess extends ForwardingDataAccess {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindDataAccess.class);
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int LOCK_STRIPES = 64;
+
+    /*
+     * Mutable, guarded by the game's stripe lock. backendVersion is the version
+     * of the copy the backend holds, which the next flush has to present.
+     */
+    private static final class Entry {
+        GameData game;
+        int backendVersion;
+        boolean dirty;
+        long touchedAt;
+
+        Entry(GameData stored) {
+            this.game = stored;
+            this.backendVersion = stored.version();
+        }
+    }
+
+    private record Staged(GameData game, int expectedVersion) { }
+
+    private final Map<Integer, Entry> entries;
+    private final ReentrantLock[] locks;
+    private final long idleMillis;
+    private final ScheduledExecutorService flusher;
+    private final AtomicLong updates;
+    private final AtomicLong writes;
+    private final AtomicLong flushFailures;
+    private final AtomicLong conflicts;
+
+    // Only set on a transaction's view: updates wait here until commit.
+    private final Map<Integer, Staged> staged;
+
+    public WriteBehindDataAccess(DataAccess delegate) {
+        this(delegate, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_IDLE_MILLIS);
+    }
+
+    /**
+     * @param flushIntervalMillis how often to flush; 0 only flushes on {@link #flush} and {@link #close}
+     * @param idleMillis          how long a flushed game stays buffered without updates
+     */
+    public WriteBehindDataAccess(DataAccess delegate, long flushIntervalMillis, long idleMillis) {
+        super(delegate);
+        this.entries = new ConcurrentHashMap<>();
+        this.locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.idleMillis = idleMillis;
+        this.updates = new AtomicLong();
+        this.writes = new AtomicLong();
+        this.flushFailures = new AtomicLong();
+        this.conflicts = new AtomicLong();
+        this.staged = null;
+
+        if (flushIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "write-behind-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    private WriteBehindDataAccess(WriteBehindDataAccess buffer, DataAccess tx) {
+        super(tx);
+        this.entries = buffer.entries;
+        this.locks = buffer.locks;
+        this.idleMillis = buffer.idleMillis;
+        this.updates = buffer.updates;
+        this.writes = buffer.writes;
+        this.flushFailures = buffer.flushFailures;
+        this.conflicts = buffer.conflicts;
+        this.flusher = null;
+        this.staged = (buffer.staged != null) ? new LinkedHashMap<>(buffer.staged) : new LinkedHashMap<>();
+    }
+
+    /**
+     * @return how many game updates were accepted
+     */
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    /**
+     * @return how many game writes reached the backend
+     */
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * @return how many background flushes failed; their games stay dirty and are retried on the next one
+     */
+    public long getFlushFailureCount() {
+        return flushFailures.get();
+    }
+
+    /**
+     * @return how many buffered updates were dropped because another writer changed the game in the backend
+     */
+    public long getConflictCount() {
+        return conflicts.get();
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.dirty) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public void clear() throws DataAccessException {
+        entries.clear();
+        delegate.clear();
+    }
+
+    @Override
+    public GameData getGame(int gameID) throws DataAccessException {
+        GameData buffered = bufferedCopy(gameID);
+        return (buffered != null) ? buffered : delegate.getGame(gameID);
+    }
+
+    @Override
+    public Collection<GameData> listGames() throws DataAccessException {
+        List<GameData> games = new ArrayList<>();
+        for (GameData stored : delegate.listGames()) {
+            GameData buffered = bufferedCopy(stored.gameID());
+            games.add(buffered != null ? buffered : stored);
+        }
+        return games;
+    }
+
+    @Override
+    public <E extends Exception> void streamGames(GameVisitor<E> visitor) throws DataAccessException, E {
+        delegate.streamGames(stored -> {
+            GameData buffered = bufferedCopy(stored.gameID());
+            visitor.visit(buffered != null ? buffered : stored);
+        });
+    }
+
+    @Override
+    public void updateGame(GameData game) throws DataAccessException {
+        GameData updated = copyOf(game, game.version() + 1);
+
+        if (staged != null) {
+            GameData current = getGame(game.gameID());
+            if (current == null) {
+                throw new DataAccessException("Game not found");
+            }
+            if (current.version() != game.version()) {
+                throw new ConcurrentUpdateException("Game was modified concurrently");
+            }
+            Staged previous = staged.get(game.gameID());
+            int expected = (previous != null) ? previous.expectedVersion() : game.version();
+            staged.put(game.gameID(), new Staged(updated, expected));
+            return;
+        }
+
+        apply(updated, game.version());
+    }
+
+    @Override
+    public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+        WriteBehindDataAccess[] view = new WriteBehindDataAccess[1];
+        List<ReentrantLock> reserved = new ArrayList<>();
+        try {
+            T result = delegate.inTransaction(tx -> {
+                view[0] = new WriteBehindDataAccess(this, tx);
+                T value = work.run(view[0]);
+                // A conflict found here rolls the whole transaction back.
+                if (staged == null) {
+                    reserve(tx, view[0].staged, reserved);
+                }
+                return value;
+            });
+
+            if (staged != null) {
+                staged.putAll(view[0].staged);
+                return result;
+            }
+            // Still holding the games' locks, so the versions checked before commit still match.
+            for (Staged update : view[0].staged.values()) {
+                apply(update.game(), update.expectedVersion());
+            }
+            return result;
+        } finally {
+            for (int i = reserved.size() - 1; i >= 0; i--) {
+                reserved.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes every buffered update to the backend and drops games that have
+     * been idle for longer than the configured time.
+     */
+    public void flush() throws DataAccessException {
+        long now = System.currentTimeMillis();
+        for (Integer gameID : entries.keySet()) {
+            ReentrantLock lock = lockFor(gameID);
+            lock.lock();
+            try {
+                Entry entry = entries.get(gameID);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.dirty) {
+                    write(gameID, entry);
+                } else if (now - entry.touchedAt >= idleMillis) {
+                    entries.remove(gameID);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        try {
+            flush();
+        } finally {
+            super.close();
+        }
+    }
+
+    private void apply(GameData updated, int expectedVersion) throws DataAccessException {
+        int gameID = updated.gameID();
+        ReentrantLock lock = lockFor(gameID);
+        lock.lock();
+        try {
+            Entry entry = checkedEntry(delegate, gameID, expectedVersion);
+            entry.game = updated;
+            entry.dirty = true;
+            entry.touchedAt = System.currentTimeMillis();
+            updates.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Locks the stripes of a transaction's staged games, in stripe order so two
+     * transactions cannot deadlock, and checks their versions. The locks are
+     * added to held, which the caller releases after it has applied the updates.
+     */
+    private void reserve(DataAccess tx, Map<Integer, Staged> updates, List<ReentrantLock> held)
+            throws DataAccessException {
+        updates.keySet().stream()
+                .map(gameID -> Math.floorMod(gameID, LOCK_STRIPES))
+                .distinct()
+                .sorted()
+                .forEach(stripe -> {
+                    locks[stripe].lock();
+                    held.add(locks[stripe]);
+                });
+        for (Staged update : updates.values()) {
+            checkedEntry(tx, update.game().gameID(), update.expectedVersion());
+        }
+    }
+
+    // Caller holds the game's stripe lock.
+    private Entry checkedEntry(DataAccess source, int gameID, int expectedVersion) throws DataAccessException {
+        Entry entry = entries.get(gameID);
+        if (entry == null) {
+            GameData stored = source.getGame(gameID);
+            if (stored == null) {
+                throw new DataAccessException("Game not found");
+            }
+            entry = new Entry(stored);
+            entries.put(gameID, entry);
+        }
+        if (entry.game.version() != expectedVersion) {
+            throw new ConcurrentUpdateException("Game was modified concurrently");
+        }
+        return entry;
+    }
+
+    private void write(int gameID, Entry entry) throws DataAccessException {
+        try {
+            delegate.updateGame(copyOf(entry.game, entry.backendVersion));
+        } catch (DataAccessException e) {
+            // Deleted by a clear, or another writer changed the row: re-read and decide.
+            GameData stored = delegate.getGame(gameID);
+            if (stored == null) {
+                entries.remove(gameID);
+                return;
+            }
+            if (!(e instanceof ConcurrentUpdateException)) {
+                throw e;
+            }
+            // Keep the other writer's update and drop ours; whoever holds our version is told on its next write.
+            entries.remove(gameID);
+            conflicts.incrementAndGet();
+            LOG.warn("Game {} was changed outside the write-behind buffer; dropped the buffered update", gameID);
+            return;
+        }
+
+        entry.backendVersion++;
+        entry.dirty = false;
+        writes.incrementAndGet();
+    }
+
+    private GameData bufferedCopy(int gameID) {
+        if (staged != null) {
+            Staged update = staged.get(gameID);
+            if (update != null) {
+                return copyOf(update.game(), update.game().version());
+            }
+        }
+
+        Entry entry = entries.get(gameID);
+        if (entry == null) {
+            return null;
+        }
+
+        ReentrantLock lock = lockFor(gameID);
+        lock.lock();
+        try {
+            return copyOf(entry.game, entry.game.version());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // An exception escaping here would cancel the schedule, so every failure is caught and counted.
+    void flushQuietly() {
+        try {
+            flush();
+        } catch (DataAccessException | RuntimeException e) {
+            flushFailures.incrementAndGet();
+            LOG.warn("Write-behind flush failed; dirty games stay buffered for the next one", e);
+        }
+    }
+
+    private ReentrantLock lockFor(int gameID) {
+        return locks[Math.floorMod(gameID, LOCK_STRIPES)];
+    }
+
+    private static GameData copyOf(GameData game, int version) {
+        ChessGame copy = (game.game() != null) ? new ChessGame(game.game()) : null;
+        return new GameData(game.gameID(), game.whiteUsername(), game.blackUsername(), game.gameName(),
+                copy, version);
+    }
+}
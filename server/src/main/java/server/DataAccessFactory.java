@@ -0,0 +1,102 @@
+package server;
+
+import dataaccess.CachingDataAccess;
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import dataaccess.DatabaseManager;
+import dataaccess.EmbeddedDataAccess;
+import dataaccess.InMemoryDataAccess;
+import dataaccess.MetricsDataAccess;
+import dataaccess.MySqlDataAccess;
+import dataaccess.WriteBehindDataAccess;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Builds the server's {@link DataAccess} from configuration.
+ * <p>
+ * {@code dataaccess} picks the backend ({@code mysql}, {@code memory} or
+ * {@code embedded}) and {@code dataaccess.decorators} lists the layers to wrap
+ * around it, innermost first. For example {@code writebehind,cache,metrics}
+ * buffers game writes right above the backend, caches auth above that, and
+ * measures everything the services ask for. MySQL gets the auth cache unless
+ * the list is set explicitly.
+ */
+final class DataAccessFactory {
+
+    private DataAccessFactory() {
+    }
+
+    static DataAccess create(ServerConfig config, MetricsRegistry metrics) throws DataAccessException {
+        String backend = config.getString("dataaccess", "mysql").toLowerCase();
+        String defaultDecorators = backend.equals("mysql") ? "cache" : "";
+
+        DataAccess dataAccess = createBackend(backend, config, metrics);
+        for (String decorator : config.getList("dataaccess.decorators", defaultDecorators)) {
+            dataAccess = decorate(decorator.toLowerCase(), dataAccess, config, metrics);
+        }
+        return dataAccess;
+    }
+
+    private static DataAccess createBackend(String backend, ServerConfig config, MetricsRegistry metrics)
+            throws DataAccessException {
+        return switch (backend) {
+            case "mysql" -> {
+                MySqlDataAccess mysql = new MySqlDataAccess();
+                metrics.register("connectionPool", DatabaseManager::getPoolStats);
+                yield mysql;
+            }
+            case "memory" -> new InMemoryDataAccess();
+            case "embedded" -> {
+                EmbeddedDataAccess embedded = new EmbeddedDataAccess(
+                        Path.of(config.getString("embedded.directory", "data")),
+                        config.getInt("embedded.syncIntervalMillis", 50));
+                metrics.register("embeddedStore", () -> Map.of(
+                        "logBytes", embedded.getLogSize(),
+                        "maintenanceFailures", embedded.getMaintenanceFailureCount()));
+                yield embedded;
+            }
+            default -> throw new IllegalArgumentException("Unknown dataaccess backend: " + backend);
+        };
+    }
+
+    private static DataAccess decorate(String decorator, DataAccess inner, ServerConfig config,
+                                       MetricsRegistry metrics) {
+        switch (decorator) {
+            case "cache" -> {
+                CachingDataAccess cache = new CachingDataAccess(inner,
+                        config.getInt("cache.maxEntries", CachingDataAccess.DEFAULT_MAX_ENTRIES),
+                        Duration.ofSeconds(config.getInt("cache.ttlSeconds",
+                                (int) CachingDataAccess.DEFAULT_TTL.toSeconds())),
+                        Duration.ofSeconds(config.getInt("cache.negativeTtlSeconds",
+                                (int) CachingDataAccess.DEFAULT_NEGATIVE_TTL.toSeconds())));
+                metrics.register("authCache", () -> Map.of(
+                        "hits", cache.getHitCount(),
+                        "misses", cache.getMissCount(),
+                        "size", cache.size()));
+                return cache;
+            }
+            case "metrics" -> {
+                MetricsDataAccess measured = new MetricsDataAccess(inner);
+                metrics.register("dataaccess", measured::snapshot);
+                return measured;
+            }
+            case "writebehind" -> {
+                WriteBehindDataAccess buffer = new WriteBehindDataAccess(inner,
+                        config.getInt("writebehind.flushIntervalMillis",
+                                (int) WriteBehindDataAccess.DEFAULT_FLUSH_INTERVAL_MILLIS),
+                        config.getInt("writebehind.idleMillis", (int) WriteBehindDataAccess.DEFAULT_IDLE_MILLIS));
+                metrics.register("writeBehind", () -> Map.of(
+                        "updates", buffer.getUpdateCount(),
+                        "writes", buffer.getWriteCount(),
+                        "pending", buffer.getPendingCount(),
+                        "flushFailures", buffer.getFlushFailureCount(),
+                        "conflicts", buffer.getConflictCount()));
+                return buffer;
+            }
+            default -> throw new IllegalArgumentException("Unknown dataaccess decorator: " + decorator);
+        }
+    }
+}
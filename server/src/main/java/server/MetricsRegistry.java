@@ -0,0 +1,30 @@
+package server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Named sources of runtime figures, collected for the /metrics endpoint.
+ * Each source is asked for a fresh value on every snapshot.
+ */
+public class MetricsRegistry {
+    private final Map<String, Supplier<?>> sources = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a source; a name that is already taken gets a numeric suffix.
+     */
+    public void register(String name, Supplier<?> source) {
+        String key = name;
+        for (int i = 2; sources.putIfAbsent(key, source) != null; i++) {
+            key = name + "." + i;
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        sources.forEach((name, source) -> result.put(name, source.get()));
+        return result;
+    }
+}
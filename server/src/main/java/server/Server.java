@@ -4,60 +4,219 @@ import chess.ChessGame;
 import com.google.gson.Gson;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
-import dataaccess.MySqlDataAccess;
+import dataaccess.GameArchiver;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
 import model.AuthData;
 import model.GameData;
+import org.eclipse.jetty.server.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.ActiveGameRegistry;
+import service.AuthTokens;
 import service.ClearService;
+import service.DatabaseAuthTokens;
+import service.GameImportService;
 import service.GameService;
+import service.NotifyingAuthTokens;
+import service.PasswordHasher;
 import service.ServiceException;
+import service.SignedAuthTokens;
 import service.UserService;
+import websocket.BinaryProtocol;
+import websocket.ConnectionManager;
+import websocket.FrameCompression;
+import websocket.SlowConsumerPolicy;
 import websocket.WebSocketHandler;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class Server {
+    private static final Logger LOG = LoggerFactory.getLogger(Server.class);
+    private static final String PGN_CONTENT_TYPE = "application/x-chess-pgn";
+
     private final Javalin app;
     private final DataAccess dataAccess;
+    private final AuthTokens authTokens;
+    private final PasswordHasher passwordHasher;
     private final Gson gson;
+    private final ActiveGameRegistry activeGames;
+    private final ConnectionManager connections;
     private final WebSocketHandler webSocketHandler;
+    private final GameArchiver archiver;
+    private final ForkJoinPool importPool;
+    private final MetricsRegistry metrics = new MetricsRegistry();
 
     public Server() {
+        this(ServerConfig.load());
+    }
+
+    public Server(ServerConfig config) {
         try {
-            this.dataAccess = new MySqlDataAccess();
+            this.dataAccess = DataAccessFactory.create(config, metrics);
         } catch (DataAccessException e) {
             throw new RuntimeException("Failed to initialize database", e);
         }
 
+        NotifyingAuthTokens notifyingTokens = new NotifyingAuthTokens(createAuthTokens(config, dataAccess));
+        this.authTokens = notifyingTokens;
+        this.passwordHasher = new PasswordHasher(
+                config.getInt("auth.bcrypt.threads", PasswordHasher.defaultThreads()),
+                config.getInt("auth.bcrypt.queueCapacity", PasswordHasher.DEFAULT_QUEUE_CAPACITY),
+                config.getInt("auth.bcrypt.cost", PasswordHasher.DEFAULT_COST)
+        );
         this.gson = new Gson();
-        this.webSocketHandler = new WebSocketHandler(dataAccess);
-
-        this.app = Javalin.create(config -> config.staticFiles.add("web"));
+        this.connections = createConnectionManager(config);
+        this.activeGames = new ActiveGameRegistry(dataAccess,
+                Duration.ofSeconds(config.getInt("games.idleTimeoutSeconds",
+                        (int) ActiveGameRegistry.DEFAULT_IDLE_TIMEOUT.toSeconds())),
+                connections::hasSessions);
+        this.webSocketHandler = new WebSocketHandler(dataAccess, authTokens, connections, activeGames,
+                Duration.ofSeconds(config.getInt("ws.auth.revalidateSeconds",
+                        (int) WebSocketHandler.DEFAULT_REVALIDATE_INTERVAL.toSeconds())));
+        notifyingTokens.addRevocationListener(webSocketHandler::onTokenRevoked);
+        notifyingTokens.addRevokeAllListener(webSocketHandler::clearSessions);
+        metrics.register("websocket", webSocketHandler::connectionStats);
+        metrics.register("activeGames", activeGames::stats);
+        this.archiver = createArchiver(config, dataAccess);
+        this.importPool = new ForkJoinPool(
+                config.getInt("import.parallelism", Runtime.getRuntime().availableProcessors()));
+
+        FrameCompression compression = new FrameCompression(
+                config.getBoolean("ws.compression.enabled", true),
+                config.getInt("ws.compression.minSize", FrameCompression.DEFAULT_MIN_SIZE),
+                config.getInt("ws.compression.level", -1));
+        metrics.register("websocketCompression", compression::stats);
+
+        this.app = Javalin.create(javalinConfig -> {
+            javalinConfig.staticFiles.add("web");
+            javalinConfig.jetty.modifyServletContextHandler(compression::install);
+        });
 
         registerClearEndpoint();
         registerUserEndpoints();
         registerGameEndpoints();
+        registerPgnEndpoints();
         registerWebSocketEndpoint();
+        if (config.getBoolean("metrics.enabled", false)) {
+            registerMetricsEndpoint();
+        }
+    }
+
+    private static ConnectionManager createConnectionManager(ServerConfig config) {
+        String policy = config.getString("ws.slowConsumerPolicy", "coalesce");
+        return new ConnectionManager(
+                config.getInt("ws.queueCapacity", ConnectionManager.DEFAULT_QUEUE_CAPACITY),
+                switch (policy.toLowerCase()) {
+                    case "drop" -> SlowConsumerPolicy.DROP_INTERMEDIATE;
+                    case "coalesce" -> SlowConsumerPolicy.COALESCE;
+                    case "disconnect" -> SlowConsumerPolicy.DISCONNECT;
+                    default -> throw new IllegalArgumentException("Unknown ws.slowConsumerPolicy: " + policy);
+                },
+                Duration.ofMillis(config.getInt("ws.spectators.intervalMillis", 0)));
+    }
+
+    private GameArchiver createArchiver(ServerConfig config, DataAccess dataAccess) {
+        if (!config.getBoolean("archive.enabled", true)) {
+            return null;
+        }
+
+        GameArchiver gameArchiver = new GameArchiver(dataAccess,
+                Duration.ofSeconds(config.getInt("archive.intervalSeconds",
+                        (int) GameArchiver.DEFAULT_INTERVAL.toSeconds())),
+                Duration.ofMinutes(config.getInt("archive.gracePeriodMinutes",
+                        (int) GameArchiver.DEFAULT_GRACE_PERIOD.toMinutes())),
+                config.getInt("archive.batchSize", GameArchiver.DEFAULT_BATCH_SIZE));
+        metrics.register("archivedGames", gameArchiver::getArchivedCount);
+        metrics.register("archiveFailures", gameArchiver::getFailureCount);
+        return gameArchiver;
+    }
+
+    private static AuthTokens createAuthTokens(ServerConfig config, DataAccess dataAccess) {
+        String mode = config.getString("auth.tokens", "database");
+
+        return switch (mode.toLowerCase()) {
+            case "database" -> new DatabaseAuthTokens(dataAccess);
+            case "signed" -> createSignedAuthTokens(config, dataAccess);
+            default -> throw new IllegalArgumentException("Unknown auth.tokens mode: " + mode);
+        };
+    }
+
+    /*
+     * Signing keys are configured as auth.tokens.keys=keyId:base64Secret,... and every
+     * node that should accept the tokens needs the same list. Without keys a random
+     * one is generated, which only works for a single node.
+     *
+     * Revocations are kept in the data store, so nodes sharing it see a logout
+     * within auth.tokens.revocationRefreshSeconds; the handling node sees it at once.
+     */
+    private static AuthTokens createSignedAuthTokens(ServerConfig config, DataAccess dataAccess) {
+        Duration ttl = Duration.ofMinutes(config.getInt("auth.tokens.ttlMinutes",
+                (int) SignedAuthTokens.DEFAULT_TTL.toMinutes()));
+        Duration refreshInterval = Duration.ofSeconds(config.getInt("auth.tokens.revocationRefreshSeconds",
+                (int) SignedAuthTokens.DEFAULT_REFRESH_INTERVAL.toSeconds()));
+        String keyList = config.getString("auth.tokens.keys", "");
+
+        Map<String, byte[]> keys = new LinkedHashMap<>();
+        for (String entry : keyList.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("auth.tokens.keys entries must be keyId:base64Secret");
+            }
+            keys.put(parts[0], Base64.getDecoder().decode(parts[1]));
+        }
+
+        if (keys.isEmpty()) {
+            return SignedAuthTokens.withRandomKey(ttl, dataAccess);
+        }
+
+        String activeKey = config.getString("auth.tokens.activeKey", keys.keySet().iterator().next());
+        return new SignedAuthTokens(keys, activeKey, ttl, dataAccess, refreshInterval);
     }
 
     private void registerWebSocketEndpoint() {
+        // Javalin accepts whichever subprotocol the client lists first; choose binary whenever it is offered.
+        app.wsBeforeUpgrade("/ws", ctx -> {
+            if (BinaryProtocol.isOffered(ctx.header("Sec-WebSocket-Protocol"))) {
+                ctx.header("Sec-WebSocket-Protocol", BinaryProtocol.SUBPROTOCOL);
+            }
+        });
         app.ws("/ws", ws -> {
             ws.onConnect(ctx -> {
                 ctx.session.setIdleTimeout(java.time.Duration.ofMinutes(5));
             });
             ws.onMessage(webSocketHandler::onMessage);
+            ws.onBinaryMessage(webSocketHandler::onBinaryMessage);
             ws.onClose(webSocketHandler::onClose);
         });
     }
 
+    private void registerMetricsEndpoint() {
+        app.get("/metrics", ctx -> writeJson(ctx, 200, metrics.snapshot()));
+    }
+
     private void registerClearEndpoint() {
         app.delete("/db", ctx -> {
             try {
-                ClearService clearService = new ClearService(dataAccess);
+                ClearService clearService = new ClearService(dataAccess, authTokens);
                 clearService.clear();
+                activeGames.clear();
                 writeJson(ctx, 200, new EmptyResponse());
             } catch (ServiceException e) {
                 handleServiceException(ctx, e);
@@ -68,7 +227,7 @@ public class Server {
     private void registerUserEndpoints() {
         app.post("/user", ctx -> {
             try {
-                UserService userService = new UserService(dataAccess);
+                UserService userService = new UserService(dataAccess, authTokens, passwordHasher);
                 CreateUserRequest request = gson.fromJson(ctx.body(), CreateUserRequest.class);
 
                 AuthData auth = userService.register(
@@ -87,7 +246,7 @@ public class Server {
 
         app.post("/session", ctx -> {
             try {
-                UserService userService = new UserService(dataAccess);
+                UserService userService = new UserService(dataAccess, authTokens, passwordHasher);
                 LoginRequest request = gson.fromJson(ctx.body(), LoginRequest.class);
 
                 AuthData auth = userService.login(
@@ -105,7 +264,7 @@ public class Server {
 
         app.delete("/session", ctx -> {
             try {
-                UserService userService = new UserService(dataAccess);
+                UserService userService = new UserService(dataAccess, authTokens, passwordHasher);
                 String authToken = ctx.header("authorization");
 
                 userService.logout(authToken);
@@ -122,7 +281,7 @@ public class Server {
     private void registerGameEndpoints() {
         app.post("/game", ctx -> {
             try {
-                GameService gameService = new GameService(dataAccess);
+                GameService gameService = new GameService(dataAccess, authTokens, activeGames);
                 String authToken = ctx.header("authorization");
                 CreateGameRequest request = gson.fromJson(ctx.body(), CreateGameRequest.class);
 
@@ -138,7 +297,7 @@ public class Server {
 
         app.get("/game", ctx -> {
             try {
-                GameService gameService = new GameService(dataAccess);
+                GameService gameService = new GameService(dataAccess, authTokens, activeGames);
                 String authToken = ctx.header("authorization");
 
                 Collection<GameData> games = gameService.listGames(authToken);
@@ -164,7 +323,7 @@ public class Server {
 
         app.put("/game", ctx -> {
             try {
-                GameService gameService = new GameService(dataAccess);
+                GameService gameService = new GameService(dataAccess, authTokens, activeGames);
                 String authToken = ctx.header("authorization");
                 JoinGameRequest request = gson.fromJson(ctx.body(), JoinGameRequest.class);
 
@@ -186,6 +345,101 @@ public class Server {
         });
     }
 
+    private void registerPgnEndpoints() {
+        app.get("/game/{id}/pgn", ctx -> {
+            try {
+                GameService gameService = new GameService(dataAccess, authTokens, activeGames);
+                String authToken = ctx.header("authorization");
+                int gameID = parseGameID(ctx.pathParam("id"));
+
+                StringBuilder pgn = new StringBuilder();
+                gameService.writePgn(authToken, gameID, pgn);
+
+                ctx.status(200);
+                ctx.contentType(PGN_CONTENT_TYPE);
+                ctx.result(pgn.toString());
+
+            } catch (ServiceException e) {
+                handleServiceException(ctx, e);
+            } catch (Exception e) {
+                writeJson(ctx, 500, new ErrorResponse("Error: " + e.getMessage()));
+            }
+        });
+
+        // Games are written as they are read, so the response never holds them all at once.
+        // Nothing is sent until the first game is ready, so an early failure still gets a proper error.
+        app.get("/games/export", ctx -> {
+            Writer[] body = new Writer[1];
+            try {
+                GameService gameService = new GameService(dataAccess, authTokens, activeGames);
+                String authToken = ctx.header("authorization");
+
+                gameService.exportPgn(authToken, game -> {
+                    if (body[0] == null) {
+                        body[0] = startPgn(ctx);
+                    }
+                    body[0].append(game);
+                });
+                if (body[0] == null) {
+                    body[0] = startPgn(ctx);
+                }
+                body[0].flush();
+
+            } catch (ServiceException | RuntimeException e) {
+                if (body[0] != null) {
+                    abort(ctx, e);
+                } else if (e instanceof ServiceException serviceException) {
+                    handleServiceException(ctx, serviceException);
+                } else {
+                    writeJson(ctx, 500, new ErrorResponse("Error: " + e.getMessage()));
+                }
+            }
+        });
+
+        // The body is parsed as it arrives and stored a chunk at a time, so uploads can be large.
+        app.post("/games/import", ctx -> {
+            try {
+                GameImportService importService = new GameImportService(dataAccess, authTokens, importPool);
+                String authToken = ctx.header("authorization");
+
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(ctx.bodyInputStream(), StandardCharsets.UTF_8));
+                writeJson(ctx, 200, importService.importPgn(authToken, in));
+
+            } catch (ServiceException e) {
+                handleServiceException(ctx, e);
+            } catch (Exception e) {
+                writeJson(ctx, 500, new ErrorResponse("Error: " + e.getMessage()));
+            }
+        });
+    }
+
+    private static Writer startPgn(Context ctx) {
+        ctx.status(200);
+        ctx.contentType(PGN_CONTENT_TYPE);
+        // Chunked even when the client asked to close, so a cut-off body lacks the final chunk.
+        ctx.header("Transfer-Encoding", "chunked");
+        return new BufferedWriter(new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8));
+    }
+
+    /*
+     * Part of a 200 response may already be out, and an error body would only
+     * look like more PGN. Dropping the connection without finishing the
+     * response is how the client learns that the export is incomplete.
+     */
+    private static void abort(Context ctx, Exception cause) {
+        LOG.error("Export failed after the response started", cause);
+        Request.getBaseRequest(ctx.req()).getHttpChannel().abort(cause);
+    }
+
+    private int parseGameID(String value) throws ServiceException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ServiceException("Bad Request");
+        }
+    }
+
     private ChessGame.TeamColor parseColor(String color) throws ServiceException {
         if (color == null || color.isBlank()) {
             throw new ServiceException("Bad Request");
@@ -207,6 +461,10 @@ public class Server {
             writeJson(ctx, 401, new ErrorResponse("Error: unauthorized"));
         } else if ("Already Taken".equals(message)) {
             writeJson(ctx, 403, new ErrorResponse("Error: already taken"));
+        } else if ("Conflict".equals(message)) {
+            writeJson(ctx, 409, new ErrorResponse("Error: game was modified concurrently, please retry"));
+        } else if ("Service Unavailable".equals(message)) {
+            writeJson(ctx, 503, new ErrorResponse("Error: service unavailable, try again later"));
         } else {
             writeJson(ctx, 500, new ErrorResponse("Error: " + message));
         }
@@ -225,6 +483,22 @@ public class Server {
 
     public void stop() {
         app.stop();
+        passwordHasher.shutdown();
+        importPool.shutdownNow();
+        activeGames.close();
+        connections.close();
+        if (archiver != null) {
+            archiver.close();
+        }
+
+        if (dataAccess instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                // Metrics are gone once the server stops, so this is logged with its cause.
+                LOG.error("Failed to close data access; buffered writes may be lost", e);
+            }
+        }
     }
 
     public record CreateUserRequest(String username, String password, String email) { }
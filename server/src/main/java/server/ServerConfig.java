@@ -0,0 +1,72 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Server settings read from an optional server.properties on the classpath.
+ * Any setting can be overridden with a {@code -Dchess.<name>=<value>} system property.
+ */
+public class ServerConfig {
+    private static final String SYSTEM_PROPERTY_PREFIX = "chess.";
+
+    private final Properties props;
+
+    public ServerConfig(Properties props) {
+        this.props = props;
+    }
+
+    public static ServerConfig load() {
+        Properties props = new Properties();
+        try (var propStream = Thread.currentThread().getContextClassLoader().getResourceAsStream("server.properties")) {
+            if (propStream != null) {
+                props.load(propStream);
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("unable to process server.properties", ex);
+        }
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(SYSTEM_PROPERTY_PREFIX)) {
+                props.setProperty(name.substring(SYSTEM_PROPERTY_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        return new ServerConfig(props);
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = props.getProperty(name);
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Setting " + name + " must be an integer: " + value);
+        }
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return (value == null) ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return the comma-separated entries of a setting, trimmed, without blanks
+     */
+    public List<String> getList(String name, String defaultValue) {
+        List<String> values = new ArrayList<>();
+        for (String entry : getString(name, defaultValue).split(",")) {
+            if (!entry.isBlank()) {
+                values.add(entry.trim());
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,248 @@
+package service;
+
+import chess.ChessGame;
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import model.GameData;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps games that people are playing or watching in memory, so the commands
+ * that touch them every few seconds do not read and decode them from storage
+ * each time.
+ * <p>
+ * A game is loaded when a session connects to it with {@link #open} and is
+ * then served from memory by {@link #get}. Writes still go to storage, through
+ * {@link #write} inside the caller's transaction, and the registry takes the
+ * new state with {@link #committed} once that transaction is done. A write that
+ * loses a race drops the held copy, so the retry reads the winner's state.
+ * Games nobody has opened are read from storage as before.
+ * <p>
+ * A game is evicted once no session is connected to it and it has not been
+ * used for the idle timeout.
+ */
+public class ActiveGameRegistry implements AutoCloseable {
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(2);
+
+    public record RegistryStats(int activeGames, long hits, long loads, long evictions) { }
+
+    private static final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        // Null after a failed write until the next read loads it again.
+        GameData game;
+        volatile long lastUsed;
+
+        Entry(long now) {
+            this.lastUsed = now;
+        }
+    }
+
+    private final DataAccess dataAccess;
+    private final long idleTimeoutNanos;
+    private final IntPredicate inUse;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService sweeper;
+    private final Map<Integer, Entry> games = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A registry nothing is opened in, which reads every game from storage.
+     */
+    public ActiveGameRegistry(DataAccess dataAccess) {
+        this(dataAccess, DEFAULT_IDLE_TIMEOUT, gameID -> false, System::nanoTime, false);
+    }
+
+    /**
+     * @param inUse whether any session is still connected to a game
+     */
+    public ActiveGameRegistry(DataAccess dataAccess, Duration idleTimeout, IntPredicate inUse) {
+        this(dataAccess, idleTimeout, inUse, System::nanoTime, true);
+    }
+
+    ActiveGameRegistry(DataAccess dataAccess, Duration idleTimeout, IntPredicate inUse,
+                       LongSupplier clock, boolean sweep) {
+        this.dataAccess = dataAccess;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.inUse = inUse;
+        this.clock = clock;
+
+        if (sweep) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "active-game-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, idleTimeout.toMillis() / 2);
+            sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * Makes a game active, loading it if it is not already held.
+     *
+     * @return a copy of the game, or null if there is no such game
+     */
+    public GameData open(int gameID) throws DataAccessException {
+        Entry entry = games.computeIfAbsent(gameID, id -> new Entry(clock.getAsLong()));
+        GameData game = read(dataAccess, gameID, entry);
+        if (game == null) {
+            games.remove(gameID, entry);
+        }
+        return game;
+    }
+
+    /**
+     * @return a copy of the game, from memory if it is active and from storage
+     * otherwise, or null if there is no such game
+     */
+    public GameData get(int gameID) throws DataAccessException {
+        return get(dataAccess, gameID);
+    }
+
+    /**
+     * Like {@link #get(int)}, but anything not held in memory is read through
+     * {@code tx}. Inside a transaction, pass it here so the read uses the
+     * transaction's connection and snapshot rather than a second one from the pool.
+     */
+    public GameData get(DataAccess tx, int gameID) throws DataAccessException {
+        Entry entry = games.get(gameID);
+        if (entry == null) {
+            return tx.getGame(gameID);
+        }
+        return read(tx, gameID, entry);
+    }
+
+    /**
+     * Stores an update through {@code tx}. If it fails, the held copy is dropped
+     * so the next read sees what is actually stored.
+     */
+    public void write(DataAccess tx, GameData game) throws DataAccessException {
+        try {
+            tx.updateGame(game);
+        } catch (DataAccessException e) {
+            invalidate(game.gameID());
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the state a {@link #write} of {@code game} committed. Games that are
+     * not active, or whose held copy is already newer, are left alone.
+     */
+    public void committed(GameData game) {
+        Entry entry = games.get(game.gameID());
+        if (entry == null) {
+            return;
+        }
+
+        entry.lock.lock();
+        try {
+            // A dropped copy stays dropped: a later write may have committed past this one.
+            if (entry.game != null && entry.game.version() <= game.version()) {
+                entry.game = copyOf(game, game.version() + 1);
+            }
+            entry.lastUsed = clock.getAsLong();
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    public void invalidate(int gameID) {
+        Entry entry = games.get(gameID);
+        if (entry == null) {
+            return;
+        }
+
+        entry.lock.lock();
+        try {
+            entry.game = null;
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * Evicts every game that no session is connected to and that has not been
+     * used for the idle timeout.
+     *
+     * @return how many games were evicted
+     */
+    public int evictIdle() {
+        long now = clock.getAsLong();
+        int evicted = 0;
+        for (var entry : games.entrySet()) {
+            if (now - entry.getValue().lastUsed >= idleTimeoutNanos
+                    && !inUse.test(entry.getKey())
+                    && games.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        evictions.add(evicted);
+        return evicted;
+    }
+
+    public void clear() {
+        games.clear();
+    }
+
+    public boolean isActive(int gameID) {
+        return games.containsKey(gameID);
+    }
+
+    public RegistryStats stats() {
+        return new RegistryStats(games.size(), hits.sum(), loads.sum(), evictions.sum());
+    }
+
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private GameData read(DataAccess source, int gameID, Entry entry) throws DataAccessException {
+        entry.lock.lock();
+        try {
+            entry.lastUsed = clock.getAsLong();
+            if (entry.game != null) {
+                hits.increment();
+            } else {
+                GameData loaded = source.getGame(gameID);
+                loads.increment();
+                if (loaded == null) {
+                    return null;
+                }
+                entry.game = loaded;
+            }
+            // Callers change the game they get before writing it, so they never get the held one.
+            return copyOf(entry.game, entry.game.version());
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    private static GameData copyOf(GameData game, int version) {
+        return new GameData(
+                game.gameID(),
+                game.whiteUsername(),
+                game.blackUsername(),
+                game.gameName(),
+                new ChessGame(game.game()),
+                version
+        );
+    }
+}
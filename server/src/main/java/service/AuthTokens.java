@@ -0,0 +1,36 @@
+package service;
+
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import model.AuthData;
+
+/**
+ * Issues, validates and revokes the auth tokens handed out at register/login.
+ */
+public interface AuthTokens {
+
+    AuthData issue(String username) throws DataAccessException;
+
+    /**
+     * @return the auth data for a valid token, or null if the token is unknown,
+     * expired or revoked
+     */
+    AuthData validate(String authToken) throws DataAccessException;
+
+    void revoke(String authToken) throws DataAccessException;
+
+    /**
+     * Revokes every token issued so far, as when all users are cleared. Tokens
+     * kept in storage go with it, so by default this does nothing.
+     */
+    default void revokeAll() throws DataAccessException {
+    }
+
+    /**
+     * @return tokens whose storage goes through {@code tx}, so issuing a token
+     * can be part of a larger unit of work
+     */
+    default AuthTokens within(DataAccess tx) {
+        return this;
+    }
+}
@@ -6,17 +6,27 @@ import dataaccess.DataAccessException;
 public class ClearService {
 
     private final DataAccess dataAccess;
+    private final AuthTokens authTokens;
 
     public ClearService(DataAccess dataAccess) {
+        this(dataAccess, new DatabaseAuthTokens(dataAccess));
+    }
+
+    /**
+     * @param authTokens revoked along with the data, since tokens that are not
+     *                   stored there would otherwise outlive their users
+     */
+    public ClearService(DataAccess dataAccess, AuthTokens authTokens) {
         this.dataAccess = dataAccess;
+        this.authTokens = authTokens;
     }
 
     public void clear() throws ServiceException {
         try {
             dataAccess.clear();
+            authTokens.revokeAll();
         } catch (DataAccessException e) {
             throw new ServiceException(e.getMessage());
         }
     }
 }
-
@@ -0,0 +1,41 @@
+package service;
+
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import model.AuthData;
+
+import java.util.UUID;
+
+/**
+ * Random UUID tokens stored in the auth table. Every validation is a lookup.
+ */
+public class DatabaseAuthTokens implements AuthTokens {
+
+    private final DataAccess dataAccess;
+
+    public DatabaseAuthTokens(DataAccess dataAccess) {
+        this.dataAccess = dataAccess;
+    }
+
+    @Override
+    public AuthTokens within(DataAccess tx) {
+        return new DatabaseAuthTokens(tx);
+    }
+
+    @Override
+    public AuthData issue(String username) throws DataAccessException {
+        AuthData auth = new AuthData(UUID.randomUUID().toString(), username);
+        dataAccess.createAuth(auth);
+        return auth;
+    }
+
+    @Override
+    public AuthData validate(String authToken) throws DataAccessException {
+        return dataAccess.getAuth(authToken);
+    }
+
+    @Override
+    public void revoke(String authToken) throws DataAccessException {
+        dataAccess.deleteAuth(authToken);
+    }
+}
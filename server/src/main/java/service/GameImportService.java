@@ -0,0 +1,147 @@
+package service;
+
+import chess.ChessGame;
+import chess.InvalidMoveException;
+import chess.PgnReader;
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import model.GameData;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Imports games from PGN.
+ * <p>
+ * The input is read a chunk of games at a time. Each chunk's games are replayed
+ * move by move in parallel on a fork-join pool, since checking every move is
+ * where the time goes, and the valid ones are written in one batch before the
+ * next chunk is read. Memory use depends on the chunk size, not the file size.
+ */
+public class GameImportService {
+    public static final int CHUNK_SIZE = 1_000;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    /**
+     * A game that could not be imported; {@code index} counts games in the input from 1.
+     */
+    public record ImportError(int index, String message) { }
+
+    public record ImportResult(int imported, int rejected, List<ImportError> errors) { }
+
+    private record Checked(int index, GameData game, String error) { }
+
+    private final DataAccess dataAccess;
+    private final AuthTokens authTokens;
+    private final ForkJoinPool validationPool;
+
+    public GameImportService(DataAccess dataAccess, AuthTokens authTokens, ForkJoinPool validationPool) {
+        this.dataAccess = dataAccess;
+        this.authTokens = authTokens;
+        this.validationPool = validationPool;
+    }
+
+    public ImportResult importPgn(String authToken, Reader pgn) throws ServiceException, IOException {
+        requireAuth(authToken);
+
+        PgnReader reader = new PgnReader(pgn);
+        List<ImportError> errors = new ArrayList<>();
+        int imported = 0;
+        int rejected = 0;
+        int index = 0;
+
+        List<PgnReader.PgnGame> chunk = new ArrayList<>(CHUNK_SIZE);
+        PgnReader.PgnGame next;
+        do {
+            next = reader.next();
+            if (next != null) {
+                chunk.add(next);
+            }
+            if (chunk.size() == CHUNK_SIZE || (next == null && !chunk.isEmpty())) {
+                List<Checked> checked = validate(chunk, index);
+                index += chunk.size();
+                chunk.clear();
+
+                List<GameData> valid = new ArrayList<>(checked.size());
+                for (Checked result : checked) {
+                    if (result.game() != null) {
+                        valid.add(result.game());
+                    } else {
+                        rejected++;
+                        if (errors.size() < MAX_REPORTED_ERRORS) {
+                            errors.add(new ImportError(result.index(), result.error()));
+                        }
+                    }
+                }
+                imported += store(valid);
+            }
+        } while (next != null);
+
+        return new ImportResult(imported, rejected, errors);
+    }
+
+    private List<Checked> validate(List<PgnReader.PgnGame> chunk, int firstIndex) throws ServiceException {
+        List<PgnReader.PgnGame> games = List.copyOf(chunk);
+        try {
+            // A parallel stream started from inside the pool runs on the pool's workers.
+            return validationPool.submit(() -> IntStream.range(0, games.size())
+                    .parallel()
+                    .mapToObj(i -> check(firstIndex + i + 1, games.get(i)))
+                    .toList()
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Service Unavailable");
+        } catch (ExecutionException e) {
+            throw new ServiceException("Unable to validate games: " + e.getCause().getMessage());
+        }
+    }
+
+    private static Checked check(int index, PgnReader.PgnGame pgn) {
+        try {
+            ChessGame game = PgnReader.replay(pgn);
+            return new Checked(index, new GameData(0, null, null, gameName(pgn), game), null);
+        } catch (InvalidMoveException e) {
+            return new Checked(index, null, e.getMessage());
+        }
+    }
+
+    // Player names in PGN are not accounts here, so they go into the name rather than the seats.
+    private static String gameName(PgnReader.PgnGame pgn) {
+        String event = pgn.tags().get("Event");
+        String white = pgn.tags().getOrDefault("White", "?");
+        String black = pgn.tags().getOrDefault("Black", "?");
+        String players = white + " vs " + black;
+        String name = (event == null || event.isBlank() || event.equals("?")) ? players : event + ": " + players;
+        return (name.length() > 255) ? name.substring(0, 255) : name;
+    }
+
+    private int store(List<GameData> games) throws ServiceException {
+        if (games.isEmpty()) {
+            return 0;
+        }
+        try {
+            return dataAccess.importGames(games).size();
+        } catch (DataAccessException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    private void requireAuth(String authToken) throws ServiceException {
+        try {
+            if (authToken == null || authToken.isBlank()) {
+                throw new ServiceException("Unauthorized");
+            }
+            if (authTokens.validate(authToken) == null) {
+                throw new ServiceException("Unauthorized");
+            }
+        } catch (DataAccessException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+}
@@ -1,19 +1,51 @@
 package service;
 
 import chess.ChessGame;
+import chess.PgnWriter;
+import dataaccess.ConcurrentUpdateException;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
 import model.AuthData;
 import model.GameData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class GameService {
+    private static final Logger LOG = LoggerFactory.getLogger(GameService.class);
+
+    /**
+     * Receives an export one whole game at a time.
+     */
+    @FunctionalInterface
+    public interface PgnSink {
+        void write(CharSequence game) throws IOException;
+    }
 
     private final DataAccess dataAccess;
+    private final AuthTokens authTokens;
+    private final ActiveGameRegistry games;
 
     public GameService(DataAccess dataAccess) {
+        this(dataAccess, new DatabaseAuthTokens(dataAccess));
+    }
+
+    public GameService(DataAccess dataAccess, AuthTokens authTokens) {
+        this(dataAccess, authTokens, new ActiveGameRegistry(dataAccess));
+    }
+
+    /**
+     * @param games the registry the WebSocket handler keeps connected games in,
+     *              so seat changes made here reach the copies it holds
+     */
+    public GameService(DataAccess dataAccess, AuthTokens authTokens, ActiveGameRegistry games) {
         this.dataAccess = dataAccess;
+        this.authTokens = authTokens;
+        this.games = games;
     }
 
     private boolean isBlank(String s) {
@@ -26,7 +58,7 @@ public class GameService {
                 throw new ServiceException("Unauthorized");
             }
 
-            AuthData auth = dataAccess.getAuth(authToken);
+            AuthData auth = authTokens.validate(authToken);
             if (auth == null) {
                 throw new ServiceException("Unauthorized");
             }
@@ -62,6 +94,64 @@ public class GameService {
         }
     }
 
+    /**
+     * Writes one game's move history as PGN.
+     */
+    public void writePgn(String authToken, int gameID, Appendable out) throws ServiceException, IOException {
+        requireAuth(authToken);
+
+        GameData game;
+        try {
+            game = games.get(gameID);
+        } catch (DataAccessException e) {
+            throw new ServiceException(e.getMessage());
+        }
+        if (game == null) {
+            throw new ServiceException("Bad Request");
+        }
+
+        PgnWriter.write(out, pgnTags(game), game.game());
+    }
+
+    /**
+     * Writes every game as PGN, one after another, reading them from storage as
+     * they are written so memory use does not grow with the number of games.
+     * Games whose history cannot be replayed are left out.
+     */
+    public void exportPgn(String authToken, PgnSink out) throws ServiceException, IOException {
+        requireAuth(authToken);
+
+        try {
+            dataAccess.streamGames(game -> {
+                // Render the game on its own first, so a corrupt one leaves no partial record behind.
+                StringBuilder pgn = new StringBuilder();
+                try {
+                    PgnWriter.write(pgn, pgnTags(game), game.game());
+                } catch (IllegalStateException e) {
+                    // One corrupt history should not end the whole export.
+                    LOG.warn("Skipping game {} in export", game.gameID(), e);
+                    return;
+                }
+                out.write(pgn);
+            });
+        } catch (DataAccessException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
+
+    private static Map<String, String> pgnTags(GameData game) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", game.gameName());
+        tags.put("Site", "?");
+        tags.put("Date", "????.??.??");
+        tags.put("Round", "-");
+        tags.put("White", game.whiteUsername());
+        tags.put("Black", game.blackUsername());
+        tags.put("Result", PgnWriter.result(game.game()));
+        tags.put("GameId", String.valueOf(game.gameID()));
+        return tags;
+    }
+
     public void joinGame(String authToken, ChessGame.TeamColor playerColor, int gameID)
             throws ServiceException {
 
@@ -69,55 +159,69 @@ public class GameService {
         String username = auth.username();
 
         try {
-            GameData game = dataAccess.getGame(gameID);
-            if (game == null) {
-                throw new ServiceException("Bad Request");
+            GameData updated = OptimisticRetry.inTransaction(dataAccess,
+                    tx -> takeSeat(tx, username, playerColor, gameID));
+            if (updated != null) {
+                games.committed(updated);
             }
 
-            if (playerColor == null) {
-                return;
-            }
+        } catch (ConcurrentUpdateException e) {
+            throw new ServiceException("Conflict");
+        } catch (DataAccessException e) {
+            throw new ServiceException(e.getMessage());
+        }
+    }
 
-            String white = game.whiteUsername();
-            String black = game.blackUsername();
+    /**
+     * @return the game as written, or null if nothing changed
+     */
+    private GameData takeSeat(DataAccess tx, String username, ChessGame.TeamColor playerColor, int gameID)
+            throws DataAccessException, ServiceException {
+        GameData game = games.get(tx, gameID);
+        if (game == null) {
+            throw new ServiceException("Bad Request");
+        }
 
-            if (playerColor == ChessGame.TeamColor.WHITE) {
-                if (white != null && !white.equals(username)) {
-                    throw new ServiceException("Already Taken");
-                }
+        if (playerColor == null) {
+            return null;
+        }
 
-                game = new GameData(
-                        game.gameID(),
-                        username,
-                        black,
-                        game.gameName(),
-                        game.game()
-                );
-
-            } else if (playerColor == ChessGame.TeamColor.BLACK) {
-                if (black != null && !black.equals(username)) {
-                    throw new ServiceException("Already Taken");
-                }
+        String white = game.whiteUsername();
+        String black = game.blackUsername();
 
-                game = new GameData(
-                        game.gameID(),
-                        white,
-                        username,
-                        game.gameName(),
-                        game.game()
-                );
+        if (playerColor == ChessGame.TeamColor.WHITE) {
+            if (white != null && !white.equals(username)) {
+                throw new ServiceException("Already Taken");
+            }
 
-            } else {
-                throw new ServiceException("Bad Request");
+            game = new GameData(
+                    game.gameID(),
+                    username,
+                    black,
+                    game.gameName(),
+                    game.game(),
+                    game.version()
+            );
+
+        } else if (playerColor == ChessGame.TeamColor.BLACK) {
+            if (black != null && !black.equals(username)) {
+                throw new ServiceException("Already Taken");
             }
 
-            dataAccess.updateGame(game);
+            game = new GameData(
+                    game.gameID(),
+                    white,
+                    username,
+                    game.gameName(),
+                    game.game(),
+                    game.version()
+            );
 
-        } catch (DataAccessException e) {
-            throw new ServiceException(e.getMessage());
+        } else {
+            throw new ServiceException("Bad Request");
         }
+
+        games.write(tx, game);
+        return game;
     }
 }
-
-
-
@@ -0,0 +1,79 @@
+package service;
+
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import model.AuthData;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Wraps other {@link AuthTokens} and tells listeners about every token revoked
+ * through it, one at a time or all at once, so anything holding on to a
+ * validated token can let go of it. Only revocations made through this
+ * instance are seen; a token revoked on another server is not.
+ */
+public class NotifyingAuthTokens implements AuthTokens {
+
+    private final AuthTokens delegate;
+    private final List<Consumer<String>> listeners;
+    private final List<Runnable> revokeAllListeners;
+
+    public NotifyingAuthTokens(AuthTokens delegate) {
+        this(delegate, new CopyOnWriteArrayList<>(), new CopyOnWriteArrayList<>());
+    }
+
+    private NotifyingAuthTokens(AuthTokens delegate, List<Consumer<String>> listeners,
+                                List<Runnable> revokeAllListeners) {
+        this.delegate = delegate;
+        this.listeners = listeners;
+        this.revokeAllListeners = revokeAllListeners;
+    }
+
+    /**
+     * @param listener called with each revoked token, after it is revoked
+     */
+    public void addRevocationListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener called after {@link #revokeAll}, which revokes every token without naming them
+     */
+    public void addRevokeAllListener(Runnable listener) {
+        revokeAllListeners.add(listener);
+    }
+
+    @Override
+    public AuthTokens within(DataAccess tx) {
+        return new NotifyingAuthTokens(delegate.within(tx), listeners, revokeAllListeners);
+    }
+
+    @Override
+    public AuthData issue(String username) throws DataAccessException {
+        return delegate.issue(username);
+    }
+
+    @Override
+    public AuthData validate(String authToken) throws DataAccessException {
+        return delegate.validate(authToken);
+    }
+
+    @Override
+    public void revoke(String authToken) throws DataAccessException {
+        delegate.revoke(authToken);
+        // Inside a transaction that later rolls back this is a false alarm, which only costs a lookup.
+        for (Consumer<String> listener : listeners) {
+            listener.accept(authToken);
+        }
+    }
+
+    @Override
+    public void revokeAll() throws DataAccessException {
+        delegate.revokeAll();
+        for (Runnable listener : revokeAllListeners) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package service;
+
+import dataaccess.ConcurrentUpdateException;
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import dataaccess.Transaction;
+
+/**
+ * Re-runs a read-modify-write unit of work when its update loses a race with
+ * another writer. Each attempt re-reads the current state, so the work must
+ * not depend on anything it read in an earlier attempt.
+ */
+public final class OptimisticRetry {
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    private OptimisticRetry() {
+    }
+
+    public static <T, E extends Exception> T inTransaction(DataAccess dataAccess, Transaction<T, E> work)
+            throws DataAccessException, E {
+        return inTransaction(dataAccess, DEFAULT_ATTEMPTS, work);
+    }
+
+    public static <T, E extends Exception> T inTransaction(
+            DataAccess dataAccess, int maxAttempts, Transaction<T, E> work) throws DataAccessException, E {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return dataAccess.inTransaction(work);
+            } catch (ConcurrentUpdateException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
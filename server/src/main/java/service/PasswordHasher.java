@@ -0,0 +1,93 @@
+package service;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BCrypt on a small dedicated pool so that a burst of logins can only use
+ * a bounded share of the CPU. When the queue is full callers are turned away
+ * with "Service Unavailable" instead of piling up on request threads.
+ */
+public class PasswordHasher {
+    public static final int DEFAULT_COST = 10;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private static PasswordHasher defaultHasher;
+
+    private final ThreadPoolExecutor executor;
+    private final int cost;
+
+    public PasswordHasher(int threads, int queueCapacity, int cost) {
+        if (cost < 4 || cost > 30) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 30");
+        }
+        this.cost = cost;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static synchronized PasswordHasher getDefault() {
+        if (defaultHasher == null) {
+            defaultHasher = new PasswordHasher(defaultThreads(), DEFAULT_QUEUE_CAPACITY, DEFAULT_COST);
+        }
+        return defaultHasher;
+    }
+
+    public static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    public String hash(String password) throws ServiceException {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    public boolean matches(String password, String hashedPassword) throws ServiceException {
+        return run(() -> BCrypt.checkpw(password, hashedPassword));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> task) throws ServiceException {
+        Future<T> future = submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Service Unavailable");
+        } catch (ExecutionException e) {
+            throw new ServiceException(e.getCause().getMessage());
+        }
+    }
+
+    // Package-private so tests can occupy the pool without depending on how long BCrypt takes.
+    <T> Future<T> submit(Callable<T> task) throws ServiceException {
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceException("Service Unavailable");
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package service;
+
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import model.AuthData;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stateless HMAC-SHA256 signed tokens.
+ * <p>
+ * A token is {@code base64url(keyId|issuedAt|expiry|nonce|username).base64url(hmac)},
+ * with times in epoch milliseconds, and is verified entirely in-process, so any
+ * node holding the signing keys can validate it without a database round trip.
+ * Several keys may be configured so they can be rotated; new tokens are always
+ * signed with the active key.
+ * <p>
+ * Logout stores the token's nonce in {@link DataAccess} until the token would
+ * have expired anyway, and {@link #revokeAll} stores a token epoch there, so
+ * every node sharing the store sees both. Each node keeps a snapshot of them
+ * and reloads it at most once per refresh interval, so a revocation made on
+ * another node takes up to that long to reach this one; on the node that made
+ * it, it applies at once.
+ */
+public class SignedAuthTokens implements AuthTokens {
+    /**
+     * How long tokens last by default, which also bounds how long a logged-out
+     * token still works on other nodes.
+     */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+    /**
+     * How often revocations made on other nodes are picked up by default.
+     */
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(5);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final long NEVER = Long.MIN_VALUE;
+
+    /**
+     * What this node knows of the stored revocations: nonce to the epoch milli
+     * the token expires, and the token epoch, as of {@code loadedAt}.
+     */
+    private record Snapshot(Map<String, Long> revoked, long notBefore, long loadedAt) { }
+
+    // Shared by every view from within(tx), so a revocation made in a transaction shows up at once.
+    private static final class Revocations {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile Snapshot snapshot = new Snapshot(Map.of(), 0, NEVER);
+    }
+
+    private final Map<String, byte[]> keys;
+    private final String activeKeyId;
+    private final Duration ttl;
+    private final Clock clock;
+    private final SecureRandom random;
+    private final DataAccess store;
+    private final long refreshMillis;
+    private final Revocations revocations;
+
+    // Initialized once per key and cloned for each signature, since callers often
+    // run on short-lived virtual threads that would each build their own Mac.
+    private final Map<String, Mac> macs;
+
+    /**
+     * @param store where revocations are kept; nodes that accept each other's
+     *              tokens must share it
+     * @param refreshInterval how long revocations read from {@code store} are
+     *                        trusted before they are read again
+     */
+    public SignedAuthTokens(Map<String, byte[]> keys, String activeKeyId, Duration ttl, DataAccess store,
+                            Duration refreshInterval) {
+        this(keys, activeKeyId, ttl, store, refreshInterval, Clock.systemUTC());
+    }
+
+    SignedAuthTokens(Map<String, byte[]> keys, String activeKeyId, Duration ttl, DataAccess store,
+                     Duration refreshInterval, Clock clock) {
+        if (!keys.containsKey(activeKeyId)) {
+            throw new IllegalArgumentException("Unknown signing key: " + activeKeyId);
+        }
+        for (String keyId : keys.keySet()) {
+            if (keyId.isEmpty() || keyId.contains("|")) {
+                throw new IllegalArgumentException("Invalid signing key id: " + keyId);
+            }
+        }
+        this.keys = Map.copyOf(keys);
+        Map<String, Mac> prototypes = new ConcurrentHashMap<>();
+        this.keys.forEach((keyId, key) -> prototypes.put(keyId, newMac(key)));
+        this.macs = Map.copyOf(prototypes);
+        this.activeKeyId = activeKeyId;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.random = new SecureRandom();
+        this.store = store;
+        this.refreshMillis = refreshInterval.toMillis();
+        this.revocations = new Revocations();
+    }
+
+    private SignedAuthTokens(SignedAuthTokens tokens, DataAccess store) {
+        this.keys = tokens.keys;
+        this.macs = tokens.macs;
+        this.activeKeyId = tokens.activeKeyId;
+        this.ttl = tokens.ttl;
+        this.clock = tokens.clock;
+        this.random = tokens.random;
+        this.store = store;
+        this.refreshMillis = tokens.refreshMillis;
+        this.revocations = tokens.revocations;
+    }
+
+    /**
+     * Creates a single random signing key. Tokens only survive as long as this
+     * process, so this is only suitable for a single node.
+     */
+    public static SignedAuthTokens withRandomKey(Duration ttl, DataAccess store) {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return new SignedAuthTokens(Map.of("local", key), "local", ttl, store, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    @Override
+    public AuthTokens within(DataAccess tx) {
+        return new SignedAuthTokens(this, tx);
+    }
+
+    @Override
+    public AuthData issue(String username) {
+        byte[] nonce = new byte[9];
+        random.nextBytes(nonce);
+
+        // Never before notBefore, so a token issued just after revokeAll is not caught by it.
+        long issuedAt = Math.max(clock.millis(), revocations.snapshot.notBefore());
+        long expiresAt = issuedAt + ttl.toMillis();
+        String payload = activeKeyId + "|" + issuedAt + "|" + expiresAt + "|"
+                + ENCODER.encodeToString(nonce) + "|" + username;
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+
+        String token = ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(activeKeyId, payloadBytes));
+        return new AuthData(token, username);
+    }
+
+    @Override
+    public AuthData validate(String authToken) throws DataAccessException {
+        if (authToken == null) {
+            return null;
+        }
+
+        int dot = authToken.indexOf('.');
+        if (dot <= 0 || dot != authToken.lastIndexOf('.')) {
+            return null;
+        }
+
+        byte[] payloadBytes;
+        byte[] signature;
+        try {
+            payloadBytes = DECODER.decode(authToken.substring(0, dot));
+            signature = DECODER.decode(authToken.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        String[] parts = new String(payloadBytes, StandardCharsets.UTF_8).split("\\|", 5);
+        if (parts.length != 5 || !keys.containsKey(parts[0])) {
+            return null;
+        }
+
+        if (!MessageDigest.isEqual(signature, sign(parts[0], payloadBytes))) {
+            return null;
+        }
+
+        long issuedAt;
+        long expiresAt;
+        try {
+            issuedAt = Long.parseLong(parts[1]);
+            expiresAt = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        long now = clock.millis();
+        if (now >= expiresAt) {
+            return null;
+        }
+        Snapshot snapshot = current(now);
+        if (issuedAt < snapshot.notBefore() || snapshot.revoked().containsKey(parts[3])) {
+            return null;
+        }
+
+        return new AuthData(authToken, parts[4]);
+    }
+
+    @Override
+    public void revoke(String authToken) throws DataAccessException {
+        if (validate(authToken) == null) {
+            return;
+        }
+
+        String payload = new String(DECODER.decode(authToken.substring(0, authToken.indexOf('.'))),
+                StandardCharsets.UTF_8);
+        String[] parts = payload.split("\\|", 5);
+        String nonce = parts[3];
+        long expiresAt = Long.parseLong(parts[2]);
+        store.addRevokedToken(nonce, expiresAt);
+
+        revocations.lock.lock();
+        try {
+            long now = clock.millis();
+            Map<String, Long> revoked = new HashMap<>();
+            revocations.snapshot.revoked().forEach((id, expiry) -> {
+                if (expiry > now) {
+                    revoked.put(id, expiry);
+                }
+            });
+            revoked.put(nonce, expiresAt);
+            Snapshot snapshot = revocations.snapshot;
+            revocations.snapshot = new Snapshot(Map.copyOf(revoked), snapshot.notBefore(), snapshot.loadedAt());
+        } finally {
+            revocations.lock.unlock();
+        }
+    }
+
+    /**
+     * Revokes every token issued so far, on every node sharing the store; the
+     * users they name may be gone. Nothing is stored per token, so this is a
+     * single timestamp.
+     */
+    @Override
+    public void revokeAll() throws DataAccessException {
+        long notBefore = clock.millis() + 1;
+        store.setTokenEpoch(notBefore);
+
+        revocations.lock.lock();
+        try {
+            Snapshot snapshot = revocations.snapshot;
+            revocations.snapshot = new Snapshot(Map.of(), Math.max(notBefore, snapshot.notBefore()),
+                    snapshot.loadedAt());
+        } finally {
+            revocations.lock.unlock();
+        }
+    }
+
+    int revokedCount() {
+        return revocations.snapshot.revoked().size();
+    }
+
+    /*
+     * Reloads the snapshot once it is older than the refresh interval. Only one
+     * thread reloads; the others keep using the old snapshot meanwhile, except
+     * before the first load.
+     */
+    private Snapshot current(long now) throws DataAccessException {
+        Snapshot snapshot = revocations.snapshot;
+        if (snapshot.loadedAt() != NEVER && now - snapshot.loadedAt() < refreshMillis) {
+            return snapshot;
+        }
+        if (snapshot.loadedAt() == NEVER) {
+            // Nothing to fall back on yet.
+            revocations.lock.lock();
+        } else if (!revocations.lock.tryLock()) {
+            return snapshot;
+        }
+        try {
+            // Reading under the lock means a local revoke cannot be lost to a concurrent reload.
+            Map<String, Long> revoked = store.getRevokedTokens(now);
+            long notBefore = Math.max(store.getTokenEpoch(), revocations.snapshot.notBefore());
+            snapshot = new Snapshot(Map.copyOf(revoked), notBefore, now);
+            revocations.snapshot = snapshot;
+            return snapshot;
+        } finally {
+            revocations.lock.unlock();
+        }
+    }
+
+    private byte[] sign(String keyId, byte[] payload) {
+        Mac mac;
+        try {
+            mac = (Mac) macs.get(keyId).clone();
+        } catch (CloneNotSupportedException e) {
+            mac = newMac(keys.get(keyId));
+        }
+        return mac.doFinal(payload);
+    }
+
+    private static Mac newMac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
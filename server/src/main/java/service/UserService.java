@@ -1,19 +1,29 @@
 package service;
 
+import dataaccess.AlreadyExistsException;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
 import model.AuthData;
 import model.UserData;
-import org.mindrot.jbcrypt.BCrypt;
-
-import java.util.UUID;
 
 public class UserService {
 
     private final DataAccess dataAccess;
+    private final AuthTokens authTokens;
+    private final PasswordHasher passwordHasher;
 
     public UserService(DataAccess dataAccess) {
+        this(dataAccess, new DatabaseAuthTokens(dataAccess));
+    }
+
+    public UserService(DataAccess dataAccess, AuthTokens authTokens) {
+        this(dataAccess, authTokens, PasswordHasher.getDefault());
+    }
+
+    public UserService(DataAccess dataAccess, AuthTokens authTokens, PasswordHasher passwordHasher) {
         this.dataAccess = dataAccess;
+        this.authTokens = authTokens;
+        this.passwordHasher = passwordHasher;
     }
 
     private boolean isBlank(String s) {
@@ -27,17 +37,26 @@ public class UserService {
                 throw new ServiceException("Bad Request");
             }
 
+            // Hashing is the expensive part, so a taken name is turned away before it.
             if (dataAccess.getUser(username) != null) {
                 throw new ServiceException("Already Taken");
             }
 
-            UserData user = new UserData(username, password, email);
-            dataAccess.createUser(user);
+            UserData user = new UserData(username, passwordHasher.hash(password), email);
+
+            // One connection and one transaction for the re-check, the insert and the token.
+            return dataAccess.inTransaction(tx -> {
+                if (tx.getUser(username) != null) {
+                    throw new ServiceException("Already Taken");
+                }
 
-            AuthData auth = new AuthData(UUID.randomUUID().toString(), username);
-            dataAccess.createAuth(auth);
-            return auth;
+                tx.createUser(user);
+                return authTokens.within(tx).issue(username);
+            });
 
+        } catch (AlreadyExistsException e) {
+            // Lost a race with a concurrent registration of the same name.
+            throw new ServiceException("Already Taken");
         } catch (DataAccessException e) {
             throw new ServiceException(e.getMessage());
         }
@@ -58,7 +77,7 @@ public class UserService {
             boolean passwordMatches;
 
             if (storedPassword != null && storedPassword.startsWith("$2")) {
-                passwordMatches = BCrypt.checkpw(password, storedPassword);
+                passwordMatches = passwordHasher.matches(password, storedPassword);
             } else {
                 passwordMatches = storedPassword != null && storedPassword.equals(password);
             }
@@ -67,9 +86,7 @@ public class UserService {
                 throw new ServiceException("Unauthorized");
             }
 
-            AuthData auth = new AuthData(UUID.randomUUID().toString(), username);
-            dataAccess.createAuth(auth);
-            return auth;
+            return authTokens.issue(username);
 
         } catch (DataAccessException e) {
             throw new ServiceException(e.getMessage());
@@ -82,12 +99,12 @@ public class UserService {
                 throw new ServiceException("Unauthorized");
             }
 
-            AuthData auth = dataAccess.getAuth(authToken);
+            AuthData auth = authTokens.validate(authToken);
             if (auth == null) {
                 throw new ServiceException("Unauthorized");
             }
 
-            dataAccess.deleteAuth(authToken);
+            authTokens.revoke(authToken);
 
         } catch (DataAccessException e) {
             throw new ServiceException(e.getMessage());
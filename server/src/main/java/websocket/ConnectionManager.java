@@ -2,114 +2,337 @@ package websocket;
 
 import io.javalin.websocket.WsContext;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ConnectionManager {
-    private final Map<Integer, Map<String, WsContext>> connections =
+/**
+ * Tracks which sessions are connected to which games and fans messages out to them.
+ * <p>
+ * Broadcasts iterate the concurrent maps directly instead of copying them, and
+ * hand each session the same encoded message. Every session has its own
+ * bounded queue and writer, so a broadcast never waits on a session's network
+ * and one slow client cannot hold up the others.
+ * <p>
+ * With a spectator interval set, observers added as spectators do not get
+ * each move. Their game's {@link SpectatorFeed} keeps only the latest position,
+ * and a single timer sends it to all of them at most once per interval, so a
+ * game with thousands of watchers costs one encoded snapshot per interval
+ * rather than one per move. Players, and observers when the interval is zero,
+ * still get every move as it happens. Notifications go to everyone at once.
+ */
+public class ConnectionManager implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private final Map<Integer, Map<String, SessionSender>> connections =
             new ConcurrentHashMap<>();
+    private final Map<Integer, SpectatorFeed> feeds = new ConcurrentHashMap<>();
+    // Every open session that has been sent anything, whether or not it has joined a game.
+    // Each sender also lists the games it is in, so closing a session needs no search.
+    private final Map<WsContext, SessionSender> senders = new ConcurrentHashMap<>();
+    private final int queueCapacity;
+    private final SlowConsumerPolicy policy;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final boolean spectatorTier;
+    private final ScheduledExecutorService spectatorTimer;
+    private final LongAdder spectatorSnapshots = new LongAdder();
+    private final LongAdder coalescedSnapshots = new LongAdder();
+
+    /**
+     * Totals over all sessions. Pending sends are queued messages not yet being
+     * written; dropped and disconnected count what the slow-consumer policy did.
+     * Spectator snapshots counts positions sent to a game's spectators, and
+     * coalesced snapshots the positions they never saw because a later one
+     * replaced them first.
+     */
+    public record ConnectionStats(int sessions, int pendingSends, int maxPendingSends,
+                                  long droppedMessages, long slowDisconnects, int spectators,
+                                  long spectatorSnapshots, long coalescedSnapshots) { }
+
+    /**
+     * One user's place in one game, as seen from the session.
+     */
+    record Membership(int gameID, String username, boolean spectator) { }
+
+    public ConnectionManager() {
+        this(DEFAULT_QUEUE_CAPACITY, SlowConsumerPolicy.COALESCE);
+    }
+
+    /**
+     * @param queueCapacity how many messages may wait for one session before the policy applies
+     */
+    public ConnectionManager(int queueCapacity, SlowConsumerPolicy policy) {
+        this(queueCapacity, policy, Duration.ZERO);
+    }
+
+    /**
+     * @param spectatorInterval the most often spectators are sent the position;
+     *                          zero treats them like players
+     */
+    public ConnectionManager(int queueCapacity, SlowConsumerPolicy policy, Duration spectatorInterval) {
+        this(queueCapacity, policy, spectatorInterval, true);
+    }
+
+    // Tests leave the timer off and call flushSpectators themselves.
+    ConnectionManager(int queueCapacity, SlowConsumerPolicy policy, Duration spectatorInterval, boolean schedule) {
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.spectatorTier = spectatorInterval.isPositive();
+        if (spectatorTier && schedule) {
+            long millis = Math.max(1, spectatorInterval.toMillis());
+            this.spectatorTimer = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("spectator-feed").daemon().factory());
+            spectatorTimer.scheduleAtFixedRate(this::flushSpectators, millis, millis, TimeUnit.MILLISECONDS);
+        } else {
+            this.spectatorTimer = null;
+        }
+    }
 
     public void add(int gameID, String username, WsContext ctx) {
-        Map<String, WsContext> gameConnections =
-                connections.computeIfAbsent(gameID, id -> new ConcurrentHashMap<>());
+        add(gameID, username, ctx, false);
+    }
 
-        WsContext oldCtx = gameConnections.put(username, ctx);
+    /**
+     * Adds a session to a game. A session can be in several games at once; a
+     * user's earlier session in the same game is closed.
+     */
+    public void add(int gameID, String username, WsContext ctx, boolean moveUpdates) {
+        add(gameID, username, ctx, moveUpdates, false);
+    }
+
+    /**
+     * Adds a session to a game, as a spectator if {@code spectator} is set and
+     * this manager has a spectator interval. Adding the same session again
+     * with the other role moves it.
+     */
+    public void add(int gameID, String username, WsContext ctx, boolean moveUpdates, boolean spectator) {
+        boolean watching = spectator && spectatorTier;
+        SessionSender sender = sender(ctx);
+        sender.setMoveUpdates(moveUpdates);
+        sender.memberships().remove(new Membership(gameID, username, !watching));
+        sender.memberships().add(new Membership(gameID, username, watching));
+
+        // Changing a game's map inside compute keeps it from being dropped as empty while it is in use.
+        SessionSender[] replaced = new SessionSender[1];
+        if (watching) {
+            feeds.compute(gameID, (id, feed) -> {
+                SpectatorFeed gameFeed = (feed != null) ? feed : new SpectatorFeed();
+                replaced[0] = gameFeed.watchers().put(username, sender);
+                return gameFeed;
+            });
+        } else {
+            connections.compute(gameID, (id, gameConnections) -> {
+                Map<String, SessionSender> map = (gameConnections != null) ? gameConnections : new ConcurrentHashMap<>();
+                replaced[0] = map.put(username, sender);
+                return map;
+            });
+        }
+        SessionSender other = removeFrom(gameID, username, !watching);
 
-        if (oldCtx != null && oldCtx != ctx) {
-            try {
-                if (oldCtx.session.isOpen()) {
-                    oldCtx.session.close();
+        for (SessionSender old : new SessionSender[] {replaced[0], other}) {
+            if (old != null && old != sender) {
+                old.memberships().remove(new Membership(gameID, username, false));
+                old.memberships().remove(new Membership(gameID, username, true));
+                try {
+                    if (old.context().session.isOpen()) {
+                        old.context().session.close();
+                    }
+                } catch (Exception ignored) {
                 }
-            } catch (Exception ignored) {
             }
         }
     }
 
     public void remove(int gameID, String username) {
-        Map<String, WsContext> gameConnections = connections.get(gameID);
-        if (gameConnections != null) {
-            gameConnections.remove(username);
-            if (gameConnections.isEmpty()) {
-                connections.remove(gameID);
+        for (boolean spectator : new boolean[] {false, true}) {
+            SessionSender removed = removeFrom(gameID, username, spectator);
+            if (removed != null) {
+                removed.memberships().remove(new Membership(gameID, username, spectator));
             }
         }
     }
 
+    private SessionSender removeFrom(int gameID, String username, boolean spectator) {
+        SessionSender[] removed = new SessionSender[1];
+        if (spectator) {
+            feeds.computeIfPresent(gameID, (id, feed) -> {
+                removed[0] = feed.watchers().remove(username);
+                return feed.watchers().isEmpty() ? null : feed;
+            });
+        } else {
+            connections.computeIfPresent(gameID, (id, gameConnections) -> {
+                removed[0] = gameConnections.remove(username);
+                return gameConnections.isEmpty() ? null : gameConnections;
+            });
+        }
+        return removed[0];
+    }
+
+    /**
+     * Removes a closed session from every game it was in.
+     */
     public void remove(WsContext ctx) {
-        for (var gameEntry : connections.entrySet()) {
-            Integer gameID = gameEntry.getKey();
-            Map<String, WsContext> gameConnections = gameEntry.getValue();
-
-            String usernameToRemove = null;
-            for (var userEntry : gameConnections.entrySet()) {
-                if (userEntry.getValue() == ctx) {
-                    usernameToRemove = userEntry.getKey();
-                    break;
-                }
-            }
+        SessionSender sender = senders.remove(ctx);
+        if (sender != null) {
+            detach(sender);
+        }
+    }
 
-            if (usernameToRemove != null) {
-                gameConnections.remove(usernameToRemove);
-                if (gameConnections.isEmpty()) {
-                    connections.remove(gameID);
-                }
-                return;
+    private void detach(SessionSender sender) {
+        for (Membership membership : sender.memberships()) {
+            if (membership.spectator()) {
+                feeds.computeIfPresent(membership.gameID(), (id, feed) -> {
+                    feed.watchers().remove(membership.username(), sender);
+                    return feed.watchers().isEmpty() ? null : feed;
+                });
+            } else {
+                connections.computeIfPresent(membership.gameID(), (id, gameConnections) -> {
+                    gameConnections.remove(membership.username(), sender);
+                    return gameConnections.isEmpty() ? null : gameConnections;
+                });
             }
         }
+        sender.memberships().clear();
+    }
+
+    /**
+     * @return the games the session is in
+     */
+    public Set<Integer> gamesOf(WsContext ctx) {
+        SessionSender sender = senders.get(ctx);
+        if (sender == null) {
+            return Set.of();
+        }
+        Set<Integer> games = new HashSet<>();
+        for (Membership membership : sender.memberships()) {
+            games.add(membership.gameID());
+        }
+        return games;
+    }
+
+    /**
+     * @return whether any session is connected to the game
+     */
+    public boolean hasSessions(int gameID) {
+        return connections.containsKey(gameID) || feeds.containsKey(gameID);
     }
 
     public void clear() {
         connections.clear();
+        feeds.clear();
+        senders.clear();
     }
 
-    public void broadcast(int gameID, String message) {
-        Map<String, WsContext> gameConnections = connections.get(gameID);
-        if (gameConnections == null) {
-            return;
+    @Override
+    public void close() {
+        if (spectatorTimer != null) {
+            spectatorTimer.shutdownNow();
         }
+    }
 
-        Map<String, WsContext> snapshot = new HashMap<>(gameConnections);
+    /**
+     * Sends to one session, in order with anything broadcast to it.
+     */
+    void send(WsContext ctx, OutboundMessage message) {
+        if (!sender(ctx).send(message)) {
+            remove(ctx);
+        }
+    }
 
-        for (var entry : snapshot.entrySet()) {
-            String username = entry.getKey();
-            WsContext ctx = entry.getValue();
+    void broadcast(int gameID, OutboundMessage message) {
+        broadcastExcept(gameID, null, message);
+    }
 
-            try {
-                if (ctx.session.isOpen()) {
-                    ctx.send(message);
-                } else {
-                    remove(gameID, username);
-                }
-            } catch (Exception ignored) {
-                remove(gameID, username);
-            }
+    void broadcastExcept(int gameID, String excludedUsername, OutboundMessage message) {
+        deliverExcept(connections.get(gameID), excludedUsername, message);
+        SpectatorFeed feed = feeds.get(gameID);
+        if (feed != null) {
+            deliverExcept(feed.watchers(), excludedUsername, message);
         }
     }
 
-    public void broadcastExcept(int gameID, String excludedUsername, String message) {
-        Map<String, WsContext> gameConnections = connections.get(gameID);
+    private void deliverExcept(Map<String, SessionSender> gameConnections, String excludedUsername,
+                               OutboundMessage message) {
         if (gameConnections == null) {
             return;
         }
 
-        Map<String, WsContext> snapshot = new HashMap<>(gameConnections);
+        for (var entry : gameConnections.entrySet()) {
+            if (!entry.getKey().equals(excludedUsername)) {
+                deliver(entry.getValue(), message);
+            }
+        }
+    }
 
-        for (var entry : snapshot.entrySet()) {
-            String username = entry.getKey();
-            WsContext ctx = entry.getValue();
+    /**
+     * Sends each connection to the game one of two messages about the same move,
+     * depending on whether it asked for move updates. Spectators may miss
+     * moves, so their feed takes the whole position whatever they asked for.
+     */
+    void broadcastMove(int gameID, OutboundMessage loadGame, OutboundMessage moveApplied) {
+        SpectatorFeed feed = feeds.get(gameID);
+        if (feed != null && feed.publish(loadGame)) {
+            coalescedSnapshots.increment();
+        }
 
-            if (!username.equals(excludedUsername)) {
-                try {
-                    if (ctx.session.isOpen()) {
-                        ctx.send(message);
-                    } else {
-                        remove(gameID, username);
-                    }
-                } catch (Exception ignored) {
-                    remove(gameID, username);
-                }
+        Map<String, SessionSender> gameConnections = connections.get(gameID);
+        if (gameConnections == null) {
+            return;
+        }
+
+        for (SessionSender sender : gameConnections.values()) {
+            deliver(sender, sender.wantsMoveUpdates() ? moveApplied : loadGame);
+        }
+    }
+
+    /**
+     * Sends each game's spectators its latest position, if it changed since
+     * they were last sent one. The spectator timer calls this once per interval.
+     */
+    void flushSpectators() {
+        for (SpectatorFeed feed : feeds.values()) {
+            OutboundMessage snapshot = feed.take();
+            if (snapshot == null) {
+                continue;
             }
+            spectatorSnapshots.increment();
+            for (SessionSender sender : feed.watchers().values()) {
+                deliver(sender, snapshot);
+            }
+        }
+    }
+
+    public ConnectionStats stats() {
+        int pending = 0;
+        int maxPending = 0;
+        for (SessionSender sender : senders.values()) {
+            int count = sender.pendingCount();
+            pending += count;
+            maxPending = Math.max(maxPending, count);
+        }
+        int spectators = 0;
+        for (SpectatorFeed feed : feeds.values()) {
+            spectators += feed.watchers().size();
+        }
+        return new ConnectionStats(senders.size(), pending, maxPending, dropped.sum(), disconnected.sum(),
+                spectators, spectatorSnapshots.sum(), coalescedSnapshots.sum());
+    }
+
+    private SessionSender sender(WsContext ctx) {
+        return senders.computeIfAbsent(ctx,
+                key -> new SessionSender(key, queueCapacity, policy, dropped, disconnected));
+    }
+
+    private void deliver(SessionSender sender, OutboundMessage message) {
+        if (!sender.send(message) && senders.remove(sender.context(), sender)) {
+            detach(sender);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+package websocket;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.eclipse.jetty.websocket.core.WebSocketExtensionRegistry;
+import org.eclipse.jetty.websocket.core.server.WebSocketServerComponents;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * permessage-deflate settings and counters for the WebSocket endpoint.
+ * <p>
+ * Jetty compresses every message once a client negotiates the extension, but
+ * deflating a short notification costs CPU and can make it larger. Installed
+ * on the servlet context, this replaces Jetty's extension with
+ * {@link ThresholdDeflateExtension}, which sends messages under the minimum
+ * size as they are, and counts bytes before and after compression.
+ */
+public final class FrameCompression {
+    public static final int DEFAULT_MIN_SIZE = 256;
+    private static final String EXTENSION_NAME = "permessage-deflate";
+
+    /**
+     * @param ratio compressed bytes over uncompressed bytes for the messages that were
+     *              compressed, or 1 before any were
+     */
+    public record CompressionStats(long compressedMessages, long bytesBeforeCompression,
+                                   long bytesAfterCompression, double ratio,
+                                   long uncompressedMessages, long uncompressedBytes) { }
+
+    private final boolean enabled;
+    private final int minSize;
+    private final int level;
+    private final LongAdder compressedMessages = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder skippedMessages = new LongAdder();
+    private final LongAdder skippedBytes = new LongAdder();
+
+    /**
+     * @param minSize messages shorter than this many bytes are not compressed
+     * @param level   a {@link java.util.zip.Deflater} level, 0 to 9, or -1 for the default
+     */
+    public FrameCompression(boolean enabled, int minSize, int level) {
+        if (level < -1 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9");
+        }
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.level = level;
+    }
+
+    /**
+     * Sets up the extension on a context before it starts. When compression is
+     * disabled the extension is removed, so clients cannot negotiate it.
+     */
+    public void install(ServletContextHandler handler) {
+        handler.setAttribute(WebSocketServerComponents.WEBSOCKET_DEFLATER_POOL_ATTRIBUTE,
+                new DeflaterPool(DeflaterPool.DEFAULT_CAPACITY, level, true));
+        handler.addEventListener(new ServletContextListener() {
+            @Override
+            public void contextInitialized(ServletContextEvent event) {
+                WebSocketComponents components = WebSocketServerComponents.ensureWebSocketComponents(
+                        handler.getServer(), event.getServletContext());
+                WebSocketExtensionRegistry extensions = components.getExtensionRegistry();
+                if (enabled) {
+                    components.addBean(FrameCompression.this, false);
+                    extensions.register(EXTENSION_NAME, ThresholdDeflateExtension.class);
+                } else {
+                    extensions.unregister(EXTENSION_NAME);
+                }
+            }
+        });
+    }
+
+    public CompressionStats stats() {
+        long before = bytesIn.sum();
+        long after = bytesOut.sum();
+        return new CompressionStats(compressedMessages.sum(), before, after,
+                (before == 0) ? 1.0 : (double) after / before,
+                skippedMessages.sum(), skippedBytes.sum());
+    }
+
+    int minSize() {
+        return minSize;
+    }
+
+    void recordCompressed(int length) {
+        compressedMessages.increment();
+        bytesIn.add(length);
+    }
+
+    void recordOutput(int length) {
+        bytesOut.add(length);
+    }
+
+    void recordSkipped(int length) {
+        skippedMessages.increment();
+        skippedBytes.add(length);
+    }
+}
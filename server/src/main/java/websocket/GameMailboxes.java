@@ -0,0 +1,111 @@
+package websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs commands one game at a time: each game with work waiting has a mailbox
+ * drained in order by a single virtual thread, so a game's commands never
+ * overlap, while different games run in parallel. A mailbox goes away as soon
+ * as it is empty, so idle games cost nothing.
+ * <p>
+ * A mailbox holds at most a fixed number of commands, so a client flooding one
+ * game cannot grow the server's memory without limit; commands beyond that
+ * are refused and the caller tells the client.
+ */
+final class GameMailboxes {
+    private static final Logger LOG = LoggerFactory.getLogger(GameMailboxes.class);
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static final class Mailbox {
+        // Only touched inside compute calls on the mailboxes map, which lock the game's entry.
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    }
+
+    private final Map<Integer, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    GameMailboxes() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity how many commands one game may have waiting or running
+     */
+    GameMailboxes(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues a task behind any others for the same game.
+     *
+     * @return false if the game's mailbox is full and the task was not queued
+     */
+    boolean submit(int gameID, Runnable task) {
+        boolean[] created = new boolean[1];
+        boolean[] queued = new boolean[1];
+        mailboxes.compute(gameID, (id, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox();
+                created[0] = true;
+            }
+            if (mailbox.tasks.size() < capacity) {
+                mailbox.tasks.addLast(task);
+                queued[0] = true;
+            }
+            return mailbox;
+        });
+
+        if (created[0]) {
+            start(gameID, task);
+        }
+        return queued[0];
+    }
+
+    /**
+     * @return how many games have commands waiting or running
+     */
+    int activeCount() {
+        return mailboxes.size();
+    }
+
+    private void start(int gameID, Runnable first) {
+        Thread.ofVirtual().name("game-" + gameID).start(() -> drain(gameID, first));
+    }
+
+    private void drain(int gameID, Runnable first) {
+        Runnable task = first;
+        while (task != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Command for game {} failed", gameID, e);
+            } catch (Error e) {
+                // This thread is done for, but the game is not: hand the rest of its mailbox to a new one.
+                Runnable rest = next(gameID);
+                if (rest != null) {
+                    start(gameID, rest);
+                }
+                throw e;
+            }
+            task = next(gameID);
+        }
+    }
+
+    // Drops the task that just ran and takes the next, or removes the mailbox if
+    // there is none, atomically with submit. The running task stays at the head of
+    // the queue, so a submit meanwhile sees the mailbox and does not start a second thread.
+    private Runnable next(int gameID) {
+        Runnable[] next = new Runnable[1];
+        mailboxes.computeIfPresent(gameID, (id, mailbox) -> {
+            mailbox.tasks.pollFirst();
+            next[0] = mailbox.tasks.peekFirst();
+            return (next[0] == null) ? null : mailbox;
+        });
+        return next[0];
+    }
+}
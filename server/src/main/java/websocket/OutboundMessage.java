@@ -0,0 +1,96 @@
+package websocket;
+
+import chess.ChessGame;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import websocket.messages.ServerMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * A server message encoded at most once per form, to be sent to any number of
+ * sessions. The encoded bytes are shared read-only; each send gets its own
+ * view of them.
+ * <p>
+ * Nothing is encoded until a session needs it: the JSON form when a session
+ * using text frames sends it, the binary form when one using the binary
+ * subprotocol does. A LOAD_GAME broadcast alongside a move that every session
+ * takes as a MOVE_APPLIED is never encoded at all.
+ * <p>
+ * The JSON leaves out the game's move history and the bookkeeping kept for
+ * draw detection. Storage needs them, but a client only needs the position,
+ * and they would make every LOAD_GAME grow with the length of the game.
+ */
+final class OutboundMessage {
+    private static final Set<String> SERVER_ONLY_FIELDS =
+            Set.of("startFen", "moveHistory", "positionHash", "repetitionHistory");
+    private static final Gson GSON = new GsonBuilder()
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getDeclaringClass() == ChessGame.class && SERVER_ONLY_FIELDS.contains(field.getName());
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> type) {
+                    return false;
+                }
+            })
+            .create();
+
+    private final ServerMessage message;
+    // Encoding either twice in a race is harmless, so there is no lock.
+    private volatile String json;
+    private volatile ByteBuffer payload;
+    private volatile ByteBuffer binary;
+
+    private OutboundMessage(ServerMessage message) {
+        this.message = message;
+    }
+
+    static OutboundMessage of(ServerMessage message) {
+        return new OutboundMessage(message);
+    }
+
+    ServerMessage.ServerMessageType type() {
+        return message.getServerMessageType();
+    }
+
+    String json() {
+        String encoded = json;
+        if (encoded == null) {
+            encoded = GSON.toJson(message);
+            json = encoded;
+        }
+        return encoded;
+    }
+
+    ByteBuffer payload() {
+        ByteBuffer encoded = payload;
+        if (encoded == null) {
+            encoded = ByteBuffer.wrap(json().getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            payload = encoded;
+        }
+        return encoded.slice();
+    }
+
+    /**
+     * @return whether either form has been encoded yet
+     */
+    boolean isEncoded() {
+        return json != null || binary != null;
+    }
+
+    ByteBuffer binaryPayload() {
+        ByteBuffer encoded = binary;
+        if (encoded == null) {
+            encoded = ByteBuffer.wrap(BinaryProtocol.encode(message)).asReadOnlyBuffer();
+            binary = encoded;
+        }
+        return encoded.slice();
+    }
+}
@@ -0,0 +1,203 @@
+package websocket;
+
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.util.FutureCallback;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.UpgradeResponse;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import websocket.messages.ServerMessage;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The outbound side of one WebSocket session: a bounded queue of messages and
+ * a virtual thread that writes them in order while there are any. A slow
+ * client only fills its own queue; what happens when that is full is decided
+ * by the {@link SlowConsumerPolicy}.
+ * <p>
+ * On Jetty the already-encoded bytes go straight into a text frame, or a
+ * binary frame for sessions that negotiated {@link BinaryProtocol#SUBPROTOCOL},
+ * so a message broadcast to many sessions is encoded once per form rather than
+ * once per session.
+ */
+final class SessionSender {
+    private final WsContext ctx;
+    private final int capacity;
+    private final SlowConsumerPolicy policy;
+    private final LongAdder dropped;
+    private final LongAdder disconnected;
+    private final boolean binary;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<OutboundMessage> queue = new ArrayDeque<>();
+    private final Set<ConnectionManager.Membership> memberships = ConcurrentHashMap.newKeySet();
+    private boolean writing;
+    private boolean closed;
+    private volatile boolean moveUpdates;
+
+    SessionSender(WsContext ctx, int capacity, SlowConsumerPolicy policy, LongAdder dropped, LongAdder disconnected) {
+        this.ctx = ctx;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.dropped = dropped;
+        this.disconnected = disconnected;
+        this.binary = negotiatedBinary(ctx);
+    }
+
+    private static boolean negotiatedBinary(WsContext ctx) {
+        UpgradeResponse upgrade = ctx.session.getUpgradeResponse();
+        return upgrade != null && BinaryProtocol.SUBPROTOCOL.equals(upgrade.getAcceptedSubProtocol());
+    }
+
+    WsContext context() {
+        return ctx;
+    }
+
+    /**
+     * @return the games this session is in, kept by {@link ConnectionManager}
+     */
+    Set<ConnectionManager.Membership> memberships() {
+        return memberships;
+    }
+
+    boolean wantsMoveUpdates() {
+        return moveUpdates;
+    }
+
+    void setMoveUpdates(boolean moveUpdates) {
+        this.moveUpdates = moveUpdates;
+    }
+
+    int pendingCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a message without waiting for it to be written.
+     *
+     * @return false if the session is closed, or was just disconnected for being
+     * too slow; the caller should drop it
+     */
+    boolean send(OutboundMessage message) {
+        boolean startWriter = false;
+        boolean tooSlow = false;
+
+        lock.lock();
+        try {
+            if (closed || !ctx.session.isOpen()) {
+                closed = true;
+                return false;
+            }
+            if (enqueue(message)) {
+                if (!writing) {
+                    writing = true;
+                    startWriter = true;
+                }
+            } else {
+                closed = true;
+                queue.clear();
+                tooSlow = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (tooSlow) {
+            disconnected.increment();
+            try {
+                ctx.session.close(StatusCode.POLICY_VIOLATION, "Client is not keeping up");
+            } catch (Exception ignored) {
+            }
+            return false;
+        }
+        if (startWriter) {
+            Thread.ofVirtual().name("ws-writer").start(this::drain);
+        }
+        return true;
+    }
+
+    // Called with the lock held; false means the policy says to disconnect.
+    private boolean enqueue(OutboundMessage message) {
+        boolean isLoadGame = message.type() == ServerMessage.ServerMessageType.LOAD_GAME;
+        if (policy == SlowConsumerPolicy.COALESCE && isLoadGame) {
+            removeOldestLoadGame();
+        }
+
+        if (queue.size() >= capacity) {
+            if (policy != SlowConsumerPolicy.DROP_INTERMEDIATE || !removeOldestLoadGame()) {
+                return false;
+            }
+        }
+        queue.addLast(message);
+        return true;
+    }
+
+    private boolean removeOldestLoadGame() {
+        Iterator<OutboundMessage> it = queue.iterator();
+        while (it.hasNext()) {
+            if (it.next().type() == ServerMessage.ServerMessageType.LOAD_GAME) {
+                it.remove();
+                dropped.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        while (true) {
+            OutboundMessage next;
+            lock.lock();
+            try {
+                next = closed ? null : queue.pollFirst();
+                if (next == null) {
+                    writing = false;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                write(next);
+            } catch (Exception e) {
+                lock.lock();
+                try {
+                    closed = true;
+                    writing = false;
+                    queue.clear();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    // Blocks this writer until the frame is on the wire, so the queue is what absorbs a slow client.
+    private void write(OutboundMessage message) throws Exception {
+        if (ctx.session instanceof WebSocketSession session) {
+            Frame frame = binary ? new Frame(OpCode.BINARY, message.binaryPayload())
+                    : new Frame(OpCode.TEXT, message.payload());
+            FutureCallback written = new FutureCallback();
+            session.getCoreSession().sendFrame(frame, written, false);
+            written.block();
+        } else if (binary) {
+            ctx.session.getRemote().sendBytes(message.binaryPayload());
+        } else {
+            ctx.session.getRemote().sendString(message.json());
+        }
+    }
+}
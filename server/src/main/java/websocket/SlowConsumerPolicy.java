@@ -0,0 +1,22 @@
+package websocket;
+
+/**
+ * What to do when a session's outbound queue is full because the client reads
+ * more slowly than messages arrive.
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Make room by discarding the oldest queued LOAD_GAME, since a later one
+     * replaces it. Disconnect if no LOAD_GAME is queued.
+     */
+    DROP_INTERMEDIATE,
+    /**
+     * Keep at most one LOAD_GAME queued at any time: a new one replaces the
+     * queued one. Disconnect if the queue is still full.
+     */
+    COALESCE,
+    /**
+     * Disconnect as soon as the queue is full.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,36 @@
+package websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The spectators of one game and the latest position not yet sent to them.
+ * <p>
+ * Each move replaces the pending snapshot instead of queueing another, and
+ * {@link ConnectionManager} hands whatever is pending to every spectator at
+ * most once per interval. All of them get the same encoded message, however
+ * many moves it stands for.
+ */
+final class SpectatorFeed {
+    private final Map<String, SessionSender> watchers = new ConcurrentHashMap<>();
+    private final AtomicReference<OutboundMessage> pending = new AtomicReference<>();
+
+    Map<String, SessionSender> watchers() {
+        return watchers;
+    }
+
+    /**
+     * @return whether this replaced a snapshot that was never sent
+     */
+    boolean publish(OutboundMessage snapshot) {
+        return pending.getAndSet(snapshot) != null;
+    }
+
+    /**
+     * @return the snapshot to send now, or null if nothing changed since the last one
+     */
+    OutboundMessage take() {
+        return pending.getAndSet(null);
+    }
+}
@@ -0,0 +1,60 @@
+package websocket;
+
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.core.ExtensionConfig;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
+import org.eclipse.jetty.websocket.core.WebSocketComponents;
+import org.eclipse.jetty.websocket.core.internal.PerMessageDeflateExtension;
+
+/**
+ * Jetty's permessage-deflate, except that a message sent as one frame shorter
+ * than {@link FrameCompression#minSize} skips the compressor. The protocol
+ * allows any message to be sent uncompressed; it just goes out with RSV1
+ * clear.
+ * <p>
+ * Skipped frames bypass the extension's queue, so they must not be sent while
+ * an earlier message is still being compressed. {@link SessionSender} waits
+ * for each frame to be written before sending the next, which guarantees it.
+ * <p>
+ * Jetty creates one per connection and finds the settings among its
+ * components, where {@link FrameCompression#install} put them.
+ * <p>
+ * {@link PerMessageDeflateExtension} is in Jetty's {@code internal} package,
+ * which is not public API and can change in any release; this was written
+ * against Jetty 11.0.24. FrameCompressionTests negotiates the extension over a
+ * real connection, so a Jetty upgrade that breaks it fails the build.
+ */
+public class ThresholdDeflateExtension extends PerMessageDeflateExtension {
+    private FrameCompression compression;
+
+    @Override
+    public void init(ExtensionConfig config, WebSocketComponents components) {
+        super.init(config, components);
+        compression = components.getBean(FrameCompression.class);
+    }
+
+    @Override
+    public void sendFrame(Frame frame, Callback callback, boolean batch) {
+        if (compression != null && frame.isDataFrame() && frame.getOpCode() != OpCode.CONTINUATION) {
+            int length = frame.getPayloadLength();
+            if (frame.isFin() && length < compression.minSize()) {
+                compression.recordSkipped(length);
+                nextOutgoingFrame(frame, callback, batch);
+                return;
+            }
+            compression.recordCompressed(length);
+        }
+        super.sendFrame(frame, callback, batch);
+    }
+
+    // The compressor hands each deflated frame on through here.
+    @Override
+    protected void nextOutgoingFrame(Frame frame, Callback callback, boolean batch) {
+        if (compression != null && frame.isDataFrame()
+                && (frame.isRsv1() || frame.getOpCode() == OpCode.CONTINUATION)) {
+            compression.recordOutput(frame.getPayloadLength());
+        }
+        super.nextOutgoingFrame(frame, callback, batch);
+    }
+}
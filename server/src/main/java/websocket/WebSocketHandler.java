@@ -1,63 +1,184 @@
 package websocket;
 
 import chess.ChessGame;
+import chess.ChessMove;
 import com.google.gson.Gson;
+import dataaccess.ConcurrentUpdateException;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
+import io.javalin.websocket.WsBinaryMessageContext;
 import io.javalin.websocket.WsContext;
 import io.javalin.websocket.WsMessageContext;
 import model.AuthData;
 import model.GameData;
+import service.ActiveGameRegistry;
+import service.AuthTokens;
+import service.OptimisticRetry;
 import websocket.commands.UserGameCommand;
 import websocket.messages.ServerMessage;
 
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class WebSocketHandler {
+    /**
+     * How long a session trusts the token it connected with before checking it again.
+     */
+    public static final Duration DEFAULT_REVALIDATE_INTERVAL = Duration.ofMinutes(5);
+
     private static final Gson GSON = new Gson();
 
-    private final ConnectionManager connections = new ConnectionManager();
+    // The user a session connected as, and when its token was last checked.
+    private record SessionAuth(AuthData auth, long validatedAt) { }
+
+    private final ConnectionManager connections;
+    private final GameMailboxes mailboxes = new GameMailboxes();
     private final DataAccess dataAccess;
+    private final AuthTokens authTokens;
+    private final ActiveGameRegistry games;
+    private final long revalidateNanos;
+    private final Map<WsContext, SessionAuth> sessions = new ConcurrentHashMap<>();
+    // Bumped on every revocation, so a token checked while it was being revoked is not trusted later.
+    private final AtomicLong revocations = new AtomicLong();
+
+    public WebSocketHandler(DataAccess dataAccess, AuthTokens authTokens) {
+        this(dataAccess, authTokens, new ConnectionManager());
+    }
+
+    public WebSocketHandler(DataAccess dataAccess, AuthTokens authTokens, ConnectionManager connections) {
+        this(dataAccess, authTokens, connections, new ActiveGameRegistry(
+                dataAccess, ActiveGameRegistry.DEFAULT_IDLE_TIMEOUT, connections::hasSessions));
+    }
 
-    public WebSocketHandler(DataAccess dataAccess) {
+    /**
+     * @param games where connected games are held; it should treat a game as in
+     *              use while {@code connections} has sessions for it
+     */
+    public WebSocketHandler(DataAccess dataAccess, AuthTokens authTokens, ConnectionManager connections,
+                            ActiveGameRegistry games) {
+        this(dataAccess, authTokens, connections, games, DEFAULT_REVALIDATE_INTERVAL);
+    }
+
+    /**
+     * @param revalidateAfter how long a session's token is trusted without being
+     *                        checked, which bounds how long a token revoked
+     *                        elsewhere or expired keeps working
+     */
+    public WebSocketHandler(DataAccess dataAccess, AuthTokens authTokens, ConnectionManager connections,
+                            ActiveGameRegistry games, Duration revalidateAfter) {
         this.dataAccess = dataAccess;
+        this.authTokens = authTokens;
+        this.connections = connections;
+        this.games = games;
+        this.revalidateNanos = revalidateAfter.toNanos();
     }
 
+    /**
+     * Parses the command on the calling thread, then queues it behind any other
+     * commands for the same game, so one game's commands run one at a time and
+     * in the order they arrived.
+     */
     public void onMessage(WsMessageContext ctx) {
+        UserGameCommand command;
         try {
-            UserGameCommand command = GSON.fromJson(ctx.message(), UserGameCommand.class);
+            command = GSON.fromJson(ctx.message(), UserGameCommand.class);
+        } catch (Exception e) {
+            sendError(ctx, "Error: " + e.getMessage());
+            return;
+        }
+        dispatch(ctx, command);
+    }
 
-            if (command == null || command.getCommandType() == null) {
-                sendError(ctx, "Error: bad command");
-                return;
-            }
+    /**
+     * Same as {@link #onMessage}, for sessions using {@link BinaryProtocol#SUBPROTOCOL}.
+     */
+    public void onBinaryMessage(WsBinaryMessageContext ctx) {
+        UserGameCommand command;
+        try {
+            command = BinaryProtocol.decodeCommand(ByteBuffer.wrap(ctx.data(), ctx.offset(), ctx.length()));
+        } catch (IllegalArgumentException e) {
+            sendError(ctx, "Error: " + e.getMessage());
+            return;
+        }
+        dispatch(ctx, command);
+    }
+
+    private void dispatch(WsContext ctx, UserGameCommand command) {
+        if (command == null || command.getCommandType() == null) {
+            sendError(ctx, "Error: bad command");
+            return;
+        }
+        if (command.getGameID() == null) {
+            sendError(ctx, "Error: invalid game id");
+            return;
+        }
 
+        if (!mailboxes.submit(command.getGameID(), () -> handle(ctx, command))) {
+            sendError(ctx, "Error: too many commands waiting for this game, please retry");
+        }
+    }
+
+    private void handle(WsContext ctx, UserGameCommand command) {
+        try {
             switch (command.getCommandType()) {
                 case CONNECT -> connect(ctx, command);
                 case LEAVE -> leave(ctx, command);
                 case RESIGN -> resign(ctx, command);
                 case MAKE_MOVE -> makeMove(ctx, command);
+                case RESYNC -> resync(ctx, command);
                 default -> sendError(ctx, "Error: bad command");
             }
+        } catch (ConcurrentUpdateException e) {
+            sendError(ctx, "Error: game was modified concurrently, please retry");
         } catch (Exception e) {
             sendError(ctx, "Error: " + e.getMessage());
         }
     }
 
     public void onClose(WsContext ctx) {
+        sessions.remove(ctx);
         connections.remove(ctx);
     }
 
+    /**
+     * Stops trusting sessions that connected with {@code authToken}; their next
+     * command checks the token again and is refused.
+     */
+    public void onTokenRevoked(String authToken) {
+        revocations.incrementAndGet();
+        sessions.values().removeIf(session -> session.auth().authToken().equals(authToken));
+    }
+
+    /**
+     * Forgets every session's user, as when all tokens are cleared.
+     */
+    public void clearSessions() {
+        revocations.incrementAndGet();
+        sessions.clear();
+    }
+
+    public ConnectionManager.ConnectionStats connectionStats() {
+        return connections.stats();
+    }
+
     private void connect(WsContext ctx, UserGameCommand command) throws DataAccessException {
         AuthData auth = getAuthorizedUser(ctx, command);
         if (auth == null) {
             return;
         }
 
-        GameData game = getValidGame(ctx, command);
+        GameData game = games.open(command.getGameID());
         if (game == null) {
+            sendError(ctx, "Error: invalid game id");
             return;
         }
 
-        connections.add(command.getGameID(), auth.username(), ctx);
+        // Observers may be put in the spectator tier and sent the position less often than players.
+        connections.add(command.getGameID(), auth.username(), ctx, command.wantsMoveUpdates(),
+                !isPlayer(auth.username(), game));
 
         sendLoadGame(ctx, game.game());
 
@@ -65,37 +186,65 @@ public class WebSocketHandler {
         broadcastNotificationExcept(command.getGameID(), auth.username(), notificationText);
     }
 
+    // A client that lost track of the position gets the whole game again, without the others being told.
+    private void resync(WsContext ctx, UserGameCommand command) throws DataAccessException {
+        if (getAuthorizedUser(ctx, command) == null) {
+            return;
+        }
+
+        GameData game = getValidGame(dataAccess, ctx, command);
+        if (game != null) {
+            sendLoadGame(ctx, game.game());
+        }
+    }
+
     private void leave(WsContext ctx, UserGameCommand command) throws DataAccessException {
         AuthData auth = getAuthorizedUser(ctx, command);
         if (auth == null) {
             return;
         }
 
-        GameData game = getValidGame(ctx, command);
+        String username = auth.username();
+        boolean[] seatFreed = new boolean[1];
+
+        GameData game = OptimisticRetry.inTransaction(dataAccess, tx -> {
+            seatFreed[0] = false;
+            GameData current = getValidGame(tx, ctx, command);
+            if (current == null) {
+                return null;
+            }
+
+            if (username.equals(current.whiteUsername())) {
+                current = new GameData(
+                        current.gameID(),
+                        null,
+                        current.blackUsername(),
+                        current.gameName(),
+                        current.game(),
+                        current.version()
+                );
+                games.write(tx, current);
+                seatFreed[0] = true;
+            } else if (username.equals(current.blackUsername())) {
+                current = new GameData(
+                        current.gameID(),
+                        current.whiteUsername(),
+                        null,
+                        current.gameName(),
+                        current.game(),
+                        current.version()
+                );
+                games.write(tx, current);
+                seatFreed[0] = true;
+            }
+            return current;
+        });
+
         if (game == null) {
             return;
         }
-
-        String username = auth.username();
-
-        if (username.equals(game.whiteUsername())) {
-            game = new GameData(
-                    game.gameID(),
-                    null,
-                    game.blackUsername(),
-                    game.gameName(),
-                    game.game()
-            );
-            dataAccess.updateGame(game);
-        } else if (username.equals(game.blackUsername())) {
-            game = new GameData(
-                    game.gameID(),
-                    game.whiteUsername(),
-                    null,
-                    game.gameName(),
-                    game.game()
-            );
-            dataAccess.updateGame(game);
+        if (seatFreed[0]) {
+            games.committed(game);
         }
 
         connections.remove(command.getGameID(), username);
@@ -108,23 +257,31 @@ public class WebSocketHandler {
             return;
         }
 
-        GameData game = getValidGame(ctx, command);
-        if (game == null) {
-            return;
-        }
+        GameData game = OptimisticRetry.inTransaction(dataAccess, tx -> {
+            GameData current = getValidGame(tx, ctx, command);
+            if (current == null) {
+                return null;
+            }
 
-        if (game.game().isGameOver()) {
-            sendError(ctx, "Error: game is already over");
-            return;
-        }
+            if (current.game().isGameOver()) {
+                sendError(ctx, "Error: game is already over");
+                return null;
+            }
+
+            if (!isPlayer(auth.username(), current)) {
+                sendError(ctx, "Error: only players can resign");
+                return null;
+            }
+
+            current.game().setGameOver(true);
+            games.write(tx, current);
+            return current;
+        });
 
-        if (!isPlayer(auth.username(), game)) {
-            sendError(ctx, "Error: only players can resign");
+        if (game == null) {
             return;
         }
-
-        game.game().setGameOver(true);
-        dataAccess.updateGame(game);
+        games.committed(game);
 
         broadcastNotification(command.getGameID(), auth.username() + " has resigned the game");
     }
@@ -135,41 +292,72 @@ public class WebSocketHandler {
             return;
         }
 
-        GameData game = getValidGame(ctx, command);
-        if (game == null) {
-            return;
-        }
+        // A concurrent update drops the held game and re-runs the whole thing against the stored one.
+        GameData game = OptimisticRetry.inTransaction(dataAccess, tx -> {
+            GameData current = getValidGame(tx, ctx, command);
+            if (current == null
+                    || !validateMoveRequest(ctx, command, auth.username(), current)
+                    || !applyMove(ctx, command, current)) {
+                return null;
+            }
 
-        if (!validateMoveRequest(ctx, command, auth.username(), game)) {
-            return;
-        }
+            updateGameOverState(current, current.game().getTeamTurn());
+            games.write(tx, current);
+            return current;
+        });
 
-        if (!applyMove(ctx, command, game)) {
+        if (game == null) {
             return;
         }
+        games.committed(game);
 
         ChessGame.TeamColor currentTurn = game.game().getTeamTurn();
         String currentPlayerUsername = getCurrentPlayerUsername(game, currentTurn);
 
-        updateGameOverState(game, currentTurn);
-        dataAccess.updateGame(game);
-
-        broadcastLoadGame(command.getGameID(), game.game());
+        broadcastMove(command.getGameID(), command.getMove(), game.game());
         broadcastMoveNotification(command, auth.username());
         broadcastGameStateNotification(command.getGameID(), game.game(), currentTurn, currentPlayerUsername);
     }
 
+    /*
+     * CONNECT checks the token and binds the session to its user. Later
+     * commands with the same token use that user without a lookup until the
+     * binding is revalidateNanos old or the token is revoked; other tokens are
+     * checked every time.
+     */
     private AuthData getAuthorizedUser(WsContext ctx, UserGameCommand command) throws DataAccessException {
-        AuthData auth = dataAccess.getAuth(command.getAuthToken());
+        String token = command.getAuthToken();
+        SessionAuth bound = sessions.get(ctx);
+        boolean sameToken = bound != null && bound.auth().authToken().equals(token);
+        if (sameToken && System.nanoTime() - bound.validatedAt() < revalidateNanos) {
+            return bound.auth();
+        }
+
+        long epoch = revocations.get();
+        AuthData auth = authTokens.validate(token);
         if (auth == null) {
+            if (sameToken) {
+                sessions.remove(ctx, bound);
+            }
             sendError(ctx, "Error: invalid auth token");
             return null;
         }
+
+        if (sameToken || command.getCommandType() == UserGameCommand.CommandType.CONNECT) {
+            SessionAuth fresh = new SessionAuth(auth, System.nanoTime());
+            sessions.put(ctx, fresh);
+            if (revocations.get() != epoch) {
+                sessions.remove(ctx, fresh);
+            }
+        }
         return auth;
     }
 
-    private GameData getValidGame(WsContext ctx, UserGameCommand command) throws DataAccessException {
-        GameData game = dataAccess.getGame(command.getGameID());
+    // Connected games come from memory; the version check on write catches a stale copy.
+    // Others are read through source, which is the open transaction when there is one.
+    private GameData getValidGame(DataAccess source, WsContext ctx, UserGameCommand command)
+            throws DataAccessException {
+        GameData game = games.get(source, command.getGameID());
         if (game == null) {
             sendError(ctx, "Error: invalid game id");
             return null;
@@ -229,9 +417,13 @@ public class WebSocketHandler {
                 : game.blackUsername();
     }
 
+    // Threefold repetition and the fifty-move rule only allow a claim, and there is no command to
+    // make one, so only their automatic forms end the game.
     private void updateGameOverState(GameData game, ChessGame.TeamColor currentTurn) {
-        if (game.game().isInCheckmate(currentTurn) || game.game().isInStalemate(currentTurn)) {
-            game.game().setGameOver(true);
+        ChessGame chess = game.game();
+        if (chess.isInCheckmate(currentTurn) || chess.isInStalemate(currentTurn)
+                || chess.isSeventyFiveMoveRule() || chess.isFivefoldRepetition()) {
+            chess.setGameOver(true);
         }
     }
 
@@ -252,17 +444,32 @@ public class WebSocketHandler {
                 null,
                 null
         );
-        ctx.send(GSON.toJson(loadGame));
+        connections.send(ctx, OutboundMessage.of(loadGame));
     }
 
-    private void broadcastLoadGame(int gameID, ChessGame game) {
+    private void broadcastMove(int gameID, ChessMove move, ChessGame game) {
         ServerMessage loadGame = new ServerMessage(
                 ServerMessage.ServerMessageType.LOAD_GAME,
                 game,
                 null,
                 null
         );
-        connections.broadcast(gameID, GSON.toJson(loadGame));
+        ServerMessage moveApplied = ServerMessage.moveApplied(move, game.getPositionHash(), getStatus(game));
+        connections.broadcastMove(gameID, OutboundMessage.of(loadGame), OutboundMessage.of(moveApplied));
+    }
+
+    private ServerMessage.GameStatus getStatus(ChessGame game) {
+        ChessGame.TeamColor toMove = game.getTeamTurn();
+        if (game.isInCheckmate(toMove)) {
+            return ServerMessage.GameStatus.CHECKMATE;
+        } else if (game.isInStalemate(toMove)) {
+            return ServerMessage.GameStatus.STALEMATE;
+        } else if (game.isFivefoldRepetition() || game.isSeventyFiveMoveRule()) {
+            return ServerMessage.GameStatus.DRAW;
+        } else if (game.isInCheck(toMove)) {
+            return ServerMessage.GameStatus.CHECK;
+        }
+        return ServerMessage.GameStatus.ACTIVE;
     }
 
     private void broadcastMoveNotification(UserGameCommand command, String username) {
@@ -283,6 +490,10 @@ public class WebSocketHandler {
             broadcastNotification(gameID, currentPlayerUsername + " is in checkmate");
         } else if (game.isInStalemate(currentTurn)) {
             broadcastNotification(gameID, "Stalemate");
+        } else if (game.isFivefoldRepetition()) {
+            broadcastNotification(gameID, "Draw by fivefold repetition");
+        } else if (game.isSeventyFiveMoveRule()) {
+            broadcastNotification(gameID, "Draw by the seventy-five-move rule");
         } else if (game.isInCheck(currentTurn)) {
             broadcastNotification(gameID, currentPlayerUsername + " is in check");
         }
@@ -295,7 +506,7 @@ public class WebSocketHandler {
                 null,
                 message
         );
-        connections.broadcast(gameID, GSON.toJson(notification));
+        connections.broadcast(gameID, OutboundMessage.of(notification));
     }
 
     private void broadcastNotificationExcept(int gameID, String excludedUsername, String message) {
@@ -305,7 +516,7 @@ public class WebSocketHandler {
                 null,
                 message
         );
-        connections.broadcastExcept(gameID, excludedUsername, GSON.toJson(notification));
+        connections.broadcastExcept(gameID, excludedUsername, OutboundMessage.of(notification));
     }
 
     private void sendError(WsContext ctx, String message) {
@@ -315,6 +526,6 @@ public class WebSocketHandler {
                 message,
                 null
         );
-        ctx.send(GSON.toJson(error));
+        connections.send(ctx, OutboundMessage.of(error));
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package dataaccess;
+
+import model.AuthData;
+import model.UserData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingDataAccessTests {
+
+    private static class CountingDataAccess extends InMemoryDataAccess {
+        int authLookups = 0;
+
+        @Override
+        public AuthData getAuth(String authToken) {
+            authLookups++;
+            return super.getAuth(authToken);
+        }
+    }
+
+    private CountingDataAccess backing;
+    private AtomicLong now;
+    private CachingDataAccess cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backing = new CountingDataAccess();
+        now = new AtomicLong();
+        cache = new CachingDataAccess(backing, 2, Duration.ofSeconds(60), Duration.ofSeconds(5), now::get);
+
+        cache.createUser(new UserData("devin", "lax", "devin@example.com"));
+        cache.createAuth(new AuthData("token1", "devin"));
+    }
+
+    @Test
+    void repeatedLookupsHitCache() throws Exception {
+        assertEquals("devin", cache.getAuth("token1").username());
+        assertEquals("devin", cache.getAuth("token1").username());
+        assertEquals("devin", cache.getAuth("token1").username());
+
+        assertEquals(1, backing.authLookups);
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void entriesExpireAfterTtl() throws Exception {
+        cache.getAuth("token1");
+        now.addAndGet(Duration.ofSeconds(61).toNanos());
+        cache.getAuth("token1");
+
+        assertEquals(2, backing.authLookups);
+    }
+
+    @Test
+    void unknownTokensAreNegativelyCached() throws Exception {
+        assertNull(cache.getAuth("bad-token"));
+        assertNull(cache.getAuth("bad-token"));
+        assertEquals(1, backing.authLookups);
+
+        now.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertNull(cache.getAuth("bad-token"));
+        assertEquals(2, backing.authLookups);
+    }
+
+    @Test
+    void createAuthReplacesCachedMiss() throws Exception {
+        assertNull(cache.getAuth("token2"));
+
+        cache.createAuth(new AuthData("token2", "devin"));
+
+        assertNotNull(cache.getAuth("token2"));
+    }
+
+    @Test
+    void deleteAuthInvalidatesImmediately() throws Exception {
+        assertNotNull(cache.getAuth("token1"));
+
+        cache.deleteAuth("token1");
+
+        assertNull(cache.getAuth("token1"));
+    }
+
+    @Test
+    void clearInvalidatesEverything() throws Exception {
+        assertNotNull(cache.getAuth("token1"));
+
+        cache.clear();
+
+        assertNull(cache.getAuth("token1"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void cacheStaysBounded() throws Exception {
+        cache.getAuth("a");
+        cache.getAuth("b");
+        cache.getAuth("c");
+        cache.getAuth("token1");
+
+        assertTrue(cache.size() <= 2);
+    }
+}
@@ -0,0 +1,132 @@
+package dataaccess;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTests {
+
+    private final List<FakeConnection> opened = new ArrayList<>();
+    private ConnectionPool pool;
+
+    /*
+     * Stands in for a driver connection: remembers whether it was closed and
+     * whether a transaction was left open, and returns null for everything else.
+     */
+    private static final class FakeConnection {
+        boolean closed;
+        boolean autoCommit = true;
+        int rollbacks;
+
+        Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "close" -> {
+                            closed = true;
+                            yield null;
+                        }
+                        case "isClosed" -> closed;
+                        case "isValid" -> !closed;
+                        case "getAutoCommit" -> autoCommit;
+                        case "setAutoCommit" -> {
+                            autoCommit = (Boolean) args[0];
+                            yield null;
+                        }
+                        case "rollback" -> {
+                            rollbacks++;
+                            yield null;
+                        }
+                        default -> null;
+                    });
+        }
+    }
+
+    @BeforeEach
+    void setup() {
+        pool = new ConnectionPool(() -> {
+            FakeConnection fake = new FakeConnection();
+            opened.add(fake);
+            return fake.proxy();
+        }, 2, 2, 100);
+    }
+
+    @Test
+    void closedConnectionsAreReused() throws Exception {
+        pool.borrow().close();
+        pool.borrow().close();
+
+        assertEquals(1, opened.size());
+        assertFalse(opened.get(0).closed);
+        assertEquals(1, pool.stats().idle());
+    }
+
+    @Test
+    void returnedConnectionCannotBeUsed() throws Exception {
+        Connection conn = pool.borrow();
+        conn.close();
+
+        assertTrue(conn.isClosed());
+        assertThrows(SQLException.class, () -> conn.prepareStatement("SELECT 1"));
+    }
+
+    @Test
+    void openTransactionIsRolledBackOnReturn() throws Exception {
+        Connection conn = pool.borrow();
+        conn.setAutoCommit(false);
+        conn.close();
+
+        assertEquals(1, opened.get(0).rollbacks);
+        assertTrue(opened.get(0).autoCommit);
+    }
+
+    @Test
+    void repeatedPreparesAreEstimatedAsHits() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (Connection conn = pool.borrow()) {
+                conn.prepareStatement("SELECT a");
+                conn.prepareStatement("SELECT b");
+            }
+        }
+        try (Connection conn = pool.borrow()) {
+            // Pushes SELECT a out of a two-entry cache.
+            conn.prepareStatement("SELECT c");
+            conn.prepareStatement("SELECT a");
+        }
+
+        assertEquals(4, pool.stats().estimatedStatementCacheHits());
+        assertEquals(4, pool.stats().estimatedStatementCacheMisses());
+        assertEquals(0.5, pool.stats().estimatedStatementCacheHitRate());
+    }
+
+    @Test
+    void sqlTooLongForTheDriverCacheIsNeverAHit() throws Exception {
+        String longSql = "SELECT '" + "x".repeat(ConnectionPool.STATEMENT_CACHE_SQL_LIMIT) + "'";
+        try (Connection conn = pool.borrow()) {
+            conn.prepareStatement(longSql);
+            conn.prepareStatement(longSql);
+        }
+
+        assertEquals(0, pool.stats().estimatedStatementCacheHits());
+        assertEquals(2, pool.stats().estimatedStatementCacheMisses());
+    }
+
+    @Test
+    void exhaustedPoolTimesOut() throws Exception {
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+
+        assertThrows(SQLException.class, () -> pool.borrow());
+
+        first.close();
+        second.close();
+        pool.borrow().close();
+        assertEquals(2, opened.size());
+    }
+}
@@ -0,0 +1,195 @@
+package dataaccess;
+
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddedDataAccessTests {
+
+    @TempDir
+    Path directory;
+
+    private EmbeddedDataAccess dao;
+
+    @BeforeEach
+    void setup() throws Exception {
+        dao = new EmbeddedDataAccess(directory, 0);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dao.close();
+    }
+
+    @Test
+    void dataSurvivesReopen() throws Exception {
+        dao.createUser(new UserData("devin", "pw", "devin@example.com"));
+        dao.createAuth(new AuthData("token1", "devin"));
+        dao.createAuth(new AuthData("token2", "devin"));
+        dao.deleteAuth("token1");
+        int gameID = dao.createGame("game");
+        GameData game = dao.getGame(gameID);
+        dao.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+
+        reopen();
+
+        assertEquals("devin@example.com", dao.getUser("devin").email());
+        assertNull(dao.getAuth("token1"));
+        assertNotNull(dao.getAuth("token2"));
+        GameData reloaded = dao.getGame(gameID);
+        assertEquals("devin", reloaded.whiteUsername());
+        assertEquals(1, reloaded.version());
+        assertEquals(gameID + 1, dao.createGame("next"));
+    }
+
+    @Test
+    void tornTailIsDiscardedOnRecovery() throws Exception {
+        dao.createUser(new UserData("devin", "pw", "devin@example.com"));
+        long intact = dao.getLogSize();
+        dao.createUser(new UserData("jake", "pw", "jake@example.com"));
+        dao.close();
+
+        // Simulate a crash halfway through writing the last record.
+        try (FileChannel log = FileChannel.open(directory.resolve("data.log"), StandardOpenOption.WRITE)) {
+            log.truncate(log.size() - 5);
+        }
+        dao = new EmbeddedDataAccess(directory, 0);
+
+        assertNotNull(dao.getUser("devin"));
+        assertNull(dao.getUser("jake"));
+        assertEquals(intact, dao.getLogSize());
+
+        dao.createUser(new UserData("jake", "pw", "jake@example.com"));
+        reopen();
+        assertNotNull(dao.getUser("jake"));
+    }
+
+    @Test
+    void staleUpdateIsRejected() throws Exception {
+        int gameID = dao.createGame("game");
+        GameData game = dao.getGame(gameID);
+
+        dao.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+
+        assertThrows(ConcurrentUpdateException.class, () ->
+                dao.updateGame(new GameData(gameID, null, "jake", "game", game.game(), game.version())));
+    }
+
+    @Test
+    void compactionKeepsOnlyLiveData() throws Exception {
+        dao.createUser(new UserData("devin", "pw", "devin@example.com"));
+        int gameID = dao.createGame("game");
+        for (int i = 0; i < 50; i++) {
+            GameData game = dao.getGame(gameID);
+            dao.updateGame(new GameData(gameID, "devin", null, "game" + i, game.game(), game.version()));
+            dao.createAuth(new AuthData("token" + i, "devin"));
+            dao.deleteAuth("token" + i);
+        }
+        long before = dao.getLogSize();
+
+        dao.compact();
+
+        assertTrue(dao.getLogSize() < before / 10);
+        assertEquals("game49", dao.getGame(gameID).gameName());
+
+        reopen();
+        assertEquals("game49", dao.getGame(gameID).gameName());
+        assertEquals(50, dao.getGame(gameID).version());
+        assertNotNull(dao.getUser("devin"));
+        assertNull(dao.getAuth("token0"));
+    }
+
+    @Test
+    void tokenRevocationsSurviveReopenAndCompaction() throws Exception {
+        long now = System.currentTimeMillis();
+        dao.addRevokedToken("live", now + 60_000);
+        dao.addRevokedToken("expired", now - 1);
+        dao.setTokenEpoch(now);
+        dao.setTokenEpoch(now - 1);
+
+        reopen();
+        dao.compact();
+        reopen();
+
+        assertEquals(Map.of("live", now + 60_000), dao.getRevokedTokens(now));
+        assertEquals(now, dao.getTokenEpoch());
+    }
+
+    @Test
+    void clearRemovesEverything() throws Exception {
+        dao.createUser(new UserData("devin", "pw", "devin@example.com"));
+        dao.createGame("game");
+
+        dao.clear();
+        reopen();
+
+        assertNull(dao.getUser("devin"));
+        assertTrue(dao.listGames().isEmpty());
+        assertEquals(1, dao.createGame("fresh"));
+    }
+
+    @Test
+    void indexIsReusedOnlyAfterAnOrderlyClose() throws Exception {
+        int gameID = dao.createGame("game");
+        for (int i = 0; i < 3; i++) {
+            GameData game = dao.getGame(gameID);
+            dao.updateGame(new GameData(gameID, "devin", null, "game" + i, game.game(), game.version()));
+        }
+        assertFalse(dao.reusedIndex());
+
+        reopen();
+        assertTrue(dao.reusedIndex());
+        assertEquals("game2", dao.getGame(gameID).gameName());
+        assertEquals(3, dao.getGame(gameID).version());
+        assertEquals(gameID + 1, dao.createGame("next"));
+
+        // A second store opened without closing the first stands in for a crash.
+        EmbeddedDataAccess afterCrash = new EmbeddedDataAccess(directory, 0);
+        try {
+            assertFalse(afterCrash.reusedIndex());
+            assertEquals("game2", afterCrash.getGame(gameID).gameName());
+            assertEquals(2, afterCrash.listGames().size());
+        } finally {
+            afterCrash.close();
+        }
+    }
+
+    @Test
+    void indexIsRebuiltWhenTheLogDoesNotMatch() throws Exception {
+        int gameID = dao.createGame("game");
+        dao.close();
+
+        // The log goes missing, but the index from the closed store is still there.
+        Files.delete(directory.resolve("data.log"));
+        dao = new EmbeddedDataAccess(directory, 0);
+        assertNull(dao.getGame(gameID));
+        dao.createUser(new UserData("devin", "pw", "devin@example.com"));
+        dao.close();
+
+        // The stamped record was cut off, so the index points past the log.
+        try (FileChannel log = FileChannel.open(directory.resolve("data.log"), StandardOpenOption.WRITE)) {
+            log.truncate(log.size() - 5);
+        }
+        dao = new EmbeddedDataAccess(directory, 0);
+        assertFalse(dao.reusedIndex());
+        assertNull(dao.getUser("devin"));
+        assertTrue(dao.listGames().isEmpty());
+    }
+
+    private void reopen() throws Exception {
+        dao.close();
+        dao = new EmbeddedDataAccess(directory, 0);
+    }
+}
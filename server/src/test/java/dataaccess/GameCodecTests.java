@@ -0,0 +1,83 @@
+package dataaccess;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameCodecTests {
+
+    @Test
+    void roundTripsGame() throws Exception {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+
+        ChessGame decoded = GameCodec.decode(GameCodec.encode(game));
+
+        assertEquals(game.getBoard(), decoded.getBoard());
+        assertEquals(ChessGame.TeamColor.BLACK, decoded.getTeamTurn());
+    }
+
+    @Test
+    void encodingIsSmallerThanJson() {
+        ChessGame game = new ChessGame();
+        int jsonBytes = new Gson().toJson(game).getBytes(StandardCharsets.UTF_8).length;
+
+        assertTrue(GameCodec.encode(game).length < jsonBytes / 2);
+    }
+
+    @Test
+    void rejectsUnknownEncoding() {
+        assertThrows(DataAccessException.class, () -> GameCodec.decode(new byte[] {9, 1, 2}));
+        assertThrows(DataAccessException.class, () -> GameCodec.decode(new byte[0]));
+    }
+
+    @Test
+    void legacyGameAwayFromTheStartCannotCastle() {
+        // Kings and rooks are home, but with no history or rights recorded they may have moved and come back.
+        ChessGame legacy = legacy(ChessGame.fromFen("r3k2r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R w KQkq - 0 1"));
+
+        assertFalse(legacy.validMoves(new ChessPosition(1, 5))
+                .contains(new ChessMove(new ChessPosition(1, 5), new ChessPosition(1, 7), null)));
+        assertTrue(legacy.toFen().contains(" w - "));
+    }
+
+    @Test
+    void legacyGameRecoversCastlingRightsFromItsHistory() throws Exception {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(new ChessPosition(1, 7), new ChessPosition(3, 6), null));
+        game.makeMove(new ChessMove(new ChessPosition(8, 7), new ChessPosition(6, 6), null));
+        game.makeMove(new ChessMove(new ChessPosition(1, 8), new ChessPosition(1, 7), null));
+        game.makeMove(new ChessMove(new ChessPosition(6, 6), new ChessPosition(8, 7), null));
+        game.makeMove(new ChessMove(new ChessPosition(1, 7), new ChessPosition(1, 8), null));
+
+        ChessGame legacy = legacy(game);
+
+        assertEquals(game.toFen(), legacy.toFen());
+        assertTrue(legacy.toFen().contains(" b Qkq "));
+        assertEquals(game.getPositionHash(), legacy.getPositionHash());
+    }
+
+    @Test
+    void legacyGameAtTheStartKeepsItsRights() {
+        assertEquals(ChessGame.STARTING_FEN, legacy(new ChessGame()).toFen());
+    }
+
+    // Stores the game as it was written before castling rights were kept.
+    private static ChessGame legacy(ChessGame game) {
+        JsonObject json = new Gson().toJsonTree(game).getAsJsonObject();
+        json.remove("castlingRights");
+        json.remove("positionHash");
+        if (game.getMoveHistory().isEmpty()) {
+            json.remove("moveHistory");
+            json.remove("startFen");
+        }
+        return LegacyGameAdapter.gson().fromJson(json, ChessGame.class);
+    }
+}
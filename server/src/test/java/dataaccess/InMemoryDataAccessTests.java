@@ -0,0 +1,112 @@
+package dataaccess;
+
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryDataAccessTests {
+
+    private static final int THREADS = 8;
+
+    private InMemoryDataAccess dao;
+
+    @BeforeEach
+    void setup() {
+        dao = new InMemoryDataAccess();
+    }
+
+    @Test
+    void concurrentCreateGameGivesUniqueIds() throws Exception {
+        List<Integer> ids = runConcurrently(500, i -> dao.createGame("game" + i));
+
+        Set<Integer> unique = new HashSet<>(ids);
+        assertEquals(500, unique.size());
+        assertEquals(500, dao.listGames().size());
+    }
+
+    @Test
+    void concurrentRegistrationOnlyOneWins() throws Exception {
+        AtomicInteger rejected = new AtomicInteger();
+
+        runConcurrently(100, i -> {
+            try {
+                dao.createUser(new UserData("same", "pw" + i, "e@example.com"));
+            } catch (AlreadyExistsException e) {
+                rejected.incrementAndGet();
+            }
+            return null;
+        });
+
+        assertEquals(99, rejected.get());
+    }
+
+    @Test
+    void concurrentVersionedUpdatesLoseNothing() throws Exception {
+        int gameID = dao.createGame("counter");
+
+        // Each task renames the game to one longer than it was; conflicts retry.
+        runConcurrently(200, i -> {
+            while (true) {
+                GameData current = dao.getGame(gameID);
+                try {
+                    dao.updateGame(new GameData(gameID, null, null, current.gameName() + "x",
+                            current.game(), current.version()));
+                    return null;
+                } catch (ConcurrentUpdateException e) {
+                    // lost the race, try again
+                }
+            }
+        });
+
+        GameData result = dao.getGame(gameID);
+        assertEquals(200, result.version());
+        assertEquals("counter".length() + 200, result.gameName().length());
+    }
+
+    @Test
+    void returnedGamesAreCopies() throws Exception {
+        int gameID = dao.createGame("copy");
+
+        GameData game = dao.getGame(gameID);
+        game.game().setGameOver(true);
+
+        assertFalse(dao.getGame(gameID).game().isGameOver());
+    }
+
+    private interface IndexedTask<T> {
+        T run(int index) throws Exception;
+    }
+
+    private <T> List<T> runConcurrently(int count, IndexedTask<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                Callable<T> callable = () -> task.run(index);
+                futures.add(executor.submit(callable));
+            }
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
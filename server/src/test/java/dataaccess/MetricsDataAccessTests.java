@@ -0,0 +1,29 @@
+package dataaccess;
+
+import model.UserData;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsDataAccessTests {
+
+    @Test
+    void countsCallsAndFailures() throws Exception {
+        MetricsDataAccess dao = new MetricsDataAccess(new InMemoryDataAccess());
+
+        dao.createUser(new UserData("devin", "pw", "devin@example.com"));
+        assertThrows(AlreadyExistsException.class, () ->
+                dao.createUser(new UserData("devin", "pw", "devin@example.com")));
+        dao.getUser("devin");
+        dao.inTransaction(tx -> tx.getUser("devin"));
+
+        Map<String, MetricsDataAccess.OperationStats> stats = dao.snapshot();
+        assertEquals(2, stats.get("createUser").calls());
+        assertEquals(1, stats.get("createUser").failures());
+        assertEquals(2, stats.get("getUser").calls());
+        assertEquals(1, stats.get("transaction").calls());
+        assertFalse(stats.containsKey("listGames"));
+    }
+}
@@ -1,14 +1,20 @@
 package dataaccess;
 
+import model.AuthData;
 import model.GameData;
 import model.UserData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.time.Duration;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MySqlDataAccessTests {
 
+    private static final String HASH = BCrypt.hashpw("pass", BCrypt.gensalt(4));
+
     private DataAccess dao;
 
     @BeforeEach
@@ -19,7 +25,7 @@ public class MySqlDataAccessTests {
 
     @Test
     void createUserSuccess() throws Exception {
-        UserData user = new UserData("test", "pass", "email@test.com");
+        UserData user = new UserData("test", HASH, "email@test.com");
 
         dao.createUser(user);
         UserData result = dao.getUser("test");
@@ -30,16 +36,22 @@ public class MySqlDataAccessTests {
 
     @Test
     void createUserDuplicate() throws Exception {
-        UserData user = new UserData("test", "pass", "email@test.com");
+        UserData user = new UserData("test", HASH, "email@test.com");
 
         dao.createUser(user);
 
         assertThrows(DataAccessException.class, () -> dao.createUser(user));
     }
 
+    @Test
+    void createUserRejectsUnhashedPassword() {
+        assertThrows(DataAccessException.class,
+                () -> dao.createUser(new UserData("test", "pass", "email@test.com")));
+    }
+
     @Test
     void getUserSuccess() throws Exception {
-        dao.createUser(new UserData("test", "pass", "email@test.com"));
+        dao.createUser(new UserData("test", HASH, "email@test.com"));
 
         UserData user = dao.getUser("test");
 
@@ -121,7 +133,7 @@ public class MySqlDataAccessTests {
 
     @Test
     void clearRemovesData() throws Exception {
-        dao.createUser(new UserData("test", "pass", "email"));
+        dao.createUser(new UserData("test", HASH, "email"));
         dao.createGame("game");
 
         dao.clear();
@@ -129,4 +141,69 @@ public class MySqlDataAccessTests {
         assertNull(dao.getUser("test"));
         assertTrue(dao.listGames().isEmpty());
     }
+
+    @Test
+    void transactionCommitsAllWork() throws Exception {
+        dao.inTransaction(tx -> {
+            tx.createUser(new UserData("test", HASH, "email"));
+            tx.createAuth(new AuthData("token", "test"));
+            return null;
+        });
+
+        assertNotNull(dao.getUser("test"));
+        assertNotNull(dao.getAuth("token"));
+    }
+
+    @Test
+    void transactionRollsBackOnFailure() throws Exception {
+        dao.createUser(new UserData("existing", HASH, "email"));
+
+        assertThrows(AlreadyExistsException.class, () -> dao.inTransaction(tx -> {
+            tx.createUser(new UserData("test", HASH, "email"));
+            tx.createUser(new UserData("existing", HASH, "email"));
+            return null;
+        }));
+
+        assertNull(dao.getUser("test"));
+    }
+
+    @Test
+    void finishedGameIsMarkedFinished() throws Exception {
+        int id = dao.createGame("game");
+        GameData game = dao.getGame(id);
+        game.game().setGameOver(true);
+
+        dao.updateGame(game);
+
+        try (var conn = DatabaseManager.getConnection();
+             var ps = conn.prepareStatement("SELECT status, finished_at FROM games WHERE game_id = ?")) {
+            ps.setInt(1, id);
+            try (var rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals("FINISHED", rs.getString("status"));
+                assertNotNull(rs.getTimestamp("finished_at"));
+            }
+        }
+        assertTrue(dao.getGame(id).game().isGameOver());
+    }
+
+    @Test
+    void archivedGameIsStillReadableAndUpdatable() throws Exception {
+        int finished = dao.createGame("finished");
+        int live = dao.createGame("live");
+        GameData game = dao.getGame(finished);
+        game.game().setGameOver(true);
+        dao.updateGame(new GameData(finished, "white", null, "finished", game.game(), game.version()));
+
+        assertEquals(1, dao.archiveFinishedGames(Duration.ofSeconds(-1), 10));
+
+        assertEquals(1, dao.listGames().size());
+        assertEquals(live, dao.listGames().iterator().next().gameID());
+        GameData archived = dao.getGame(finished);
+        assertEquals("white", archived.whiteUsername());
+
+        dao.updateGame(new GameData(finished, null, null, "finished", archived.game(), archived.version()));
+        assertNull(dao.getGame(finished).whiteUsername());
+        assertThrows(ConcurrentUpdateException.class, () -> dao.updateGame(archived));
+    }
 }
@@ -0,0 +1,168 @@
+package dataaccess;
+
+import model.GameData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindDataAccessTests {
+
+    private InMemoryDataAccess backend;
+    private WriteBehindDataAccess dao;
+
+    @BeforeEach
+    void setup() {
+        backend = new InMemoryDataAccess();
+        dao = new WriteBehindDataAccess(backend, 0, 0);
+    }
+
+    @Test
+    void updatesAreVisibleBeforeFlush() throws Exception {
+        int gameID = dao.createGame("game");
+        GameData game = dao.getGame(gameID);
+
+        dao.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+
+        assertEquals("devin", dao.getGame(gameID).whiteUsername());
+        assertEquals("devin", dao.listGames().iterator().next().whiteUsername());
+        assertNull(backend.getGame(gameID).whiteUsername());
+    }
+
+    @Test
+    void flushCoalescesUpdates() throws Exception {
+        int gameID = dao.createGame("game");
+        for (int i = 0; i < 10; i++) {
+            GameData game = dao.getGame(gameID);
+            dao.updateGame(new GameData(gameID, null, null, "name" + i, game.game(), game.version()));
+        }
+
+        dao.flush();
+
+        assertEquals(10, dao.getUpdateCount());
+        assertEquals(1, dao.getWriteCount());
+        assertEquals("name9", backend.getGame(gameID).gameName());
+        assertEquals(0, dao.getPendingCount());
+    }
+
+    @Test
+    void versionsKeepMatchingAcrossFlushes() throws Exception {
+        WriteBehindDataAccess buffered = new WriteBehindDataAccess(backend, 0, Long.MAX_VALUE);
+        int gameID = buffered.createGame("game");
+
+        for (int i = 0; i < 3; i++) {
+            GameData game = buffered.getGame(gameID);
+            buffered.updateGame(new GameData(gameID, null, null, "a" + i, game.game(), game.version()));
+            buffered.updateGame(new GameData(gameID, null, null, "b" + i, game.game(), game.version() + 1));
+            buffered.flush();
+        }
+
+        assertEquals(6, buffered.getGame(gameID).version());
+        assertEquals("b2", backend.getGame(gameID).gameName());
+    }
+
+    @Test
+    void staleUpdateIsRejected() throws Exception {
+        int gameID = dao.createGame("game");
+        GameData game = dao.getGame(gameID);
+
+        dao.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+
+        assertThrows(ConcurrentUpdateException.class, () ->
+                dao.updateGame(new GameData(gameID, null, "jake", "game", game.game(), game.version())));
+    }
+
+    @Test
+    void rolledBackTransactionLeavesNothingBuffered() throws Exception {
+        int gameID = dao.createGame("game");
+
+        assertThrows(IllegalStateException.class, () -> dao.inTransaction(tx -> {
+            GameData game = tx.getGame(gameID);
+            tx.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+            assertEquals("devin", tx.getGame(gameID).whiteUsername());
+            throw new IllegalStateException("abort");
+        }));
+
+        assertNull(dao.getGame(gameID).whiteUsername());
+        assertEquals(0, dao.getPendingCount());
+    }
+
+    @Test
+    void conflictingStagedUpdateFailsBeforeTheBackendCommits() throws Exception {
+        boolean[] committed = {false};
+        WriteBehindDataAccess buffered = new WriteBehindDataAccess(new InMemoryDataAccess() {
+            @Override
+            public <T, E extends Exception> T inTransaction(Transaction<T, E> work) throws DataAccessException, E {
+                T result = work.run(this);
+                committed[0] = true;
+                return result;
+            }
+        }, 0, 0);
+        int gameID = buffered.createGame("game");
+
+        assertThrows(ConcurrentUpdateException.class, () -> buffered.inTransaction(tx -> {
+            GameData game = tx.getGame(gameID);
+            tx.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+            // Another request updates the game before this transaction commits.
+            buffered.updateGame(new GameData(gameID, null, "jake", "game", game.game(), game.version()));
+            return null;
+        }));
+
+        assertFalse(committed[0]);
+        assertEquals("jake", buffered.getGame(gameID).blackUsername());
+        assertNull(buffered.getGame(gameID).whiteUsername());
+    }
+
+    @Test
+    void flushKeepsAnotherWritersUpdate() throws Exception {
+        int gameID = dao.createGame("game");
+        GameData game = dao.getGame(gameID);
+        dao.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+
+        // Something other than this layer changes the stored game.
+        backend.updateGame(new GameData(gameID, null, "jake", "game", game.game(), game.version()));
+        dao.flush();
+
+        assertEquals(1, dao.getConflictCount());
+        assertEquals(0, dao.getPendingCount());
+        assertEquals("jake", dao.getGame(gameID).blackUsername());
+        assertNull(backend.getGame(gameID).whiteUsername());
+    }
+
+    @Test
+    void closeFlushesPendingUpdates() throws Exception {
+        int gameID = dao.createGame("game");
+        GameData game = dao.getGame(gameID);
+        dao.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+
+        dao.close();
+
+        assertEquals("devin", backend.getGame(gameID).whiteUsername());
+    }
+
+    @Test
+    void failedBackgroundFlushIsCountedAndRetried() throws Exception {
+        boolean[] down = {true};
+        WriteBehindDataAccess buffered = new WriteBehindDataAccess(new InMemoryDataAccess() {
+            @Override
+            public void updateGame(GameData game) throws DataAccessException {
+                if (down[0]) {
+                    throw new DataAccessException("backend unavailable");
+                }
+                super.updateGame(game);
+            }
+        }, 0, 0);
+        int gameID = buffered.createGame("game");
+        GameData game = buffered.getGame(gameID);
+        buffered.updateGame(new GameData(gameID, "devin", null, "game", game.game(), game.version()));
+
+        buffered.flushQuietly();
+        assertEquals(1, buffered.getFlushFailureCount());
+        assertEquals(1, buffered.getPendingCount());
+
+        down[0] = false;
+        buffered.flushQuietly();
+        assertEquals(1, buffered.getFlushFailureCount());
+        assertEquals(0, buffered.getPendingCount());
+    }
+}
@@ -0,0 +1,156 @@
+package service;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import dataaccess.DataAccess;
+import dataaccess.InMemoryDataAccess;
+import model.AuthData;
+import model.GameData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ActiveGameRegistryTests {
+    private static final Duration IDLE = Duration.ofSeconds(30);
+
+    private DataAccess dataAccess;
+    private AtomicLong now;
+    private AtomicBoolean connected;
+    private ActiveGameRegistry registry;
+    private int gameID;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataAccess = new InMemoryDataAccess();
+        now = new AtomicLong();
+        connected = new AtomicBoolean(true);
+        registry = new ActiveGameRegistry(dataAccess, IDLE, id -> connected.get(), now::get, false);
+        gameID = dataAccess.createGame("game");
+    }
+
+    @Test
+    void openedGameIsReadFromMemory() throws Exception {
+        assertNotNull(registry.open(gameID));
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(registry.get(gameID));
+        }
+
+        ActiveGameRegistry.RegistryStats stats = registry.stats();
+        assertEquals(1, stats.loads());
+        assertEquals(5, stats.hits());
+    }
+
+    @Test
+    void readersGetTheirOwnCopy() throws Exception {
+        GameData first = registry.open(gameID);
+        first.game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+
+        GameData second = registry.get(gameID);
+        assertTrue(second.game().getMoveHistory().isEmpty());
+    }
+
+    @Test
+    void committedWriteIsHeldWithTheStoredVersion() throws Exception {
+        registry.open(gameID);
+
+        GameData game = registry.get(gameID);
+        game.game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        registry.write(dataAccess, game);
+        registry.committed(game);
+
+        GameData held = registry.get(gameID);
+        assertEquals(dataAccess.getGame(gameID).version(), held.version());
+        assertEquals(1, held.game().getMoveHistory().size());
+        assertEquals(1, registry.stats().loads());
+    }
+
+    @Test
+    void seatTakenOverHttpReachesTheHeldGame() throws Exception {
+        dataAccess.createAuth(new AuthData("token", "alice"));
+        registry.open(gameID);
+
+        new GameService(dataAccess, new DatabaseAuthTokens(dataAccess), registry)
+                .joinGame("token", ChessGame.TeamColor.WHITE, gameID);
+
+        assertEquals("alice", registry.get(gameID).whiteUsername());
+        assertEquals(1, registry.stats().loads());
+    }
+
+    @Test
+    void writeFromAStaleCopyReloadsOnRetry() throws Exception {
+        registry.open(gameID);
+
+        // Another node changes the game without going through this registry.
+        GameData stored = dataAccess.getGame(gameID);
+        dataAccess.updateGame(new GameData(gameID, "bob", null, stored.gameName(), stored.game(), stored.version()));
+
+        int[] attempts = new int[1];
+        GameData written = OptimisticRetry.inTransaction(dataAccess, tx -> {
+            attempts[0]++;
+            GameData current = registry.get(tx, gameID);
+            current.game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+            registry.write(tx, current);
+            return current;
+        });
+        registry.committed(written);
+
+        assertEquals(2, attempts[0]);
+        GameData held = registry.get(gameID);
+        assertEquals("bob", held.whiteUsername());
+        assertEquals(1, held.game().getMoveHistory().size());
+    }
+
+    @Test
+    void readsInATransactionGoThroughIt() throws Exception {
+        // Once the registry's own store is cut off, any read it makes there fails.
+        AtomicBoolean cutOff = new AtomicBoolean();
+        DataAccess store = new InMemoryDataAccess() {
+            @Override
+            public GameData getGame(int gameID) {
+                if (cutOff.get()) {
+                    throw new IllegalStateException("read outside the transaction");
+                }
+                return super.getGame(gameID);
+            }
+        };
+        int heldID = store.createGame("held");
+        ActiveGameRegistry detached = new ActiveGameRegistry(store, IDLE, id -> true, now::get, false);
+        detached.open(heldID);
+        detached.invalidate(heldID);
+        cutOff.set(true);
+
+        assertEquals(gameID, detached.get(dataAccess, gameID).gameID());
+        assertEquals(heldID, detached.get(dataAccess, heldID).gameID());
+    }
+
+    @Test
+    void idleGameIsEvictedOnlyOnceNoSessionIsConnected() throws Exception {
+        registry.open(gameID);
+
+        now.addAndGet(IDLE.toNanos());
+        assertEquals(0, registry.evictIdle());
+        assertTrue(registry.isActive(gameID));
+
+        connected.set(false);
+        registry.get(gameID);
+        now.addAndGet(IDLE.toNanos() - 1);
+        assertEquals(0, registry.evictIdle());
+
+        now.incrementAndGet();
+        assertEquals(1, registry.evictIdle());
+        assertFalse(registry.isActive(gameID));
+        assertNotNull(registry.get(gameID));
+    }
+
+    @Test
+    void unknownGameIsNotOpened() throws Exception {
+        assertNull(registry.open(gameID + 1));
+        assertFalse(registry.isActive(gameID + 1));
+    }
+}
@@ -7,6 +7,8 @@ import model.GameData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ClearServiceTests {
@@ -40,4 +42,15 @@ public class ClearServiceTests {
         assertNull(dataAccess.getGame(game.gameID()));
         assertTrue(dataAccess.listGames().isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void clearTellsRevokeAllListeners() throws Exception {
+        var tokens = new NotifyingAuthTokens(new DatabaseAuthTokens(dataAccess));
+        AtomicInteger notified = new AtomicInteger();
+        tokens.addRevokeAllListener(notified::incrementAndGet);
+
+        new ClearService(dataAccess, tokens).clear();
+
+        assertEquals(1, notified.get());
+    }
+}
@@ -0,0 +1,85 @@
+package service;
+
+import dataaccess.DataAccess;
+import dataaccess.InMemoryDataAccess;
+import model.AuthData;
+import model.GameData;
+import model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameImportServiceTests {
+
+    private DataAccess dataAccess;
+    private ForkJoinPool pool;
+    private GameImportService importService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataAccess = new InMemoryDataAccess();
+        pool = new ForkJoinPool(2);
+        importService = new GameImportService(dataAccess, new DatabaseAuthTokens(dataAccess), pool);
+
+        dataAccess.createUser(new UserData("devin", "lax", "devin@example.com"));
+        dataAccess.createAuth(new AuthData("token1", "devin"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void importsValidGamesAndReportsTheRest() throws Exception {
+        GameImportService.ImportResult result = importService.importPgn("token1", new StringReader("""
+                [Event "club night"]
+                [White "ann"]
+                [Black "bob"]
+
+                1. e4 e5 2. Bc4 Nc6 3. Qh5 Nf6 4. Qxf7# 1-0
+
+                [White "carl"]
+
+                1. e4 e5 2. Ke3 *
+
+                1. d4 d5 *
+                """));
+
+        assertEquals(2, result.imported());
+        assertEquals(1, result.rejected());
+        assertEquals(2, result.errors().get(0).index());
+
+        List<String> names = dataAccess.listGames().stream().map(GameData::gameName).sorted().toList();
+        assertEquals(List.of("? vs ?", "club night: ann vs bob"), names);
+        GameData mated = dataAccess.listGames().stream()
+                .filter(g -> g.gameName().startsWith("club")).findFirst().orElseThrow();
+        assertTrue(mated.game().isGameOver());
+        assertEquals(7, mated.game().getMoveHistory().size());
+        assertNull(mated.whiteUsername());
+    }
+
+    @Test
+    void importSpansSeveralChunks() throws Exception {
+        String pgn = "1. e4 e5 *\n\n".repeat(GameImportService.CHUNK_SIZE + 5);
+
+        GameImportService.ImportResult result = importService.importPgn("token1", new StringReader(pgn));
+
+        assertEquals(GameImportService.CHUNK_SIZE + 5, result.imported());
+        assertEquals(GameImportService.CHUNK_SIZE + 5, dataAccess.listGames().size());
+    }
+
+    @Test
+    void importRequiresAuth() {
+        ServiceException ex = assertThrows(ServiceException.class,
+                () -> importService.importPgn("bad", new StringReader("1. e4 *")));
+
+        assertEquals("Unauthorized", ex.getMessage());
+    }
+}
@@ -1,6 +1,11 @@
 package service;
 
 import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import dataaccess.ConcurrentUpdateException;
 import dataaccess.DataAccess;
 import dataaccess.DataAccessException;
 import dataaccess.InMemoryDataAccess;
@@ -10,7 +15,9 @@ import model.UserData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -145,4 +152,100 @@ public class GameServiceTests {
 
         assertEquals("Unauthorized", ex.getMessage());
     }
+
+    @Test
+    void staleGameUpdateIsRejected() throws Exception {
+        GameData game = gameService.createGame(authToken, "Versioned");
+        GameData first = dataAccess.getGame(game.gameID());
+        GameData second = dataAccess.getGame(game.gameID());
+
+        dataAccess.updateGame(new GameData(first.gameID(), "devin", null,
+                first.gameName(), first.game(), first.version()));
+
+        assertThrows(ConcurrentUpdateException.class, () ->
+                dataAccess.updateGame(new GameData(second.gameID(), null, "jake",
+                        second.gameName(), second.game(), second.version())));
+        assertEquals(first.version() + 1, dataAccess.getGame(game.gameID()).version());
+    }
+
+    @Test
+    void joinGameRetriesAfterConcurrentUpdate() throws Exception {
+        DataAccess racing = new InMemoryDataAccess() {
+            private boolean raced = false;
+
+            @Override
+            public void updateGame(GameData game) throws DataAccessException {
+                if (!raced) {
+                    // Another request takes the black seat between our read and write.
+                    raced = true;
+                    GameData current = getGame(game.gameID());
+                    super.updateGame(new GameData(current.gameID(), current.whiteUsername(), "jake",
+                            current.gameName(), current.game(), current.version()));
+                }
+                super.updateGame(game);
+            }
+        };
+        racing.createUser(new UserData("devin", "lax", "devin@example.com"));
+        racing.createAuth(new AuthData("token1", "devin"));
+        GameService racingService = new GameService(racing);
+        int gameID = racing.createGame("Race");
+
+        racingService.joinGame("token1", ChessGame.TeamColor.WHITE, gameID);
+
+        GameData result = racing.getGame(gameID);
+        assertEquals("devin", result.whiteUsername());
+        assertEquals("jake", result.blackUsername());
+    }
+
+    @Test
+    void writePgnIncludesMoves() throws Exception {
+        GameData game = gameService.createGame(authToken, "pgn");
+        gameService.joinGame(authToken, ChessGame.TeamColor.WHITE, game.gameID());
+        GameData joined = dataAccess.getGame(game.gameID());
+        joined.game().makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        dataAccess.updateGame(joined);
+
+        StringBuilder pgn = new StringBuilder();
+        gameService.writePgn(authToken, game.gameID(), pgn);
+
+        assertTrue(pgn.toString().contains("[White \"devin\"]"));
+        assertTrue(pgn.toString().contains("1. e4 *"));
+    }
+
+    @Test
+    void exportPgnWritesEveryGame() throws Exception {
+        gameService.createGame(authToken, "first");
+        gameService.createGame(authToken, "second");
+
+        List<String> written = new ArrayList<>();
+        gameService.exportPgn(authToken, game -> written.add(game.toString()));
+
+        // Each game arrives whole, in one write.
+        assertEquals(2, written.size());
+        assertTrue(written.stream().allMatch(game -> game.startsWith("[Event ") && game.split("\\[Event ").length == 2));
+        assertThrows(ServiceException.class, () -> gameService.exportPgn("bad", game -> fail("wrote a game")));
+    }
+
+    @Test
+    void exportPgnLeavesOutCorruptGamesEntirely() throws Exception {
+        gameService.createGame(authToken, "good");
+        GameData bad = gameService.createGame(authToken, "bad");
+
+        // A recorded move that is not legal from the start position: e2 to e5.
+        ChessGame played = new ChessGame();
+        played.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        JsonObject json = new Gson().toJsonTree(played).getAsJsonObject();
+        json.getAsJsonArray("moveHistory").get(0).getAsJsonObject()
+                .getAsJsonObject("endPosition").addProperty("row", 5);
+        ChessGame corrupt = new Gson().fromJson(json, ChessGame.class);
+        GameData stored = dataAccess.getGame(bad.gameID());
+        dataAccess.updateGame(new GameData(stored.gameID(), null, null, stored.gameName(), corrupt, stored.version()));
+
+        StringBuilder pgn = new StringBuilder();
+        gameService.exportPgn(authToken, pgn::append);
+
+        assertEquals(1, pgn.toString().split("\\[Event ").length - 1);
+        assertTrue(pgn.toString().contains("[Event \"good\"]"));
+        assertFalse(pgn.toString().contains("bad"));
+    }
 }
@@ -0,0 +1,174 @@
+package service;
+
+import dataaccess.InMemoryDataAccess;
+import model.AuthData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignedAuthTokensTests {
+
+    private static final byte[] KEY_1 = "first-secret-key-for-tests".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY_2 = "second-secret-key-for-tests".getBytes(StandardCharsets.UTF_8);
+
+    private InMemoryDataAccess store;
+    private SignedAuthTokens tokens;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryDataAccess();
+        tokens = node("k1", Duration.ofHours(1));
+    }
+
+    private SignedAuthTokens node(String activeKeyId, Duration refreshInterval) {
+        return new SignedAuthTokens(Map.of("k1", KEY_1, "k2", KEY_2), activeKeyId, Duration.ofHours(1), store,
+                refreshInterval);
+    }
+
+    @Test
+    void issuedTokenValidates() throws Exception {
+        AuthData auth = tokens.issue("devin");
+
+        AuthData validated = tokens.validate(auth.authToken());
+
+        assertNotNull(validated);
+        assertEquals("devin", validated.username());
+    }
+
+    @Test
+    void usernamesWithSeparatorsRoundTrip() throws Exception {
+        AuthData auth = tokens.issue("odd|name.with:stuff");
+
+        assertEquals("odd|name.with:stuff", tokens.validate(auth.authToken()).username());
+    }
+
+    @Test
+    void tamperedTokenIsRejected() throws Exception {
+        String token = tokens.issue("devin").authToken();
+        String forged = tokens.issue("jake").authToken();
+
+        String mixed = forged.substring(0, forged.indexOf('.')) + token.substring(token.indexOf('.'));
+
+        assertNull(tokens.validate(mixed));
+        assertNull(tokens.validate("not-a-token"));
+        assertNull(tokens.validate(null));
+    }
+
+    @Test
+    void otherNodeWithSameKeysAccepts() throws Exception {
+        String token = tokens.issue("devin").authToken();
+        var otherNode = node("k2", Duration.ofHours(1));
+
+        assertEquals("devin", otherNode.validate(token).username());
+    }
+
+    @Test
+    void unknownKeyIsRejected() throws Exception {
+        String token = tokens.issue("devin").authToken();
+        var otherNode = new SignedAuthTokens(Map.of("k2", KEY_2), "k2", Duration.ofHours(1), store, Duration.ZERO);
+
+        assertNull(otherNode.validate(token));
+    }
+
+    @Test
+    void expiredTokenIsRejected() throws Exception {
+        Instant start = Instant.parse("2025-01-01T00:00:00Z");
+        var issuer = new SignedAuthTokens(Map.of("k1", KEY_1), "k1", Duration.ofMinutes(10), store, Duration.ZERO,
+                Clock.fixed(start, ZoneOffset.UTC));
+        var later = new SignedAuthTokens(Map.of("k1", KEY_1), "k1", Duration.ofMinutes(10), store, Duration.ZERO,
+                Clock.fixed(start.plus(Duration.ofMinutes(11)), ZoneOffset.UTC));
+
+        String token = issuer.issue("devin").authToken();
+
+        assertNotNull(issuer.validate(token));
+        assertNull(later.validate(token));
+    }
+
+    @Test
+    void revokedTokenIsRejected() throws Exception {
+        String token = tokens.issue("devin").authToken();
+        String other = tokens.issue("devin").authToken();
+
+        tokens.revoke(token);
+
+        assertNull(tokens.validate(token));
+        assertNotNull(tokens.validate(other));
+        assertEquals(1, tokens.revokedCount());
+    }
+
+    @Test
+    void revokeAllRejectsEveryEarlierToken() throws Exception {
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+        var sameInstant = new SignedAuthTokens(Map.of("k1", KEY_1), "k1", Duration.ofMinutes(10), store,
+                Duration.ZERO, Clock.fixed(now, ZoneOffset.UTC));
+        String before = sameInstant.issue("devin").authToken();
+
+        sameInstant.revokeAll();
+        // Issued in the same millisecond as the clear, yet still valid.
+        String after = sameInstant.issue("devin").authToken();
+
+        assertNull(sameInstant.validate(before));
+        assertNotNull(sameInstant.validate(after));
+    }
+
+    @Test
+    void logoutOnOneNodeIsSeenByAnotherAfterItsRefresh() throws Exception {
+        var alwaysFresh = node("k2", Duration.ZERO);
+        var cached = node("k2", Duration.ofHours(1));
+        String token = tokens.issue("devin").authToken();
+        assertNotNull(cached.validate(token));
+
+        tokens.revoke(token);
+
+        assertNull(alwaysFresh.validate(token));
+        // Still inside its refresh interval, so it has not looked yet.
+        assertNotNull(cached.validate(token));
+        assertEquals(1, store.getRevokedTokens(0).size());
+    }
+
+    @Test
+    void revokeAllReachesEveryNodeSharingTheStore() throws Exception {
+        var otherNode = node("k2", Duration.ZERO);
+        String token = otherNode.issue("devin").authToken();
+
+        tokens.revokeAll();
+
+        assertNull(otherNode.validate(token));
+        assertTrue(store.getTokenEpoch() > 0);
+    }
+
+    @Test
+    void clearingTheDatabaseRevokesSignedTokens() throws Exception {
+        var userService = new UserService(store, tokens);
+        AuthData auth = userService.register("devin", "pw", "devin@example.com");
+
+        new ClearService(store, tokens).clear();
+
+        assertNull(tokens.validate(auth.authToken()));
+    }
+
+    @Test
+    void userServiceUsesSignedTokens() throws Exception {
+        var userService = new UserService(store, tokens);
+        var gameService = new GameService(store, tokens);
+
+        AuthData auth = userService.register("devin", "pw", "devin@example.com");
+
+        assertNull(store.getAuth(auth.authToken()));
+        assertNotNull(gameService.createGame(auth.authToken(), "Game"));
+
+        userService.logout(auth.authToken());
+
+        ServiceException ex = assertThrows(ServiceException.class,
+                () -> gameService.listGames(auth.authToken()));
+        assertEquals("Unauthorized", ex.getMessage());
+    }
+}
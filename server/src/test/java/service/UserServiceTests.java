@@ -3,9 +3,14 @@ package service;
 import dataaccess.DataAccess;
 import dataaccess.InMemoryDataAccess;
 import model.AuthData;
+import model.UserData;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UserServiceTests {
@@ -87,5 +92,78 @@ public class UserServiceTests {
 
         assertEquals("Unauthorized", ex.getMessage());
     }
-}
 
+    @Test
+    void registerStoresHashedPassword() throws Exception {
+        userService.register("gina", "pw", "gina@example.com");
+
+        UserData stored = dataAccess.getUser("gina");
+        assertNotEquals("pw", stored.password());
+        assertTrue(stored.password().startsWith("$2"));
+    }
+
+    @Test
+    void saturatedHasherRejectsWithServiceUnavailable() throws Exception {
+        PasswordHasher hasher = new PasswordHasher(1, 1, 4);
+        UserService busyService = new UserService(dataAccess, new DatabaseAuthTokens(dataAccess), hasher);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            // The first task holds the only worker and the second takes the only queue slot.
+            Future<Boolean> running = hasher.submit(() -> release.await(5, TimeUnit.SECONDS));
+            Future<Boolean> queued = hasher.submit(() -> release.await(5, TimeUnit.SECONDS));
+
+            ServiceException e = assertThrows(ServiceException.class,
+                    () -> busyService.register("devin", "pw", "devin@example.com"));
+            assertEquals("Service Unavailable", e.getMessage());
+            assertNull(dataAccess.getUser("devin"));
+
+            release.countDown();
+            assertTrue(running.get());
+            assertTrue(queued.get());
+            assertNotNull(busyService.register("devin", "pw", "devin@example.com"));
+        } finally {
+            release.countDown();
+            hasher.shutdown();
+        }
+    }
+
+    @Test
+    void takenNameIsRefusedWithoutHashing() throws Exception {
+        PasswordHasher hasher = new PasswordHasher(1, 1, 4);
+        UserService busyService = new UserService(dataAccess, new DatabaseAuthTokens(dataAccess), hasher);
+        dataAccess.createUser(new UserData("devin", "hash", "devin@example.com"));
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            hasher.submit(() -> release.await(5, TimeUnit.SECONDS));
+            hasher.submit(() -> release.await(5, TimeUnit.SECONDS));
+
+            // A saturated hasher would answer Service Unavailable if the name were hashed first.
+            ServiceException e = assertThrows(ServiceException.class,
+                    () -> busyService.register("devin", "pw2", "devin2@example.com"));
+            assertEquals("Already Taken", e.getMessage());
+        } finally {
+            release.countDown();
+            hasher.shutdown();
+        }
+    }
+
+    @Test
+    void registerRaceReportsAlreadyTaken() throws Exception {
+        // Simulates a concurrent registration that slipped in after the existence check.
+        DataAccess racing = new InMemoryDataAccess() {
+            @Override
+            public UserData getUser(String username) {
+                return null;
+            }
+        };
+        UserService racingService = new UserService(racing);
+
+        racingService.register("hank", "pw", "hank@example.com");
+
+        ServiceException ex = assertThrows(ServiceException.class,
+                () -> racingService.register("hank", "pw2", "hank2@example.com"));
+        assertEquals("Already Taken", ex.getMessage());
+    }
+}
@@ -0,0 +1,258 @@
+package websocket;
+
+import chess.ChessGame;
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.junit.jupiter.api.Test;
+import websocket.messages.ServerMessage;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionManagerTests {
+
+    /*
+     * Stands in for a Jetty session. Each write waits for a permit, so a test
+     * decides how fast the "client" reads; started counts writes begun.
+     */
+    private static final class FakeSession {
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final Semaphore permits = new Semaphore(0);
+        final Semaphore started = new Semaphore(0);
+        volatile boolean open = true;
+        volatile int closeCode;
+
+        FakeSession(int permits) {
+            this.permits.release(permits);
+        }
+
+        WsContext context(String id) {
+            RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(RemoteEndpoint.class.getClassLoader(),
+                    new Class<?>[] {RemoteEndpoint.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("sendString")) {
+                            started.release();
+                            permits.acquire();
+                            received.add((String) args[0]);
+                        }
+                        return null;
+                    });
+            Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(),
+                    new Class<?>[] {Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "isOpen" -> open;
+                        case "getRemote" -> remote;
+                        case "close" -> {
+                            open = false;
+                            closeCode = (args != null && args.length > 0) ? (Integer) args[0] : 0;
+                            yield null;
+                        }
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+            return new WsContext(id, session) { };
+        }
+
+        void awaitReceived(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, received.size());
+        }
+    }
+
+    @Test
+    void coalescingKeepsOnlyTheLatestQueuedLoadGame() throws Exception {
+        ConnectionManager connections = new ConnectionManager(4, SlowConsumerPolicy.COALESCE);
+        FakeSession session = new FakeSession(0);
+        connections.add(1, "watcher", session.context("a"));
+
+        connections.broadcast(1, notification("first"));
+        assertTrue(session.started.tryAcquire(5, TimeUnit.SECONDS));
+        connections.broadcast(1, loadGame());
+        connections.broadcast(1, loadGame());
+        connections.broadcast(1, notification("last"));
+        session.permits.release(10);
+
+        session.awaitReceived(3);
+        assertTrue(session.received.get(0).contains("first"));
+        assertTrue(session.received.get(1).contains("LOAD_GAME"));
+        assertTrue(session.received.get(2).contains("last"));
+        assertEquals(1, connections.stats().droppedMessages());
+    }
+
+    @Test
+    void slowSessionIsDisconnectedWithoutDelayingOthers() throws Exception {
+        ConnectionManager connections = new ConnectionManager(2, SlowConsumerPolicy.DISCONNECT);
+        FakeSession slow = new FakeSession(0);
+        FakeSession fast = new FakeSession(100);
+        connections.add(1, "slow", slow.context("slow"));
+        connections.add(1, "fast", fast.context("fast"));
+
+        connections.broadcast(1, notification("0"));
+        assertTrue(slow.started.tryAcquire(5, TimeUnit.SECONDS));
+        fast.awaitReceived(1);
+        // Each broadcast returns at once; the fast session keeps up while the slow one's queue fills.
+        for (int i = 1; i <= 3; i++) {
+            connections.broadcast(1, notification(String.valueOf(i)));
+            fast.awaitReceived(i + 1);
+        }
+
+        assertFalse(slow.open);
+        assertEquals(StatusCode.POLICY_VIOLATION, slow.closeCode);
+        assertEquals(1, connections.stats().slowDisconnects());
+
+        // The slow session is gone from the game, so later broadcasts skip it.
+        slow.permits.release(10);
+        connections.broadcast(1, notification("after"));
+        fast.awaitReceived(5);
+        assertEquals(1, slow.received.size());
+    }
+
+    @Test
+    void dropPolicyDiscardsTheOldestLoadGameWhenFull() throws Exception {
+        ConnectionManager connections = new ConnectionManager(2, SlowConsumerPolicy.DROP_INTERMEDIATE);
+        FakeSession session = new FakeSession(0);
+        connections.add(1, "watcher", session.context("a"));
+
+        connections.broadcast(1, notification("first"));
+        assertTrue(session.started.tryAcquire(5, TimeUnit.SECONDS));
+        connections.broadcast(1, loadGame());
+        connections.broadcast(1, notification("second"));
+        connections.broadcast(1, notification("third"));
+        session.permits.release(10);
+
+        session.awaitReceived(3);
+        assertTrue(session.received.stream().noneMatch(m -> m.contains("LOAD_GAME")));
+        assertTrue(session.open);
+    }
+
+    @Test
+    void closingASessionRemovesItFromEveryGame() throws Exception {
+        ConnectionManager connections = new ConnectionManager();
+        FakeSession watcher = new FakeSession(100);
+        FakeSession player = new FakeSession(100);
+        WsContext watcherContext = watcher.context("watcher");
+        connections.add(1, "ann", watcherContext);
+        connections.add(2, "ann", watcherContext);
+        connections.add(2, "bob", player.context("player"));
+
+        assertEquals(Set.of(1, 2), connections.gamesOf(watcherContext));
+        connections.broadcast(1, notification("one"));
+        connections.broadcast(2, notification("two"));
+        watcher.awaitReceived(2);
+
+        connections.remove(watcherContext);
+        connections.broadcast(1, notification("gone"));
+        connections.broadcast(2, notification("gone"));
+
+        player.awaitReceived(2);
+        assertEquals(2, watcher.received.size());
+        assertEquals(Set.of(), connections.gamesOf(watcherContext));
+    }
+
+    @Test
+    void spectatorsGetOnlyTheLatestPositionPerInterval() throws Exception {
+        ConnectionManager connections = new ConnectionManager(
+                ConnectionManager.DEFAULT_QUEUE_CAPACITY, SlowConsumerPolicy.COALESCE, Duration.ofMillis(500), false);
+        FakeSession player = new FakeSession(100);
+        FakeSession spectator = new FakeSession(100);
+        connections.add(1, "bob", player.context("player"), true, false);
+        connections.add(1, "ann", spectator.context("spectator"), true, true);
+
+        for (int i = 0; i < 3; i++) {
+            connections.broadcastMove(1, loadGame(), moveApplied());
+        }
+        connections.broadcast(1, notification("check"));
+        player.awaitReceived(4);
+        spectator.awaitReceived(1);
+        assertTrue(spectator.received.get(0).contains("check"));
+
+        connections.flushSpectators();
+        connections.flushSpectators();
+        spectator.awaitReceived(2);
+        // Spectators get the whole position even if they asked for move updates.
+        assertTrue(spectator.received.get(1).contains("LOAD_GAME"));
+
+        ConnectionManager.ConnectionStats stats = connections.stats();
+        assertEquals(1, stats.spectators());
+        assertEquals(1, stats.spectatorSnapshots());
+        assertEquals(2, stats.coalescedSnapshots());
+    }
+
+    @Test
+    void spectatorsAreTreatedAsPlayersWithoutAnInterval() throws Exception {
+        ConnectionManager connections = new ConnectionManager();
+        FakeSession observer = new FakeSession(100);
+        WsContext context = observer.context("observer");
+        connections.add(1, "ann", context, false, true);
+
+        connections.broadcastMove(1, loadGame(), moveApplied());
+        observer.awaitReceived(1);
+        assertEquals(0, connections.stats().spectators());
+
+        connections.remove(context);
+        assertFalse(connections.hasSessions(1));
+    }
+
+    @Test
+    void reconnectingAsAPlayerLeavesTheSpectators() throws Exception {
+        ConnectionManager connections = new ConnectionManager(
+                ConnectionManager.DEFAULT_QUEUE_CAPACITY, SlowConsumerPolicy.COALESCE, Duration.ofMillis(500), false);
+        FakeSession session = new FakeSession(100);
+        WsContext context = session.context("a");
+        connections.add(1, "ann", context, false, true);
+        connections.add(1, "ann", context, false, false);
+
+        assertTrue(session.open);
+        assertEquals(0, connections.stats().spectators());
+        connections.broadcastMove(1, loadGame(), moveApplied());
+        session.awaitReceived(1);
+
+        connections.remove(context);
+        assertFalse(connections.hasSessions(1));
+    }
+
+    @Test
+    void loadGameIsNotEncodedWhenEveryoneTakesDeltas() throws Exception {
+        ConnectionManager connections = new ConnectionManager();
+        FakeSession first = new FakeSession(100);
+        FakeSession second = new FakeSession(100);
+        connections.add(1, "ann", first.context("a"), true);
+        connections.add(1, "bob", second.context("b"), true);
+
+        OutboundMessage loadGame = loadGame();
+        connections.broadcastMove(1, loadGame, moveApplied());
+        first.awaitReceived(1);
+        second.awaitReceived(1);
+        assertFalse(loadGame.isEncoded());
+
+        FakeSession third = new FakeSession(100);
+        connections.add(1, "cat", third.context("c"), false);
+        connections.broadcastMove(1, loadGame, moveApplied());
+        third.awaitReceived(1);
+        assertTrue(loadGame.isEncoded());
+    }
+
+    private static OutboundMessage notification(String text) {
+        return OutboundMessage.of(new ServerMessage(ServerMessage.ServerMessageType.NOTIFICATION, null, null, text));
+    }
+
+    private static OutboundMessage moveApplied() {
+        return OutboundMessage.of(ServerMessage.moveApplied(null, 0, ServerMessage.GameStatus.ACTIVE));
+    }
+
+    private static OutboundMessage loadGame() {
+        return OutboundMessage.of(new ServerMessage(ServerMessage.ServerMessageType.LOAD_GAME,
+                new ChessGame(), null, null));
+    }
+}
@@ -0,0 +1,84 @@
+package websocket;
+
+import io.javalin.Javalin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import websocket.messages.ServerMessage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameCompressionTests {
+    private Javalin app;
+
+    @AfterEach
+    void stop() {
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    // Replies to a message holding a number with a notification that long, through the usual sender.
+    private int start(FrameCompression compression) {
+        ConnectionManager connections = new ConnectionManager();
+        app = Javalin.create(config -> config.jetty.modifyServletContextHandler(compression::install));
+        app.ws("/ws", ws -> {
+            ws.onMessage(ctx -> connections.send(ctx, OutboundMessage.of(new ServerMessage(
+                    ServerMessage.ServerMessageType.NOTIFICATION, null, null,
+                    "x".repeat(Integer.parseInt(ctx.message()))))));
+            ws.onClose(connections::remove);
+        });
+        return app.start(0).port();
+    }
+
+    @Test
+    void largeMessagesAreCompressedAndSmallOnesAreNot() throws Exception {
+        FrameCompression compression = new FrameCompression(true, 256, -1);
+        int port = start(compression);
+
+        try (RawWebSocketClient client = new RawWebSocketClient(port, "/ws", "permessage-deflate")) {
+            assertTrue(client.responseHeaders().toLowerCase().contains("permessage-deflate"));
+
+            client.sendText("2000");
+            RawWebSocketClient.Frame large = client.readFrame();
+            assertTrue(large.rsv1());
+            assertTrue(large.payload().length < 2000);
+            String text = client.text(large);
+            assertTrue(text.startsWith("{") && text.contains("x".repeat(2000)));
+
+            client.sendText("10");
+            RawWebSocketClient.Frame small = client.readFrame();
+            assertFalse(small.rsv1());
+            assertTrue(client.text(small).contains("\"xxxxxxxxxx\""));
+
+            // The compressor keeps its window across messages, so a skipped one must not disturb it.
+            client.sendText("2000");
+            RawWebSocketClient.Frame again = client.readFrame();
+            assertTrue(again.rsv1());
+            assertEquals(text, client.text(again));
+        }
+
+        FrameCompression.CompressionStats stats = compression.stats();
+        assertEquals(2, stats.compressedMessages());
+        assertTrue(stats.bytesBeforeCompression() > 4000);
+        assertTrue(stats.bytesAfterCompression() > 0);
+        assertTrue(stats.ratio() < 0.5);
+        assertEquals(1, stats.uncompressedMessages());
+        assertTrue(stats.uncompressedBytes() < 256);
+    }
+
+    @Test
+    void disabledCompressionIsNotNegotiated() throws Exception {
+        FrameCompression compression = new FrameCompression(false, 256, -1);
+        int port = start(compression);
+
+        try (RawWebSocketClient client = new RawWebSocketClient(port, "/ws", "permessage-deflate")) {
+            assertFalse(client.responseHeaders().toLowerCase().contains("permessage-deflate"));
+
+            client.sendText("2000");
+            RawWebSocketClient.Frame frame = client.readFrame();
+            assertFalse(frame.rsv1());
+            assertTrue(client.text(frame).contains("x".repeat(2000)));
+        }
+        assertEquals(0, compression.stats().compressedMessages());
+    }
+}
@@ -0,0 +1,139 @@
+package websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameMailboxesTests {
+
+    @Test
+    void oneGamesCommandsRunInOrderAndNeverOverlap() throws Exception {
+        GameMailboxes mailboxes = new GameMailboxes();
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(200);
+
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            mailboxes.submit(7, () -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(n);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    void differentGamesRunInParallel() throws Exception {
+        GameMailboxes mailboxes = new GameMailboxes();
+        CountDownLatch otherGameRan = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Game 1 waits for game 2, which could never happen if they shared a thread.
+        mailboxes.submit(1, () -> {
+            try {
+                if (otherGameRan.await(5, TimeUnit.SECONDS)) {
+                    done.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        mailboxes.submit(2, otherGameRan::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failingCommandDoesNotStopTheMailbox() throws Exception {
+        GameMailboxes mailboxes = new GameMailboxes();
+        CountDownLatch ran = new CountDownLatch(1);
+
+        mailboxes.submit(3, () -> {
+            throw new IllegalStateException("boom");
+        });
+        mailboxes.submit(3, ran::countDown);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mailboxes.activeCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, mailboxes.activeCount());
+    }
+
+    @Test
+    void errorInACommandDoesNotStopTheMailbox() throws Exception {
+        GameMailboxes mailboxes = new GameMailboxes();
+        CountDownLatch ran = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        mailboxes.submit(4, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new StackOverflowError();
+        });
+        mailboxes.submit(4, ran::countDown);
+        release.countDown();
+        assertTrue(waitUntil(() -> ran.getCount() == 1));
+
+        // The mailbox was retired or handed on, so a later command still runs.
+        mailboxes.submit(4, ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(waitUntil(() -> mailboxes.activeCount() == 0));
+    }
+
+    @Test
+    void fullMailboxRefusesCommands() throws Exception {
+        GameMailboxes mailboxes = new GameMailboxes(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        Runnable blocked = () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+
+        assertTrue(mailboxes.submit(5, blocked));
+        assertTrue(mailboxes.submit(5, done::countDown));
+        assertFalse(mailboxes.submit(5, done::countDown));
+        // Other games have their own room.
+        assertTrue(mailboxes.submit(6, () -> { }));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(waitUntil(() -> mailboxes.activeCount() == 0));
+        assertTrue(mailboxes.submit(5, () -> { }));
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return condition.getAsBoolean();
+    }
+}
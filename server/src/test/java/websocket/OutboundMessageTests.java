@@ -0,0 +1,36 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import websocket.messages.ServerMessage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboundMessageTests {
+
+    @Test
+    void loadGameLeavesOutServerOnlyState() throws Exception {
+        ChessGame game = new ChessGame();
+        for (int i = 0; i < 4; i++) {
+            game.makeMove(new ChessMove(new ChessPosition(1, 7), new ChessPosition(3, 6), null));
+            game.makeMove(new ChessMove(new ChessPosition(8, 7), new ChessPosition(6, 6), null));
+            game.makeMove(new ChessMove(new ChessPosition(3, 6), new ChessPosition(1, 7), null));
+            game.makeMove(new ChessMove(new ChessPosition(6, 6), new ChessPosition(8, 7), null));
+        }
+
+        String json = OutboundMessage.of(
+                new ServerMessage(ServerMessage.ServerMessageType.LOAD_GAME, game, null, null)).json();
+
+        assertFalse(json.contains("moveHistory"));
+        assertFalse(json.contains("repetitionHistory"));
+        assertFalse(json.contains("positionHash"));
+        assertTrue(json.length() < new Gson().toJson(game).length());
+
+        ChessGame received = new Gson().fromJson(json, ServerMessage.class).getGame();
+        assertEquals(game.toFen(), received.toFen());
+        assertEquals(game.getPositionHash(), received.getPositionHash());
+    }
+}
@@ -0,0 +1,149 @@
+package websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * A bare WebSocket client over a socket, so tests can see the frames the
+ * server really writes: their RSV1 bit, opcode and raw payload.
+ */
+final class RawWebSocketClient implements AutoCloseable {
+
+    record Frame(boolean fin, boolean rsv1, int opcode, byte[] payload) { }
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final DataInputStream in;
+    private final String responseHeaders;
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * @param extensions the Sec-WebSocket-Extensions header to offer, or null for none
+     */
+    RawWebSocketClient(int port, String path, String extensions) throws IOException {
+        socket = new Socket("localhost", port);
+        socket.setSoTimeout(5000);
+        out = socket.getOutputStream();
+        in = new DataInputStream(socket.getInputStream());
+
+        String request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+                + "Connection: Upgrade\r\nSec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                + "Sec-WebSocket-Version: 13\r\n"
+                + ((extensions != null) ? "Sec-WebSocket-Extensions: " + extensions + "\r\n" : "")
+                + "\r\n";
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        StringBuilder headers = new StringBuilder();
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            headers.append(line).append('\n');
+        }
+        responseHeaders = headers.toString();
+    }
+
+    String responseHeaders() {
+        return responseHeaders;
+    }
+
+    void sendText(String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0x81);
+        if (payload.length < 126) {
+            frame.write(0x80 | payload.length);
+        } else {
+            frame.write(0x80 | 126);
+            frame.write(payload.length >> 8);
+            frame.write(payload.length);
+        }
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        frame.write(mask);
+        for (int i = 0; i < payload.length; i++) {
+            frame.write(payload[i] ^ mask[i % 4]);
+        }
+        out.write(frame.toByteArray());
+        out.flush();
+    }
+
+    Frame readFrame() throws IOException {
+        int first = in.readUnsignedByte();
+        int second = in.readUnsignedByte();
+        long length = second & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = in.readLong();
+        }
+        byte[] payload = new byte[(int) length];
+        in.readFully(payload);
+        return new Frame((first & 0x80) != 0, (first & 0x40) != 0, first & 0x0F, payload);
+    }
+
+    /**
+     * @return a whole message, joining the frames Jetty splits large ones into
+     */
+    Frame readMessage() throws IOException {
+        Frame first = readFrame();
+        if (first.fin()) {
+            return first;
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(first.payload());
+        Frame next;
+        do {
+            next = readFrame();
+            payload.write(next.payload());
+        } while (!next.fin());
+        return new Frame(true, first.rsv1(), first.opcode(), payload.toByteArray());
+    }
+
+    /**
+     * @return a text frame's message, inflated first if it was compressed
+     */
+    String text(Frame frame) throws DataFormatException {
+        if (!frame.rsv1()) {
+            return new String(frame.payload(), StandardCharsets.UTF_8);
+        }
+        byte[] payload = frame.payload();
+        byte[] input = new byte[payload.length + 4];
+        System.arraycopy(payload, 0, input, 0, payload.length);
+        input[payload.length + 2] = (byte) 0xFF;
+        input[payload.length + 3] = (byte) 0xFF;
+        inflater.setInput(input);
+
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inflater.inflate(buffer)) > 0) {
+            message.write(buffer, 0, read);
+        }
+        return message.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        socket.close();
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Connection closed during the handshake");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+}
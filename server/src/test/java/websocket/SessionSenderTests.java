@@ -0,0 +1,75 @@
+package websocket;
+
+import io.javalin.Javalin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import websocket.messages.ServerMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * The fakes in ConnectionManagerTests only reach the sendString fallback;
+ * these go through real Jetty sessions, where frames are built around the
+ * shared encoded buffer.
+ */
+public class SessionSenderTests {
+    private Javalin app;
+
+    @AfterEach
+    void stop() {
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    @Test
+    void broadcastGivesEverySessionTheWholeMessage() throws Exception {
+        ConnectionManager connections = new ConnectionManager();
+        app = Javalin.create();
+        app.ws("/ws", ws -> {
+            // Each client joins game 1 under the name it sends, and is told once it has.
+            ws.onMessage(ctx -> {
+                connections.add(1, ctx.message(), ctx);
+                connections.send(ctx, OutboundMessage.of(new ServerMessage(
+                        ServerMessage.ServerMessageType.NOTIFICATION, null, null, "joined")));
+            });
+            ws.onClose(connections::remove);
+        });
+        int port = app.start(0).port();
+
+        List<RawWebSocketClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                RawWebSocketClient client = new RawWebSocketClient(port, "/ws", null);
+                clients.add(client);
+                client.sendText("user" + i);
+                assertTrue(client.text(client.readFrame()).contains("joined"));
+            }
+
+            // Big enough that Jetty splits it into several frames.
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; text.length() < 100_000; i++) {
+                text.append(i).append(' ');
+            }
+            OutboundMessage message = OutboundMessage.of(new ServerMessage(
+                    ServerMessage.ServerMessageType.NOTIFICATION, null, null, text.toString()));
+            connections.broadcast(1, message);
+            connections.broadcast(1, message);
+
+            for (RawWebSocketClient client : clients) {
+                for (int n = 0; n < 2; n++) {
+                    RawWebSocketClient.Frame frame = client.readMessage();
+                    assertEquals(0x1, frame.opcode());
+                    assertEquals(message.json(), client.text(frame));
+                }
+            }
+        } finally {
+            for (RawWebSocketClient client : clients) {
+                client.close();
+            }
+        }
+    }
+}
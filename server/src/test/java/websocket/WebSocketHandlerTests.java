@@ -0,0 +1,259 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import com.google.gson.Gson;
+import dataaccess.DataAccess;
+import dataaccess.DataAccessException;
+import dataaccess.InMemoryDataAccess;
+import io.javalin.websocket.WsMessageContext;
+import model.AuthData;
+import model.GameData;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import service.ActiveGameRegistry;
+import service.DatabaseAuthTokens;
+import service.NotifyingAuthTokens;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ServerMessage;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebSocketHandlerTests {
+    private static final Gson GSON = new Gson();
+
+    private DataAccess dataAccess;
+    private NotifyingAuthTokens tokens;
+    private final AtomicInteger lookups = new AtomicInteger();
+    private String token;
+    private int gameID;
+
+    /*
+     * Stands in for one client's Jetty session, recording every message the
+     * server writes to it.
+     */
+    private static final class FakeClient {
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final Session session;
+
+        FakeClient() {
+            RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(RemoteEndpoint.class.getClassLoader(),
+                    new Class<?>[] {RemoteEndpoint.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("sendString")) {
+                            received.add((String) args[0]);
+                        }
+                        return null;
+                    });
+            session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(),
+                    new Class<?>[] {Session.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "isOpen" -> true;
+                        case "getRemote" -> remote;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+        }
+
+        void send(WebSocketHandler handler, UserGameCommand command) {
+            handler.onMessage(new WsMessageContext("session", session, GSON.toJson(command)));
+        }
+
+        void awaitReceived(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, received.size());
+        }
+
+        // Waits for the next message of the given type and returns it.
+        ServerMessage awaitMessage(ServerMessage.ServerMessageType type, int from) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < deadline) {
+                for (int i = from; i < received.size(); i++) {
+                    ServerMessage message = GSON.fromJson(received.get(i), ServerMessage.class);
+                    if (message.getServerMessageType() == type) {
+                        return message;
+                    }
+                }
+                Thread.sleep(5);
+            }
+            return fail("No " + type + " received");
+        }
+    }
+
+    private final FakeClient client = new FakeClient();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataAccess = new InMemoryDataAccess();
+        tokens = new NotifyingAuthTokens(new DatabaseAuthTokens(dataAccess) {
+            @Override
+            public AuthData validate(String authToken) throws DataAccessException {
+                lookups.incrementAndGet();
+                return super.validate(authToken);
+            }
+        });
+        token = tokens.issue("alice").authToken();
+        gameID = dataAccess.createGame("game");
+    }
+
+    @Test
+    void commandsAfterConnectUseTheSessionsUser() throws Exception {
+        WebSocketHandler handler = handler(WebSocketHandler.DEFAULT_REVALIDATE_INTERVAL);
+
+        send(handler, UserGameCommand.CommandType.CONNECT);
+        client.awaitReceived(1);
+        // Wait for each reply, since the sender coalesces queued LOAD_GAMEs.
+        for (int i = 2; i <= 4; i++) {
+            send(handler, UserGameCommand.CommandType.RESYNC);
+            client.awaitReceived(i);
+        }
+
+        assertEquals(1, lookups.get());
+        assertTrue(client.received.stream().allMatch(message -> message.contains("LOAD_GAME")));
+    }
+
+    @Test
+    void revokedTokenIsCheckedAgainAndRefused() throws Exception {
+        WebSocketHandler handler = handler(WebSocketHandler.DEFAULT_REVALIDATE_INTERVAL);
+        tokens.addRevocationListener(handler::onTokenRevoked);
+
+        send(handler, UserGameCommand.CommandType.CONNECT);
+        client.awaitReceived(1);
+        tokens.revoke(token);
+        send(handler, UserGameCommand.CommandType.RESYNC);
+        client.awaitReceived(2);
+
+        assertEquals(2, lookups.get());
+        assertTrue(client.received.get(1).contains("invalid auth token"));
+    }
+
+    @Test
+    void sessionsTrustTheirTokenOnlyForTheRevalidateInterval() throws Exception {
+        WebSocketHandler handler = handler(Duration.ZERO);
+
+        send(handler, UserGameCommand.CommandType.CONNECT);
+        client.awaitReceived(1);
+        send(handler, UserGameCommand.CommandType.RESYNC);
+        client.awaitReceived(2);
+        send(handler, UserGameCommand.CommandType.RESYNC);
+        client.awaitReceived(3);
+
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    void movesGoAsDeltasOnlyToSessionsThatAskForThem() throws Exception {
+        WebSocketHandler handler = handler(WebSocketHandler.DEFAULT_REVALIDATE_INTERVAL);
+        String bobToken = seatPlayers();
+        FakeClient bob = new FakeClient();
+
+        client.send(handler, new UserGameCommand(UserGameCommand.CommandType.CONNECT, token, gameID, true));
+        client.awaitReceived(1);
+        bob.send(handler, new UserGameCommand(UserGameCommand.CommandType.CONNECT, bobToken, gameID));
+        bob.awaitReceived(1);
+        client.awaitReceived(2);
+
+        ChessMove move = new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null);
+        client.send(handler, new UserGameCommand(token, gameID, move));
+
+        ChessGame expected = new ChessGame();
+        expected.makeMove(move);
+        ServerMessage delta = client.awaitMessage(ServerMessage.ServerMessageType.MOVE_APPLIED, 2);
+        assertEquals(move, delta.getMove());
+        assertEquals(expected.getPositionHash(), delta.getPositionHash());
+        assertEquals(ServerMessage.GameStatus.ACTIVE, delta.getStatus());
+        assertNull(delta.getGame());
+
+        ServerMessage full = bob.awaitMessage(ServerMessage.ServerMessageType.LOAD_GAME, 1);
+        assertEquals(expected.toFen(), full.getGame().toFen());
+        assertTrue(bob.received.stream().noneMatch(message -> message.contains("MOVE_APPLIED")));
+        assertTrue(client.received.stream().skip(1).noneMatch(message -> message.contains("LOAD_GAME")));
+    }
+
+    @Test
+    void deltaReportsTheStatusAfterTheMove() throws Exception {
+        WebSocketHandler handler = handler(WebSocketHandler.DEFAULT_REVALIDATE_INTERVAL);
+        String bobToken = seatPlayers();
+        FakeClient bob = new FakeClient();
+        client.send(handler, new UserGameCommand(UserGameCommand.CommandType.CONNECT, token, gameID, true));
+        bob.send(handler, new UserGameCommand(UserGameCommand.CommandType.CONNECT, bobToken, gameID, true));
+
+        // Fool's mate: 1. f3 e5 2. g4 Qh4#.
+        ChessGame expected = new ChessGame();
+        ChessMove[] moves = {
+            new ChessMove(new ChessPosition(2, 6), new ChessPosition(3, 6), null),
+            new ChessMove(new ChessPosition(7, 5), new ChessPosition(5, 5), null),
+            new ChessMove(new ChessPosition(2, 7), new ChessPosition(4, 7), null),
+            new ChessMove(new ChessPosition(8, 4), new ChessPosition(4, 8), null),
+        };
+        for (int i = 0; i < moves.length; i++) {
+            (i % 2 == 0 ? client : bob).send(handler, new UserGameCommand(i % 2 == 0 ? token : bobToken, gameID, moves[i]));
+            expected.makeMove(moves[i]);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.received.stream().filter(m -> m.contains("MOVE_APPLIED")).count() < 4
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        List<ServerMessage> deltas = client.received.stream()
+                .map(message -> GSON.fromJson(message, ServerMessage.class))
+                .filter(message -> message.getServerMessageType() == ServerMessage.ServerMessageType.MOVE_APPLIED)
+                .toList();
+        assertEquals(4, deltas.size());
+        ServerMessage mate = deltas.get(3);
+        assertEquals(moves[3], mate.getMove());
+        assertEquals(ServerMessage.GameStatus.CHECKMATE, mate.getStatus());
+        assertEquals(expected.getPositionHash(), mate.getPositionHash());
+    }
+
+    @Test
+    void resyncSendsTheGameOnlyToTheRequester() throws Exception {
+        WebSocketHandler handler = handler(WebSocketHandler.DEFAULT_REVALIDATE_INTERVAL);
+        String bobToken = seatPlayers();
+        FakeClient bob = new FakeClient();
+        client.send(handler, new UserGameCommand(UserGameCommand.CommandType.CONNECT, token, gameID));
+        client.awaitReceived(1);
+        bob.send(handler, new UserGameCommand(UserGameCommand.CommandType.CONNECT, bobToken, gameID));
+        bob.awaitReceived(1);
+        client.awaitReceived(2);
+
+        bob.send(handler, new UserGameCommand(UserGameCommand.CommandType.RESYNC, bobToken, gameID));
+        bob.awaitReceived(2);
+        assertTrue(bob.received.get(1).contains("LOAD_GAME"));
+
+        // Alice's own resync is the next thing she gets; nothing was sent to her for Bob's.
+        send(handler, UserGameCommand.CommandType.RESYNC);
+        client.awaitReceived(3);
+        assertTrue(client.received.get(2).contains("LOAD_GAME"));
+        assertEquals(2, bob.received.size());
+    }
+
+    private WebSocketHandler handler(Duration revalidateAfter) {
+        return new WebSocketHandler(dataAccess, tokens, new ConnectionManager(),
+                new ActiveGameRegistry(dataAccess), revalidateAfter);
+    }
+
+    // Seats alice as white and bob as black, and returns bob's token.
+    private String seatPlayers() throws DataAccessException {
+        GameData game = dataAccess.getGame(gameID);
+        dataAccess.updateGame(new GameData(gameID, "alice", "bob", game.gameName(), game.game(), game.version()));
+        return tokens.issue("bob").authToken();
+    }
+
+    private void send(WebSocketHandler handler, UserGameCommand.CommandType type) {
+        client.send(handler, new UserGameCommand(type, token, gameID));
+    }
+}
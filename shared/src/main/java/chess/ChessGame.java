@@ -1,7 +1,13 @@
 package chess;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.SplittableRandom;
 
 public class ChessGame {
 
@@ -11,18 +17,161 @@ public class ChessGame {
 
     private boolean gameOver = false;
 
+    /**
+     * The position of a new game in Forsyth-Edwards Notation.
+     */
+    public static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /**
+     * How many bytes {@link #writeSnapshot} writes.
+     */
+    public static final int SNAPSHOT_SIZE = 38;
+    private static final int NO_SQUARE = 0xFF;
+
+    // Castling rights, one bit each.
+    private static final int WHITE_KINGSIDE = 1;
+    private static final int WHITE_QUEENSIDE = 2;
+    private static final int BLACK_KINGSIDE = 4;
+    private static final int BLACK_QUEENSIDE = 8;
+    private static final String CASTLING_LETTERS = "KQkq";
+
+    private int castlingRights = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+    // The square a pawn skipped over with a two-square advance on the last move, if any.
+    private ChessPosition enPassantTarget;
+    private int halfmoveClock = 0;
+    private int fullmoveNumber = 1;
+
+    // Where the recorded moves start from, as FEN; null means the standard setup.
+    private String startFen;
+    private List<ChessMove> moveHistory = new ArrayList<>();
+
+    // Zobrist hash of the position; 0 until first needed, and again after setBoard or setTeamTurn.
+    private long positionHash;
+    // Hashes of the earlier positions since the last capture or pawn move, the only ones that can repeat.
+    private List<Long> repetitionHistory = new ArrayList<>();
+
     public ChessGame() {
         this.board = new ChessBoard();
         this.board.resetBoard();
         this.teamTurn = TeamColor.WHITE;
     }
 
+    /**
+     * Creates an independent copy of another game, so the copy can be changed
+     * without affecting the original.
+     */
+    public ChessGame(ChessGame other) {
+        this.board = new ChessBoard();
+        this.board.copyFrom(other.board);
+        this.teamTurn = other.teamTurn;
+        this.gameOver = other.gameOver;
+        this.castlingRights = other.castlingRights;
+        this.enPassantTarget = other.enPassantTarget;
+        this.halfmoveClock = other.halfmoveClock;
+        this.fullmoveNumber = other.fullmoveNumber;
+        this.startFen = other.startFen;
+        this.moveHistory = new ArrayList<>(other.moveHistory);
+        this.positionHash = other.positionHash;
+        this.repetitionHistory = new ArrayList<>(other.repetitionHistory);
+    }
+
     public TeamColor getTeamTurn() {
         return teamTurn;
     }
 
     public void setTeamTurn(TeamColor team) {
         this.teamTurn = team;
+        this.positionHash = 0;
+    }
+
+    /**
+     * @return the square a pawn can be captured on en passant this turn, or null
+     */
+    public ChessPosition getEnPassantTarget() {
+        return enPassantTarget;
+    }
+
+    /**
+     * @return moves since the last capture or pawn move, counting each side's move separately
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * @return the number of the current move, starting at 1 and going up after Black moves
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * @return a 64-bit hash of the position: pieces, side to move, castling rights
+     * and any possible en passant capture. Equal positions have equal hashes.
+     */
+    public long getPositionHash() {
+        if (positionHash == 0) {
+            positionHash = computeHash();
+        }
+        return positionHash;
+    }
+
+    /**
+     * @return true once 50 moves by each side have passed without a capture or
+     * pawn move, which lets either player claim a draw
+     */
+    public boolean isFiftyMoveRule() {
+        return halfmoveClock >= 100;
+    }
+
+    /**
+     * @return true once 75 moves by each side have passed without a capture or
+     * pawn move, which draws the game without a claim
+     */
+    public boolean isSeventyFiveMoveRule() {
+        return halfmoveClock >= 150;
+    }
+
+    /**
+     * @return true if the current position has occurred at least twice before,
+     * which lets either player claim a draw
+     */
+    public boolean isThreefoldRepetition() {
+        return hasRepeated(2);
+    }
+
+    /**
+     * @return true if the current position has occurred at least four times
+     * before, which draws the game without a claim
+     */
+    public boolean isFivefoldRepetition() {
+        return hasRepeated(4);
+    }
+
+    private boolean hasRepeated(int times) {
+        long hash = getPositionHash();
+        int seen = 0;
+        for (long earlier : repetitionHistory) {
+            if (earlier == hash && ++seen == times) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return every move made so far, oldest first
+     */
+    public List<ChessMove> getMoveHistory() {
+        return Collections.unmodifiableList(moveHistory);
+    }
+
+    /**
+     * @return a new game at the position the move history starts from
+     */
+    public ChessGame startingPosition() {
+        String fen = moveHistory.isEmpty() ? toFen() : startFen;
+        return (fen == null) ? new ChessGame() : fromFen(fen);
     }
 
     public boolean isGameOver() {
@@ -57,7 +206,8 @@ public class ChessGame {
             return null;
         }
 
-        var pseudo = piece.pieceMoves(board, startPosition);
+        var pseudo = new ArrayList<>(piece.pieceMoves(board, startPosition));
+        addSpecialMoves(pseudo, piece, startPosition);
         var legal = new java.util.ArrayList<ChessMove>();
 
         for (ChessMove mv : pseudo) {
@@ -80,10 +230,63 @@ public class ChessGame {
         return c;
     }
 
+    // Castling and en passant depend on the game's history, which ChessPiece cannot see.
+    private void addSpecialMoves(List<ChessMove> moves, ChessPiece piece, ChessPosition from) {
+        TeamColor team = piece.getTeamColor();
+        TeamColor enemy = (team == TeamColor.WHITE) ? TeamColor.BLACK : TeamColor.WHITE;
+
+        if (piece.getPieceType() == ChessPiece.PieceType.PAWN) {
+            if (enPassantTarget != null && team == teamTurn
+                    && enPassantTarget.getRow() - from.getRow() == ((team == TeamColor.WHITE) ? 1 : -1)
+                    && Math.abs(enPassantTarget.getColumn() - from.getColumn()) == 1) {
+                moves.add(new ChessMove(from, enPassantTarget, null));
+            }
+            return;
+        }
+
+        int row = (team == TeamColor.WHITE) ? 1 : 8;
+        if (piece.getPieceType() != ChessPiece.PieceType.KING || from.getRow() != row || from.getColumn() != 5) {
+            return;
+        }
+        int kingside = (team == TeamColor.WHITE) ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+        int queenside = (team == TeamColor.WHITE) ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+        if ((castlingRights & (kingside | queenside)) == 0 || isSquareAttacked(board, from, enemy)) {
+            return;
+        }
+
+        // The king may not pass through an attacked square; the square it lands on
+        // is checked along with every other move in validMoves.
+        if ((castlingRights & kingside) != 0 && hasPiece(board, row, 8, team, ChessPiece.PieceType.ROOK)
+                && isEmpty(row, 6) && isEmpty(row, 7)
+                && !isSquareAttacked(board, new ChessPosition(row, 6), enemy)) {
+            moves.add(new ChessMove(from, new ChessPosition(row, 7), null));
+        }
+        if ((castlingRights & queenside) != 0 && hasPiece(board, row, 1, team, ChessPiece.PieceType.ROOK)
+                && isEmpty(row, 2) && isEmpty(row, 3) && isEmpty(row, 4)
+                && !isSquareAttacked(board, new ChessPosition(row, 4), enemy)) {
+            moves.add(new ChessMove(from, new ChessPosition(row, 3), null));
+        }
+    }
+
+    private boolean isEmpty(int row, int col) {
+        return board.squares[row - 1][col - 1] == null;
+    }
+
     private void applyMove(ChessBoard b, ChessMove move) {
         ChessPosition s = move.getStartPosition();
         ChessPosition e = move.getEndPosition();
         ChessPiece moving = b.getPiece(s);
+        int columnDelta = e.getColumn() - s.getColumn();
+
+        if (moving.getPieceType() == ChessPiece.PieceType.KING && Math.abs(columnDelta) == 2) {
+            // Castling: the rook jumps to the square the king passed over.
+            ChessPosition rookFrom = new ChessPosition(s.getRow(), columnDelta > 0 ? 8 : 1);
+            b.addPiece(new ChessPosition(s.getRow(), s.getColumn() + columnDelta / 2), b.getPiece(rookFrom));
+            b.removePiece(rookFrom);
+        } else if (moving.getPieceType() == ChessPiece.PieceType.PAWN && columnDelta != 0 && b.getPiece(e) == null) {
+            // En passant: the captured pawn is beside the start square, not on the target.
+            b.removePiece(new ChessPosition(s.getRow(), e.getColumn()));
+        }
 
         if (move.getPromotionPiece() != null) {
             b.removePiece(s);
@@ -214,9 +417,148 @@ public class ChessGame {
             throw new InvalidMoveException("Illegal move.");
         }
 
+        if (moveHistory.isEmpty()) {
+            String fen = toFen();
+            startFen = fen.equals(STARTING_FEN) ? null : fen;
+        }
+        long previousHash = getPositionHash();
+        long hash = previousHash ^ stateKeys() ^ pieceKeys(piece, move);
+
+        updateCounters(piece, move);
         applyMove(board, move);
+        moveHistory.add(move);
 
         teamTurn = (teamTurn == TeamColor.WHITE) ? TeamColor.BLACK : TeamColor.WHITE;
+        positionHash = hash ^ stateKeys();
+
+        if (halfmoveClock == 0) {
+            repetitionHistory.clear();
+        } else {
+            repetitionHistory.add(previousHash);
+        }
+    }
+
+    // Zobrist keys: one random number per piece on each square and per item of
+    // state, XORed together, so a move only has to XOR out what it changes.
+    private static final long[] PIECE_KEYS = new long[12 * 64];
+    private static final long[] CASTLING_KEYS = new long[16];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        // A fixed seed keeps hashes the same across runs and machines.
+        SplittableRandom random = new SplittableRandom(0x2C6F_8A1D_93B4_E057L);
+        for (int i = 0; i < PIECE_KEYS.length; i++) {
+            PIECE_KEYS[i] = random.nextLong();
+        }
+        for (int i = 1; i < CASTLING_KEYS.length; i++) {
+            CASTLING_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT_KEYS.length; i++) {
+            EN_PASSANT_KEYS[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    private static long pieceKey(ChessPiece piece, int row, int col) {
+        int index = piece.getPieceType().ordinal() + (piece.getTeamColor() == TeamColor.WHITE ? 0 : 6);
+        return PIECE_KEYS[index * 64 + (row - 1) * 8 + (col - 1)];
+    }
+
+    private long computeHash() {
+        long hash = stateKeys();
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPiece piece = board.squares[row - 1][col - 1];
+                if (piece != null) {
+                    hash ^= pieceKey(piece, row, col);
+                }
+            }
+        }
+        return hash;
+    }
+
+    private long stateKeys() {
+        long keys = CASTLING_KEYS[castlingRights];
+        if (teamTurn == TeamColor.BLACK) {
+            keys ^= BLACK_TO_MOVE_KEY;
+        }
+        // The en passant square only matters when a pawn is there to use it.
+        if (enPassantTarget != null) {
+            int pawnRow = (teamTurn == TeamColor.WHITE) ? 5 : 4;
+            int col = enPassantTarget.getColumn();
+            if ((col > 1 && hasPiece(board, pawnRow, col - 1, teamTurn, ChessPiece.PieceType.PAWN))
+                    || (col < 8 && hasPiece(board, pawnRow, col + 1, teamTurn, ChessPiece.PieceType.PAWN))) {
+                keys ^= EN_PASSANT_KEYS[col - 1];
+            }
+        }
+        return keys;
+    }
+
+    // The keys of every piece the move picks up, puts down or captures; called before it is applied.
+    private long pieceKeys(ChessPiece piece, ChessMove move) {
+        ChessPosition from = move.getStartPosition();
+        ChessPosition to = move.getEndPosition();
+        int row = from.getRow();
+        int columnDelta = to.getColumn() - from.getColumn();
+
+        ChessPiece placed = (move.getPromotionPiece() == null)
+                ? piece
+                : new ChessPiece(piece.getTeamColor(), move.getPromotionPiece());
+        long keys = pieceKey(piece, row, from.getColumn()) ^ pieceKey(placed, to.getRow(), to.getColumn());
+
+        ChessPiece captured = board.getPiece(to);
+        if (captured != null) {
+            keys ^= pieceKey(captured, to.getRow(), to.getColumn());
+        } else if (piece.getPieceType() == ChessPiece.PieceType.PAWN && columnDelta != 0) {
+            keys ^= pieceKey(board.squares[row - 1][to.getColumn() - 1], row, to.getColumn());
+        }
+
+        if (piece.getPieceType() == ChessPiece.PieceType.KING && Math.abs(columnDelta) == 2) {
+            ChessPiece rook = board.squares[row - 1][columnDelta > 0 ? 7 : 0];
+            keys ^= pieceKey(rook, row, columnDelta > 0 ? 8 : 1)
+                    ^ pieceKey(rook, row, from.getColumn() + columnDelta / 2);
+        }
+        return keys;
+    }
+
+    // Called before the move is applied, while the target square still shows any capture.
+    private void updateCounters(ChessPiece piece, ChessMove move) {
+        ChessPosition from = move.getStartPosition();
+        ChessPosition to = move.getEndPosition();
+        boolean pawn = piece.getPieceType() == ChessPiece.PieceType.PAWN;
+
+        halfmoveClock = (pawn || board.getPiece(to) != null) ? 0 : halfmoveClock + 1;
+        if (teamTurn == TeamColor.BLACK) {
+            fullmoveNumber++;
+        }
+
+        enPassantTarget = (pawn && Math.abs(to.getRow() - from.getRow()) == 2)
+                ? new ChessPosition((from.getRow() + to.getRow()) / 2, from.getColumn())
+                : null;
+
+        if (piece.getPieceType() == ChessPiece.PieceType.KING) {
+            castlingRights &= (piece.getTeamColor() == TeamColor.WHITE)
+                    ? ~(WHITE_KINGSIDE | WHITE_QUEENSIDE)
+                    : ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        }
+        // A rook leaving its corner, or being captured there, loses that side's castling.
+        castlingRights &= ~(cornerRight(from) | cornerRight(to));
+    }
+
+    private static int cornerRight(ChessPosition square) {
+        int row = square.getRow();
+        int col = square.getColumn();
+        if (row == 1 && col == 1) {
+            return WHITE_QUEENSIDE;
+        } else if (row == 1 && col == 8) {
+            return WHITE_KINGSIDE;
+        } else if (row == 8 && col == 1) {
+            return BLACK_QUEENSIDE;
+        } else if (row == 8 && col == 8) {
+            return BLACK_KINGSIDE;
+        }
+        return 0;
     }
 
     public boolean isInCheck(TeamColor teamColor) {
@@ -238,8 +580,383 @@ public class ChessGame {
         return !isInCheck(teamColor) && !hasAnyLegalMove(teamColor);
     }
 
+    /**
+     * Replaces the position; the move history restarts from this board. A side
+     * keeps the right to castle on a wing while its king and that rook are on
+     * their original squares, and there is no en passant capture.
+     */
     public void setBoard(ChessBoard board) {
         this.board = board;
+        this.castlingRights = inferCastlingRights(board);
+        this.enPassantTarget = null;
+        this.halfmoveClock = 0;
+        this.fullmoveNumber = 1;
+        this.startFen = null;
+        this.moveHistory = new ArrayList<>();
+        this.positionHash = 0;
+        this.repetitionHistory = new ArrayList<>();
+    }
+
+    /**
+     * Works out the castling rights of a game stored before they were kept,
+     * which loads with every right set. With a move history the rights are
+     * replayed from it. Without one the rights are only kept if the board is
+     * still the starting position, since a king or rook may have moved away
+     * and back.
+     */
+    public void recoverCastlingRights() {
+        if (!moveHistory.isEmpty()) {
+            ChessGame replay = startingPosition();
+            try {
+                for (ChessMove move : moveHistory) {
+                    replay.makeMove(move);
+                }
+                castlingRights = replay.castlingRights;
+            } catch (InvalidMoveException e) {
+                castlingRights = 0;
+            }
+        } else if (!board.equals(new ChessGame().board)) {
+            castlingRights = 0;
+        }
+        positionHash = 0;
+    }
+
+    private static int inferCastlingRights(ChessBoard board) {
+        int rights = 0;
+        if (hasPiece(board, 1, 5, TeamColor.WHITE, ChessPiece.PieceType.KING)) {
+            rights |= hasPiece(board, 1, 8, TeamColor.WHITE, ChessPiece.PieceType.ROOK) ? WHITE_KINGSIDE : 0;
+            rights |= hasPiece(board, 1, 1, TeamColor.WHITE, ChessPiece.PieceType.ROOK) ? WHITE_QUEENSIDE : 0;
+        }
+        if (hasPiece(board, 8, 5, TeamColor.BLACK, ChessPiece.PieceType.KING)) {
+            rights |= hasPiece(board, 8, 8, TeamColor.BLACK, ChessPiece.PieceType.ROOK) ? BLACK_KINGSIDE : 0;
+            rights |= hasPiece(board, 8, 1, TeamColor.BLACK, ChessPiece.PieceType.ROOK) ? BLACK_QUEENSIDE : 0;
+        }
+        return rights;
+    }
+
+    private static boolean hasPiece(ChessBoard board, int row, int col, TeamColor team, ChessPiece.PieceType type) {
+        ChessPiece piece = board.squares[row - 1][col - 1];
+        return piece != null && piece.getTeamColor() == team && piece.getPieceType() == type;
+    }
+
+    /**
+     * Checks that the position could come up in a game: each side has exactly
+     * one king and no pawn stands on the first or last rank. A FEN can
+     * describe any board, so positions from outside need this before they are
+     * played.
+     *
+     * @throws IllegalArgumentException describing the first problem found
+     */
+    public void requirePlayable() {
+        int whiteKings = 0;
+        int blackKings = 0;
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPiece piece = board.squares[row - 1][col - 1];
+                if (piece == null) {
+                    continue;
+                }
+                if (piece.getPieceType() == ChessPiece.PieceType.KING) {
+                    if (piece.getTeamColor() == TeamColor.WHITE) {
+                        whiteKings++;
+                    } else {
+                        blackKings++;
+                    }
+                } else if (piece.getPieceType() == ChessPiece.PieceType.PAWN && (row == 1 || row == 8)) {
+                    throw new IllegalArgumentException("Pawn on the back rank at " + PgnWriter.square(new ChessPosition(row, col)));
+                }
+            }
+        }
+        if (whiteKings != 1 || blackKings != 1) {
+            throw new IllegalArgumentException("Each side needs exactly one king, but white has "
+                    + whiteKings + " and black has " + blackKings);
+        }
+    }
+
+    /**
+     * Reads a position in Forsyth-Edwards Notation. The halfmove clock and move
+     * number may be left off, as many tools do; they default to 0 and 1.
+     *
+     * @throws IllegalArgumentException if the text is not valid FEN
+     */
+    public static ChessGame fromFen(String fen) {
+        ChessGame game = new ChessGame();
+        ChessPiece[][] squares = game.board.squares;
+        int length = fen.length();
+        int i = 0;
+
+        // Piece placement, from rank 8 down to rank 1.
+        for (int row = 7; row >= 0; row--) {
+            int col = 0;
+            while (col < 8) {
+                char c = charAt(fen, i++);
+                if (c >= '1' && c <= '8') {
+                    int empty = c - '0';
+                    if (col + empty > 8) {
+                        throw badFen(fen, "rank " + (row + 1) + " is longer than 8 squares");
+                    }
+                    for (int k = 0; k < empty; k++) {
+                        squares[row][col++] = null;
+                    }
+                } else {
+                    squares[row][col++] = fenPiece(fen, c);
+                }
+            }
+            if (row > 0 && charAt(fen, i++) != '/') {
+                throw badFen(fen, "rank " + (row + 1) + " does not have 8 squares");
+            }
+        }
+        i = skipSpace(fen, i);
+
+        char side = charAt(fen, i++);
+        if (side != 'w' && side != 'b') {
+            throw badFen(fen, "side to move must be w or b");
+        }
+        game.teamTurn = (side == 'w') ? TeamColor.WHITE : TeamColor.BLACK;
+        i = skipSpace(fen, i);
+
+        game.castlingRights = 0;
+        if (charAt(fen, i) == '-') {
+            i++;
+        } else {
+            while (i < length && fen.charAt(i) != ' ') {
+                int bit = CASTLING_LETTERS.indexOf(fen.charAt(i++));
+                if (bit < 0) {
+                    throw badFen(fen, "castling rights must be - or letters from KQkq");
+                }
+                game.castlingRights |= 1 << bit;
+            }
+        }
+        i = skipSpace(fen, i);
+
+        char file = charAt(fen, i++);
+        if (file != '-') {
+            char rank = charAt(fen, i++);
+            if (file < 'a' || file > 'h' || (rank != '3' && rank != '6')) {
+                throw badFen(fen, "en passant square must be - or a square on rank 3 or 6");
+            }
+            game.enPassantTarget = new ChessPosition(rank - '0', file - 'a' + 1);
+        }
+
+        if (i < length) {
+            i = skipSpace(fen, i);
+            int end = fen.indexOf(' ', i);
+            end = (end < 0) ? length : end;
+            game.halfmoveClock = parseCounter(fen, i, end);
+            i = end;
+            if (i < length) {
+                i = skipSpace(fen, i);
+                end = fen.indexOf(' ', i);
+                end = (end < 0) ? length : end;
+                game.fullmoveNumber = Math.max(1, parseCounter(fen, i, end));
+                i = end;
+            }
+        }
+        if (skipTrailingSpace(fen, i) != length) {
+            throw badFen(fen, "unexpected text at the end");
+        }
+        return game;
+    }
+
+    /**
+     * @return the current position in Forsyth-Edwards Notation
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        ChessPiece[][] squares = board.squares;
+        for (int row = 7; row >= 0; row--) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                ChessPiece piece = squares[row][col];
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append((char) ('0' + empty));
+                    empty = 0;
+                }
+                fen.append(fenLetter(piece));
+            }
+            if (empty > 0) {
+                fen.append((char) ('0' + empty));
+            }
+            if (row > 0) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(teamTurn == TeamColor.WHITE ? " w " : " b ");
+        if (castlingRights == 0) {
+            fen.append('-');
+        } else {
+            for (int bit = 0; bit < 4; bit++) {
+                if ((castlingRights & (1 << bit)) != 0) {
+                    fen.append(CASTLING_LETTERS.charAt(bit));
+                }
+            }
+        }
+        fen.append(' ');
+        if (enPassantTarget == null) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + enPassantTarget.getColumn() - 1)).append(enPassantTarget.getRow());
+        }
+        fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return fen.toString();
+    }
+
+    /**
+     * Writes the current position in binary: the 64 squares from a1 to h8 at
+     * four bits each, then a byte of flags (castling rights, side to move, game
+     * over), the en passant square and both move counters. Like FEN it holds a
+     * position, not the moves that led to it.
+     */
+    public void writeSnapshot(ByteBuffer out) {
+        ChessPiece[][] squares = board.squares;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col += 2) {
+                out.put((byte) (snapshotNibble(squares[row][col]) << 4 | snapshotNibble(squares[row][col + 1])));
+            }
+        }
+
+        int flags = castlingRights;
+        if (teamTurn == TeamColor.BLACK) {
+            flags |= 0x10;
+        }
+        if (gameOver) {
+            flags |= 0x20;
+        }
+        out.put((byte) flags);
+        out.put((byte) (enPassantTarget == null ? NO_SQUARE
+                : (enPassantTarget.getRow() - 1) * 8 + enPassantTarget.getColumn() - 1));
+        out.putShort((short) Math.min(halfmoveClock, 0xFFFF));
+        out.putShort((short) Math.min(fullmoveNumber, 0xFFFF));
+    }
+
+    /**
+     * Reads a position written by {@link #writeSnapshot}. The game has no move
+     * history; its moves are recorded from this position on.
+     *
+     * @throws IllegalArgumentException if the bytes are not a snapshot
+     */
+    public static ChessGame readSnapshot(ByteBuffer in) {
+        ChessGame game = new ChessGame();
+        try {
+            ChessPiece[][] squares = game.board.squares;
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col += 2) {
+                    int pair = in.get() & 0xFF;
+                    squares[row][col] = snapshotPiece(pair >>> 4);
+                    squares[row][col + 1] = snapshotPiece(pair & 0x0F);
+                }
+            }
+
+            int flags = in.get() & 0xFF;
+            if ((flags & ~0x3F) != 0) {
+                throw new IllegalArgumentException("Invalid snapshot: unknown flags");
+            }
+            game.castlingRights = flags & 0x0F;
+            game.teamTurn = ((flags & 0x10) != 0) ? TeamColor.BLACK : TeamColor.WHITE;
+            game.gameOver = (flags & 0x20) != 0;
+
+            int square = in.get() & 0xFF;
+            if (square != NO_SQUARE) {
+                int row = square / 8 + 1;
+                if (square >= 64 || (row != 3 && row != 6)) {
+                    throw new IllegalArgumentException("Invalid snapshot: en passant square must be on rank 3 or 6");
+                }
+                game.enPassantTarget = new ChessPosition(row, square % 8 + 1);
+            }
+            game.halfmoveClock = in.getShort() & 0xFFFF;
+            game.fullmoveNumber = Math.max(1, in.getShort() & 0xFFFF);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Invalid snapshot: it ends too soon");
+        }
+        return game;
+    }
+
+    // 0 is an empty square; pieces are their index in FEN_LETTERS plus one.
+    private static int snapshotNibble(ChessPiece piece) {
+        return (piece == null) ? 0 : pieceIndex(piece) + 1;
+    }
+
+    private static ChessPiece snapshotPiece(int nibble) {
+        if (nibble == 0) {
+            return null;
+        }
+        if (nibble > FEN_PIECES.length) {
+            throw new IllegalArgumentException("Invalid snapshot: unknown piece " + nibble);
+        }
+        return FEN_PIECES[nibble - 1];
+    }
+
+    // Pieces never change, so every board built from FEN can share these.
+    private static final String FEN_LETTERS = "KQBNRPkqbnrp";
+    private static final ChessPiece[] FEN_PIECES = new ChessPiece[12];
+
+    static {
+        ChessPiece.PieceType[] types = ChessPiece.PieceType.values();
+        for (int i = 0; i < 12; i++) {
+            TeamColor team = (i < 6) ? TeamColor.WHITE : TeamColor.BLACK;
+            FEN_PIECES[i] = new ChessPiece(team, types[i % 6]);
+        }
+    }
+
+    private static ChessPiece fenPiece(String fen, char letter) {
+        int index = FEN_LETTERS.indexOf(letter);
+        if (index < 0) {
+            throw badFen(fen, "unexpected '" + letter + "' in piece placement");
+        }
+        return FEN_PIECES[index];
+    }
+
+    private static char fenLetter(ChessPiece piece) {
+        return FEN_LETTERS.charAt(pieceIndex(piece));
+    }
+
+    private static int pieceIndex(ChessPiece piece) {
+        return piece.getPieceType().ordinal() + (piece.getTeamColor() == TeamColor.WHITE ? 0 : 6);
+    }
+
+    private static char charAt(String fen, int i) {
+        if (i >= fen.length()) {
+            throw badFen(fen, "it ends too soon");
+        }
+        return fen.charAt(i);
+    }
+
+    private static int skipSpace(String fen, int i) {
+        if (charAt(fen, i) != ' ') {
+            throw badFen(fen, "fields must be separated by spaces");
+        }
+        return skipTrailingSpace(fen, i);
+    }
+
+    private static int skipTrailingSpace(String fen, int i) {
+        while (i < fen.length() && fen.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int parseCounter(String fen, int start, int end) {
+        if (start == end || end - start > 6) {
+            throw badFen(fen, "move counters must be numbers");
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = fen.charAt(i);
+            if (c < '0' || c > '9') {
+                throw badFen(fen, "move counters must be numbers");
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException badFen(String fen, String problem) {
+        return new IllegalArgumentException("Invalid FEN \"" + fen + "\": " + problem);
     }
 
     public ChessBoard getBoard() {
@@ -193,7 +193,7 @@ public class ChessPiece {
             }
         }
 
-        // (En passant not required for your passoff set.)
+        // En passant needs the previous move, so ChessGame adds it.
     }
 
     private void addPawnAdvanceOrPromote(List<ChessMove> moves, ChessPosition from, int r, int c, int promoRow) {
@@ -0,0 +1,331 @@
+package chess;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads PGN one game at a time, so files of any size can be processed as a
+ * stream. Comments, variations and annotation glyphs are skipped; only the tags,
+ * the main line's moves (as SAN text) and the result are kept.
+ * <p>
+ * Reading never fails on odd move text: anything that is not a move number or a
+ * result is passed through as a move, and rejected by {@link #replay} instead.
+ */
+public class PgnReader {
+
+    /**
+     * One game as written in the file.
+     */
+    public record PgnGame(Map<String, String> tags, List<String> moves, String result) { }
+
+    private final Reader in;
+    private int peeked = -2;
+
+    /**
+     * @param in read one character at a time, so pass something buffered
+     */
+    public PgnReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next game, or null when the input is exhausted
+     */
+    public PgnGame next() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        List<String> moves = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+
+        while (true) {
+            int c = peek();
+            if (c == -1) {
+                return (tags.isEmpty() && moves.isEmpty()) ? null : new PgnGame(tags, moves, "*");
+            }
+
+            if (Character.isWhitespace(c)) {
+                read();
+            } else if (c == '[') {
+                if (!moves.isEmpty()) {
+                    // A tag after move text starts the next game, which had no result token.
+                    return new PgnGame(tags, moves, "*");
+                }
+                read();
+                readTag(tags);
+            } else if (c == '{') {
+                skipUntil('}');
+            } else if (c == ';' || c == '%') {
+                skipUntil('\n');
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == '$') {
+                read();
+                while (Character.isDigit(peek())) {
+                    read();
+                }
+            } else {
+                readToken(token);
+                String text = token.toString();
+                if (isResult(text)) {
+                    return new PgnGame(tags, moves, text);
+                }
+                String move = stripMoveNumber(text);
+                if (!move.isEmpty()) {
+                    moves.add(move);
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays a game's moves from the position in its FEN tag, or the standard
+     * starting position if it has none, checking each one.
+     *
+     * @throws InvalidMoveException naming the first move that is not legal, or if the FEN tag is
+     *                              invalid or describes a position no game could reach
+     */
+    public static ChessGame replay(PgnGame pgn) throws InvalidMoveException {
+        String fen = pgn.tags().get("FEN");
+        ChessGame game;
+        try {
+            game = (fen == null) ? new ChessGame() : ChessGame.fromFen(fen);
+            game.requirePlayable();
+        } catch (IllegalArgumentException e) {
+            throw new InvalidMoveException(e.getMessage());
+        }
+
+        for (String san : pgn.moves()) {
+            int moveNumber = game.getFullmoveNumber();
+            try {
+                game.makeMove(parseSan(game, san));
+            } catch (InvalidMoveException e) {
+                throw new InvalidMoveException("Move " + moveNumber + " (" + san + "): " + e.getMessage());
+            }
+        }
+        if (!"*".equals(pgn.result())) {
+            game.setGameOver(true);
+        }
+        return game;
+    }
+
+    /**
+     * Finds the legal move in {@code game}'s position that {@code san} describes.
+     *
+     * @throws InvalidMoveException if the text is not SAN, or matches no legal move or several
+     */
+    public static ChessMove parseSan(ChessGame game, String san) throws InvalidMoveException {
+        String text = trimSuffixes(san);
+        ChessGame.TeamColor side = game.getTeamTurn();
+        int homeRow = (side == ChessGame.TeamColor.WHITE) ? 1 : 8;
+
+        if (text.equals("O-O") || text.equals("0-0")) {
+            return requireLegal(game, new ChessMove(new ChessPosition(homeRow, 5), new ChessPosition(homeRow, 7), null));
+        }
+        if (text.equals("O-O-O") || text.equals("0-0-0")) {
+            return requireLegal(game, new ChessMove(new ChessPosition(homeRow, 5), new ChessPosition(homeRow, 3), null));
+        }
+
+        ChessPiece.PieceType promotion = null;
+        int equals = text.indexOf('=');
+        if (equals >= 0) {
+            if (equals + 1 >= text.length()) {
+                throw new InvalidMoveException("Missing promotion piece");
+            }
+            promotion = pieceType(text.charAt(equals + 1));
+            text = text.substring(0, equals);
+        } else if (text.length() > 2 && "QRBN".indexOf(text.charAt(text.length() - 1)) >= 0
+                && Character.isDigit(text.charAt(text.length() - 2))) {
+            // Some writers leave out the '=': e8Q
+            promotion = pieceType(text.charAt(text.length() - 1));
+            text = text.substring(0, text.length() - 1);
+        }
+
+        if (text.length() < 2) {
+            throw new InvalidMoveException("Not a move");
+        }
+        ChessPiece.PieceType type = ChessPiece.PieceType.PAWN;
+        int start = 0;
+        if (Character.isUpperCase(text.charAt(0))) {
+            type = pieceType(text.charAt(0));
+            start = 1;
+        }
+        ChessPosition target = square(text, text.length() - 2);
+
+        // Whatever sits between the piece letter and the target narrows down the origin.
+        int fromColumn = 0;
+        int fromRow = 0;
+        for (int i = start; i < text.length() - 2; i++) {
+            char c = text.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromColumn = c - 'a' + 1;
+            } else if (c >= '1' && c <= '8') {
+                fromRow = c - '0';
+            } else if (c != 'x' && c != '-') {
+                throw new InvalidMoveException("Not a move");
+            }
+        }
+
+        ChessBoard board = game.getBoard();
+        ChessMove found = null;
+        for (int row = 1; row <= 8; row++) {
+            if (fromRow != 0 && row != fromRow) {
+                continue;
+            }
+            for (int col = 1; col <= 8; col++) {
+                if (fromColumn != 0 && col != fromColumn) {
+                    continue;
+                }
+                ChessPosition from = new ChessPosition(row, col);
+                ChessPiece piece = board.getPiece(from);
+                if (piece == null || piece.getTeamColor() != side || piece.getPieceType() != type) {
+                    continue;
+                }
+
+                ChessMove candidate = new ChessMove(from, target, promotion);
+                Collection<ChessMove> legal = game.validMoves(from);
+                if (legal != null && legal.contains(candidate)) {
+                    if (found != null) {
+                        throw new InvalidMoveException("Ambiguous move");
+                    }
+                    found = candidate;
+                }
+            }
+        }
+
+        if (found == null) {
+            throw new InvalidMoveException("Illegal move");
+        }
+        return found;
+    }
+
+    private static ChessMove requireLegal(ChessGame game, ChessMove move) throws InvalidMoveException {
+        Collection<ChessMove> legal = game.validMoves(move.getStartPosition());
+        if (legal == null || !legal.contains(move)) {
+            throw new InvalidMoveException("Illegal move");
+        }
+        return move;
+    }
+
+    private static String trimSuffixes(String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return san.substring(0, end);
+    }
+
+    private static ChessPiece.PieceType pieceType(char letter) throws InvalidMoveException {
+        return switch (letter) {
+            case 'K' -> ChessPiece.PieceType.KING;
+            case 'Q' -> ChessPiece.PieceType.QUEEN;
+            case 'R' -> ChessPiece.PieceType.ROOK;
+            case 'B' -> ChessPiece.PieceType.BISHOP;
+            case 'N' -> ChessPiece.PieceType.KNIGHT;
+            default -> throw new InvalidMoveException("Unknown piece " + letter);
+        };
+    }
+
+    private static ChessPosition square(String text, int index) throws InvalidMoveException {
+        char file = text.charAt(index);
+        char rank = text.charAt(index + 1);
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            throw new InvalidMoveException("Not a move");
+        }
+        return new ChessPosition(rank - '0', file - 'a' + 1);
+    }
+
+    private static boolean isResult(String token) {
+        return token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*");
+    }
+
+    // "12." and "12..." are move numbers; "12.e4" is a move number glued to a move.
+    private static String stripMoveNumber(String token) {
+        int i = 0;
+        while (i < token.length() && Character.isDigit(token.charAt(i))) {
+            i++;
+        }
+        if (i == 0 || i == token.length() || token.charAt(i) != '.') {
+            return token;
+        }
+        while (i < token.length() && token.charAt(i) == '.') {
+            i++;
+        }
+        return token.substring(i);
+    }
+
+    private void readTag(Map<String, String> tags) throws IOException {
+        StringBuilder name = new StringBuilder();
+        int c;
+        while ((c = read()) != -1 && c != '"' && c != ']') {
+            if (!Character.isWhitespace(c)) {
+                name.append((char) c);
+            }
+        }
+        if (c != '"') {
+            return;
+        }
+
+        StringBuilder value = new StringBuilder();
+        while ((c = read()) != -1 && c != '"') {
+            if (c == '\\') {
+                c = read();
+                if (c == -1) {
+                    break;
+                }
+            }
+            value.append((char) c);
+        }
+        skipUntil(']');
+        tags.put(name.toString(), value.toString());
+    }
+
+    private void readToken(StringBuilder token) throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = peek()) != -1 && !Character.isWhitespace(c) && "{}()[];$".indexOf(c) < 0) {
+            token.append((char) read());
+        }
+        if (token.isEmpty()) {
+            // A stray closing bracket or brace; drop it.
+            read();
+        }
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return;
+            } else if (c == '{') {
+                skipUntil('}');
+            }
+        }
+    }
+
+    private void skipUntil(char end) throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != end) {
+            // skip
+        }
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = in.read();
+        }
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        peeked = -2;
+        return c;
+    }
+}
@@ -0,0 +1,210 @@
+package chess;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes games as PGN, with moves in standard algebraic notation (SAN).
+ */
+public final class PgnWriter {
+    private static final int LINE_LENGTH = 79;
+    private static final String FILES = "abcdefgh";
+
+    private PgnWriter() {
+    }
+
+    /**
+     * Writes one game: the given tags in order, a Result tag if none was given,
+     * SetUp and FEN tags if the game did not start from the standard position,
+     * then the move text.
+     */
+    public static void write(Appendable out, Map<String, String> tags, ChessGame game) throws IOException {
+        String result = tags.containsKey("Result") ? tags.get("Result") : result(game);
+        ChessGame replay = game.startingPosition();
+        String startFen = replay.toFen();
+
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            writeTag(out, tag.getKey(), tag.getValue());
+        }
+        if (!tags.containsKey("Result")) {
+            writeTag(out, "Result", result);
+        }
+        if (!startFen.equals(ChessGame.STARTING_FEN) && !tags.containsKey("FEN")) {
+            writeTag(out, "SetUp", "1");
+            writeTag(out, "FEN", startFen);
+        }
+        out.append('\n');
+
+        StringBuilder line = new StringBuilder();
+        int moveNumber = replay.getFullmoveNumber();
+        boolean first = true;
+
+        for (ChessMove move : game.getMoveHistory()) {
+            if (replay.getTeamTurn() == ChessGame.TeamColor.WHITE) {
+                appendToken(out, line, moveNumber + ".");
+            } else if (first) {
+                appendToken(out, line, moveNumber + "...");
+            }
+            String san = describe(replay, move);
+            try {
+                replay.makeMove(move);
+            } catch (InvalidMoveException e) {
+                throw new IllegalStateException("Recorded move " + move + " is not legal", e);
+            }
+            appendToken(out, line, san + checkSuffix(replay));
+            if (replay.getTeamTurn() == ChessGame.TeamColor.WHITE) {
+                moveNumber++;
+            }
+            first = false;
+        }
+
+        appendToken(out, line, result);
+        out.append(line).append("\n\n");
+    }
+
+    /**
+     * @return the PGN result of the game's current position: a win for the side
+     * that delivered mate, a draw on stalemate, the seventy-five-move rule or
+     * fivefold repetition, otherwise "*" (unknown). Draws that must be claimed
+     * do not count, since nothing records a claim.
+     */
+    public static String result(ChessGame game) {
+        ChessGame.TeamColor toMove = game.getTeamTurn();
+        if (game.isInCheckmate(toMove)) {
+            return (toMove == ChessGame.TeamColor.WHITE) ? "0-1" : "1-0";
+        }
+        if (game.isInStalemate(toMove) || game.isSeventyFiveMoveRule() || game.isFivefoldRepetition()) {
+            return "1/2-1/2";
+        }
+        return "*";
+    }
+
+    /**
+     * @param game the position before the move; it is not changed
+     * @return the move in standard algebraic notation, e.g. {@code Nbd7}, {@code exd5} or {@code e8=Q+}
+     */
+    public static String toSan(ChessGame game, ChessMove move) {
+        String san = describe(game, move);
+        ChessGame after = new ChessGame(game);
+        try {
+            after.makeMove(move);
+        } catch (InvalidMoveException e) {
+            throw new IllegalArgumentException("Illegal move " + move, e);
+        }
+        return san + checkSuffix(after);
+    }
+
+    // SAN without the check or mate suffix, which needs the position after the move.
+    private static String describe(ChessGame game, ChessMove move) {
+        ChessBoard board = game.getBoard();
+        ChessPosition from = move.getStartPosition();
+        ChessPosition to = move.getEndPosition();
+        ChessPiece piece = board.getPiece(from);
+        if (piece == null) {
+            throw new IllegalArgumentException("No piece on the start square of " + move);
+        }
+
+        StringBuilder san = new StringBuilder();
+        int columnDelta = to.getColumn() - from.getColumn();
+
+        if (piece.getPieceType() == ChessPiece.PieceType.KING && Math.abs(columnDelta) == 2) {
+            san.append(columnDelta > 0 ? "O-O" : "O-O-O");
+        } else if (piece.getPieceType() == ChessPiece.PieceType.PAWN) {
+            // A pawn that changes file captured, even when the target square was empty (en passant).
+            if (columnDelta != 0) {
+                san.append(file(from)).append('x');
+            }
+            san.append(square(to));
+            if (move.getPromotionPiece() != null) {
+                san.append('=').append(letter(move.getPromotionPiece()));
+            }
+        } else {
+            san.append(letter(piece.getPieceType()));
+            san.append(disambiguation(game, piece, from, to));
+            if (board.getPiece(to) != null) {
+                san.append('x');
+            }
+            san.append(square(to));
+        }
+        return san.toString();
+    }
+
+    private static String checkSuffix(ChessGame after) {
+        ChessGame.TeamColor toMove = after.getTeamTurn();
+        if (!after.isInCheck(toMove)) {
+            return "";
+        }
+        return after.isInCheckmate(toMove) ? "#" : "+";
+    }
+
+    static char letter(ChessPiece.PieceType type) {
+        return switch (type) {
+            case KING -> 'K';
+            case QUEEN -> 'Q';
+            case ROOK -> 'R';
+            case BISHOP -> 'B';
+            case KNIGHT -> 'N';
+            case PAWN -> 'P';
+        };
+    }
+
+    static String square(ChessPosition position) {
+        return file(position) + String.valueOf(position.getRow());
+    }
+
+    private static char file(ChessPosition position) {
+        return FILES.charAt(position.getColumn() - 1);
+    }
+
+    // Other pieces of the same kind that could also reach the target decide how much of the origin to name.
+    private static String disambiguation(ChessGame game, ChessPiece piece, ChessPosition from, ChessPosition to) {
+        ChessBoard board = game.getBoard();
+        boolean ambiguous = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPosition other = new ChessPosition(row, col);
+                if (other.equals(from) || !piece.equals(board.getPiece(other))) {
+                    continue;
+                }
+                Collection<ChessMove> moves = game.validMoves(other);
+                if (moves == null || moves.stream().noneMatch(m -> m.getEndPosition().equals(to))) {
+                    continue;
+                }
+                ambiguous = true;
+                sameFile |= col == from.getColumn();
+                sameRank |= row == from.getRow();
+            }
+        }
+
+        if (!ambiguous) {
+            return "";
+        }
+        if (!sameFile) {
+            return String.valueOf(file(from));
+        }
+        if (!sameRank) {
+            return String.valueOf(from.getRow());
+        }
+        return square(from);
+    }
+
+    private static void writeTag(Appendable out, String name, String value) throws IOException {
+        String escaped = (value == null ? "?" : value).replace("\\", "\\\\").replace("\"", "\\\"");
+        out.append('[').append(name).append(" \"").append(escaped).append("\"]\n");
+    }
+
+    private static void appendToken(Appendable out, StringBuilder line, String token) throws IOException {
+        if (!line.isEmpty() && line.length() + 1 + token.length() > LINE_LENGTH) {
+            out.append(line).append('\n');
+            line.setLength(0);
+        }
+        if (!line.isEmpty()) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+}
@@ -2,10 +2,19 @@ package model;
 
 import chess.ChessGame;
 
+/**
+ * @param version incremented by every successful update; updates made from a
+ *                stale version are rejected
+ */
 public record GameData(
         int gameID,
         String whiteUsername,
         String blackUsername,
         String gameName,
-        ChessGame game) {}
+        ChessGame game,
+        int version) {
 
+    public GameData(int gameID, String whiteUsername, String blackUsername, String gameName, ChessGame game) {
+        this(gameID, whiteUsername, blackUsername, gameName, game, 0);
+    }
+}
@@ -0,0 +1,278 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ServerMessage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The compact binary form of WebSocket commands and server messages, used on
+ * connections that negotiate the {@value #SUBPROTOCOL} subprotocol. Connections
+ * without it keep using JSON text frames.
+ * <p>
+ * Each frame starts with a byte holding the command or message type's ordinal,
+ * so new types may only be added at the end of those enums. Then:
+ * <ul>
+ *   <li>commands: a flags byte, the game id as a varint, the auth token and,
+ *       for MAKE_MOVE, the move</li>
+ *   <li>LOAD_GAME: the game's {@linkplain ChessGame#writeSnapshot snapshot}, so
+ *       the move history is not sent</li>
+ *   <li>ERROR and NOTIFICATION: the text</li>
+ *   <li>MOVE_APPLIED: the move, the 8-byte position hash and the status ordinal</li>
+ * </ul>
+ * Varints are unsigned LEB128. Strings are a varint of their UTF-8 length plus
+ * one, with 0 meaning null, followed by the bytes. A move is two bytes: the
+ * start square in the top six bits, the end square in the next six and the
+ * promotion piece's ordinal plus one (0 for none) in the low four, where
+ * squares count from a1 = 0 to h8 = 63.
+ */
+public final class BinaryProtocol {
+    public static final String SUBPROTOCOL = "chess.binary.v1";
+
+    private static final int HAS_GAME_ID = 1;
+    private static final int HAS_MOVE = 2;
+    private static final int MOVE_UPDATES = 4;
+
+    private static final UserGameCommand.CommandType[] COMMAND_TYPES = UserGameCommand.CommandType.values();
+    private static final ServerMessage.ServerMessageType[] MESSAGE_TYPES = ServerMessage.ServerMessageType.values();
+    private static final ServerMessage.GameStatus[] STATUSES = ServerMessage.GameStatus.values();
+    private static final ChessPiece.PieceType[] PIECE_TYPES = ChessPiece.PieceType.values();
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * @param offered the value of a Sec-WebSocket-Protocol request header
+     * @return whether the client listed the binary subprotocol
+     */
+    public static boolean isOffered(String offered) {
+        if (offered == null) {
+            return false;
+        }
+        for (String protocol : offered.split(",")) {
+            if (protocol.trim().equals(SUBPROTOCOL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static byte[] encode(UserGameCommand command) {
+        byte[] token = utf8(command.getAuthToken());
+        Integer gameID = command.getGameID();
+        ChessMove move = command.getMove();
+
+        int flags = 0;
+        if (gameID != null) {
+            flags |= HAS_GAME_ID;
+        }
+        if (move != null) {
+            flags |= HAS_MOVE;
+        }
+        if (command.wantsMoveUpdates()) {
+            flags |= MOVE_UPDATES;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(2 + (gameID != null ? varintSize(gameID) : 0)
+                + stringSize(token) + (move != null ? 2 : 0));
+        out.put((byte) command.getCommandType().ordinal());
+        out.put((byte) flags);
+        if (gameID != null) {
+            putVarint(out, gameID);
+        }
+        putString(out, token);
+        if (move != null) {
+            putMove(out, move);
+        }
+        return out.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a command
+     */
+    public static UserGameCommand decodeCommand(ByteBuffer in) {
+        try {
+            UserGameCommand.CommandType type = COMMAND_TYPES[index(in.get(), COMMAND_TYPES.length, "command type")];
+            int flags = in.get() & 0xFF;
+            Integer gameID = ((flags & HAS_GAME_ID) != 0) ? getVarint(in) : null;
+            String authToken = getString(in);
+            ChessMove move = ((flags & HAS_MOVE) != 0) ? getMove(in) : null;
+            requireEnd(in);
+
+            if (type == UserGameCommand.CommandType.MAKE_MOVE) {
+                return new UserGameCommand(authToken, gameID, move);
+            }
+            return new UserGameCommand(type, authToken, gameID, (flags & MOVE_UPDATES) != 0);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Frame ends too soon");
+        }
+    }
+
+    public static byte[] encode(ServerMessage message) {
+        ServerMessage.ServerMessageType type = message.getServerMessageType();
+        ByteBuffer out;
+        switch (type) {
+            case LOAD_GAME -> {
+                out = ByteBuffer.allocate(1 + ChessGame.SNAPSHOT_SIZE);
+                out.put((byte) type.ordinal());
+                message.getGame().writeSnapshot(out);
+            }
+            case ERROR, NOTIFICATION -> {
+                byte[] text = utf8(type == ServerMessage.ServerMessageType.ERROR
+                        ? message.getErrorMessage() : message.getMessage());
+                out = ByteBuffer.allocate(1 + stringSize(text));
+                out.put((byte) type.ordinal());
+                putString(out, text);
+            }
+            case MOVE_APPLIED -> {
+                out = ByteBuffer.allocate(12);
+                out.put((byte) type.ordinal());
+                putMove(out, message.getMove());
+                out.putLong(message.getPositionHash());
+                out.put((byte) message.getStatus().ordinal());
+            }
+            default -> throw new IllegalArgumentException("Unknown message type " + type);
+        }
+        return out.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a server message
+     */
+    public static ServerMessage decodeServerMessage(ByteBuffer in) {
+        try {
+            ServerMessage.ServerMessageType type = MESSAGE_TYPES[index(in.get(), MESSAGE_TYPES.length, "message type")];
+            ServerMessage message = switch (type) {
+                case LOAD_GAME -> new ServerMessage(type, ChessGame.readSnapshot(in), null, null);
+                case ERROR -> new ServerMessage(type, null, getString(in), null);
+                case NOTIFICATION -> new ServerMessage(type, null, null, getString(in));
+                case MOVE_APPLIED -> {
+                    ChessMove move = getMove(in);
+                    long hash = in.getLong();
+                    yield ServerMessage.moveApplied(move, hash, STATUSES[index(in.get(), STATUSES.length, "status")]);
+                }
+            };
+            requireEnd(in);
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Frame ends too soon");
+        }
+    }
+
+    private static int index(byte value, int count, String what) {
+        int index = value & 0xFF;
+        if (index >= count) {
+            throw new IllegalArgumentException("Unknown " + what + " " + index);
+        }
+        return index;
+    }
+
+    private static void requireEnd(ByteBuffer in) {
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected bytes at the end of the frame");
+        }
+    }
+
+    private static void putMove(ByteBuffer out, ChessMove move) {
+        ChessPiece.PieceType promotion = move.getPromotionPiece();
+        int packed = square(move.getStartPosition()) << 10
+                | square(move.getEndPosition()) << 4
+                | (promotion == null ? 0 : promotion.ordinal() + 1);
+        out.putShort((short) packed);
+    }
+
+    private static ChessMove getMove(ByteBuffer in) {
+        int packed = in.getShort() & 0xFFFF;
+        int promotion = packed & 0x0F;
+        if (promotion > PIECE_TYPES.length) {
+            throw new IllegalArgumentException("Unknown promotion piece " + promotion);
+        }
+        return new ChessMove(position(packed >>> 10), position((packed >>> 4) & 0x3F),
+                promotion == 0 ? null : PIECE_TYPES[promotion - 1]);
+    }
+
+    private static int square(ChessPosition position) {
+        int row = position.getRow();
+        int col = position.getColumn();
+        if (row < 1 || row > 8 || col < 1 || col > 8) {
+            throw new IllegalArgumentException("Square off the board: " + position);
+        }
+        return (row - 1) * 8 + col - 1;
+    }
+
+    private static ChessPosition position(int square) {
+        return new ChessPosition(square / 8 + 1, square % 8 + 1);
+    }
+
+    private static byte[] utf8(String text) {
+        return (text == null) ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return (bytes == null) ? 1 : varintSize(bytes.length + 1) + bytes.length;
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.put((byte) 0);
+            return;
+        }
+        putVarint(out, bytes.length + 1);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = getVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative string length");
+        }
+        if (length - 1 > in.remaining()) {
+            throw new IllegalArgumentException("String is longer than the frame");
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get() & 0xFF;
+            // The fifth byte holds only the top four bits of an int.
+            if (shift == 28 && b > 0x0F) {
+                throw new IllegalArgumentException("Varint does not fit in an int");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint is too long");
+    }
+}
@@ -8,19 +8,27 @@ public class UserGameCommand {
         CONNECT,
         MAKE_MOVE,
         LEAVE,
-        RESIGN
+        RESIGN,
+        RESYNC
     }
 
     private final CommandType commandType;
     private final String authToken;
     private final Integer gameID;
     private final ChessMove move;
+    // Set on CONNECT by clients that apply MOVE_APPLIED messages themselves instead of receiving LOAD_GAME.
+    private final Boolean moveUpdates;
 
     public UserGameCommand(CommandType commandType, String authToken, Integer gameID) {
+        this(commandType, authToken, gameID, false);
+    }
+
+    public UserGameCommand(CommandType commandType, String authToken, Integer gameID, boolean moveUpdates) {
         this.commandType = commandType;
         this.authToken = authToken;
         this.gameID = gameID;
         this.move = null;
+        this.moveUpdates = moveUpdates ? Boolean.TRUE : null;
     }
 
     public UserGameCommand(String authToken, Integer gameID, ChessMove move) {
@@ -28,6 +36,7 @@ public class UserGameCommand {
         this.authToken = authToken;
         this.gameID = gameID;
         this.move = move;
+        this.moveUpdates = null;
     }
 
     public CommandType getCommandType() {
@@ -45,4 +54,8 @@ public class UserGameCommand {
     public ChessMove getMove() {
         return move;
     }
+
+    public boolean wantsMoveUpdates() {
+        return Boolean.TRUE.equals(moveUpdates);
+    }
 }
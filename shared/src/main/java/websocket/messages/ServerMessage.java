@@ -1,29 +1,62 @@
 package websocket.messages;
 
 import chess.ChessGame;
+import chess.ChessMove;
 
 public class ServerMessage {
 
     public enum ServerMessageType {
         LOAD_GAME,
         ERROR,
-        NOTIFICATION
+        NOTIFICATION,
+        /**
+         * A move was made. Sent instead of LOAD_GAME to clients that asked for
+         * move updates; a client whose position hash no longer matches after
+         * applying the move should send RESYNC to get a LOAD_GAME.
+         */
+        MOVE_APPLIED
+    }
+
+    /**
+     * The state of the game after a move, from the point of view of the side to move.
+     */
+    public enum GameStatus {
+        ACTIVE,
+        CHECK,
+        CHECKMATE,
+        STALEMATE,
+        DRAW
     }
 
     private final ServerMessageType serverMessageType;
     private final ChessGame game;
     private final String errorMessage;
     private final String message;
+    private final ChessMove move;
+    private final Long positionHash;
+    private final GameStatus status;
 
     public ServerMessage(ServerMessageType serverMessageType) {
         this(serverMessageType, null, null, null);
     }
 
     public ServerMessage(ServerMessageType serverMessageType, ChessGame game, String errorMessage, String message) {
+        this(serverMessageType, game, errorMessage, message, null, null, null);
+    }
+
+    private ServerMessage(ServerMessageType serverMessageType, ChessGame game, String errorMessage, String message,
+                          ChessMove move, Long positionHash, GameStatus status) {
         this.serverMessageType = serverMessageType;
         this.game = game;
         this.errorMessage = errorMessage;
         this.message = message;
+        this.move = move;
+        this.positionHash = positionHash;
+        this.status = status;
+    }
+
+    public static ServerMessage moveApplied(ChessMove move, long positionHash, GameStatus status) {
+        return new ServerMessage(ServerMessageType.MOVE_APPLIED, null, null, null, move, positionHash, status);
     }
 
     public ServerMessageType getServerMessageType() {
@@ -41,4 +74,16 @@ public class ServerMessage {
     public String getMessage() {
         return message;
     }
+
+    public ChessMove getMove() {
+        return move;
+    }
+
+    public Long getPositionHash() {
+        return positionHash;
+    }
+
+    public GameStatus getStatus() {
+        return status;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package chess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChessRulesTests {
+
+    // Reference node counts from the Chess Programming Wiki's perft results.
+    @Test
+    void perftStartingPosition() throws Exception {
+        ChessGame game = new ChessGame();
+        assertEquals(20, perft(game, 1));
+        assertEquals(400, perft(game, 2));
+        assertEquals(8_902, perft(game, 3));
+    }
+
+    @Test
+    void perftCastlingAndPromotions() throws Exception {
+        ChessGame game = ChessGame.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        assertEquals(48, perft(game, 1));
+        assertEquals(2_039, perft(game, 2));
+    }
+
+    @Test
+    void perftEnPassantAndPins() throws Exception {
+        ChessGame game = ChessGame.fromFen("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        assertEquals(14, perft(game, 1));
+        assertEquals(191, perft(game, 2));
+        assertEquals(2_812, perft(game, 3));
+    }
+
+    @Test
+    void castlingMovesTheRook() throws Exception {
+        ChessGame game = ChessGame.fromFen("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        game.makeMove(move("e1g1"));
+        game.makeMove(move("e8c8"));
+
+        assertEquals("2kr3r/8/8/8/8/8/8/R4RK1 w - - 2 2", game.toFen());
+    }
+
+    @Test
+    void cannotCastleThroughCheck() {
+        ChessGame game = ChessGame.fromFen("r3k2r/8/8/8/8/8/5r2/R3K2R w KQkq - 0 1");
+        Collection<ChessMove> moves = game.validMoves(new ChessPosition(1, 5));
+
+        assertFalse(moves.contains(move("e1g1")));
+        assertTrue(moves.contains(move("e1c1")));
+    }
+
+    @Test
+    void enPassantRemovesTheCapturedPawn() throws Exception {
+        ChessGame game = ChessGame.fromFen("4k3/3p4/8/4P3/8/8/8/4K3 b - - 0 1");
+        game.makeMove(move("d7d5"));
+        game.makeMove(move("e5d6"));
+
+        assertEquals("4k3/8/3P4/8/8/8/8/4K3 b - - 0 2", game.toFen());
+    }
+
+    @Test
+    void enPassantExpiresAfterOneMove() throws Exception {
+        ChessGame game = ChessGame.fromFen("4k3/3p4/8/4P3/8/8/8/4K3 b - - 0 1");
+        game.makeMove(move("d7d5"));
+        game.makeMove(move("e1f1"));
+        game.makeMove(move("e8f8"));
+
+        assertFalse(game.validMoves(new ChessPosition(5, 5)).contains(move("e5d6")));
+    }
+
+    @Test
+    void threefoldRepetition() throws Exception {
+        ChessGame game = new ChessGame();
+        for (int i = 0; i < 2; i++) {
+            assertFalse(game.isThreefoldRepetition());
+            game.makeMove(move("g1f3"));
+            game.makeMove(move("g8f6"));
+            game.makeMove(move("f3g1"));
+            game.makeMove(move("f6g8"));
+        }
+
+        assertTrue(game.isThreefoldRepetition());
+        assertEquals(new ChessGame().getPositionHash(), game.getPositionHash());
+        // Only claimable, so the game goes on.
+        assertFalse(game.isFivefoldRepetition());
+        assertEquals("*", PgnWriter.result(game));
+    }
+
+    @Test
+    void fivefoldRepetition() throws Exception {
+        ChessGame game = new ChessGame();
+        for (int i = 0; i < 4; i++) {
+            assertFalse(game.isFivefoldRepetition());
+            game.makeMove(move("g1f3"));
+            game.makeMove(move("g8f6"));
+            game.makeMove(move("f3g1"));
+            game.makeMove(move("f6g8"));
+        }
+
+        assertTrue(game.isFivefoldRepetition());
+        assertEquals("1/2-1/2", PgnWriter.result(game));
+    }
+
+    @Test
+    void incrementalHashMatchesAFreshOne() throws Exception {
+        ChessGame game = ChessGame.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        game.makeMove(move("e1c1"));
+        game.makeMove(move("b4c3"));
+        game.makeMove(move("a2a4"));
+
+        assertEquals(ChessGame.fromFen(game.toFen()).getPositionHash(), game.getPositionHash());
+    }
+
+    @Test
+    void fiftyMoveRule() throws Exception {
+        ChessGame game = ChessGame.fromFen("4k3/8/8/8/8/8/8/4K2R w - - 99 80");
+        assertFalse(game.isFiftyMoveRule());
+
+        game.makeMove(move("h1h2"));
+
+        assertTrue(game.isFiftyMoveRule());
+        assertFalse(game.isSeventyFiveMoveRule());
+        assertEquals("*", PgnWriter.result(game));
+    }
+
+    @Test
+    void seventyFiveMoveRule() throws Exception {
+        ChessGame game = ChessGame.fromFen("4k3/8/8/8/8/8/8/4K2R w - - 149 105");
+        assertFalse(game.isSeventyFiveMoveRule());
+
+        game.makeMove(move("h1h2"));
+
+        assertTrue(game.isSeventyFiveMoveRule());
+        assertEquals("1/2-1/2", PgnWriter.result(game));
+    }
+
+    private static long perft(ChessGame game, int depth) throws InvalidMoveException {
+        long nodes = 0;
+        for (int row = 1; row <= 8; row++) {
+            for (int col = 1; col <= 8; col++) {
+                ChessPosition from = new ChessPosition(row, col);
+                ChessPiece piece = game.getBoard().getPiece(from);
+                if (piece == null || piece.getTeamColor() != game.getTeamTurn()) {
+                    continue;
+                }
+                for (ChessMove move : game.validMoves(from)) {
+                    if (depth == 1) {
+                        nodes++;
+                    } else {
+                        ChessGame next = new ChessGame(game);
+                        next.makeMove(move);
+                        nodes += perft(next, depth - 1);
+                    }
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static ChessMove move(String uci) {
+        return new ChessMove(square(uci.substring(0, 2)), square(uci.substring(2, 4)), null);
+    }
+
+    private static ChessPosition square(String name) {
+        return new ChessPosition(name.charAt(1) - '0', name.charAt(0) - 'a' + 1);
+    }
+}
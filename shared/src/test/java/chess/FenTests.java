@@ -0,0 +1,79 @@
+package chess;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FenTests {
+
+    @Test
+    void newGameIsTheStartingPosition() {
+        assertEquals(ChessGame.STARTING_FEN, new ChessGame().toFen());
+        assertEquals(new ChessGame(), ChessGame.fromFen(ChessGame.STARTING_FEN));
+    }
+
+    @Test
+    void roundTripsEveryField() {
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b Kq e3 12 34";
+        ChessGame game = ChessGame.fromFen(fen);
+
+        assertEquals(fen, game.toFen());
+        assertEquals(ChessGame.TeamColor.BLACK, game.getTeamTurn());
+        assertEquals(new ChessPosition(3, 5), game.getEnPassantTarget());
+        assertEquals(12, game.getHalfmoveClock());
+        assertEquals(34, game.getFullmoveNumber());
+        assertEquals(new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KNIGHT),
+                game.getBoard().getPiece(new ChessPosition(5, 5)));
+    }
+
+    @Test
+    void countersAreOptional() {
+        ChessGame game = ChessGame.fromFen("8/8/8/4k3/8/8/8/4K3 w - -");
+
+        assertEquals("8/8/8/4k3/8/8/8/4K3 w - - 0 1", game.toFen());
+    }
+
+    @Test
+    void movesUpdateTheState() throws Exception {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+        assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", game.toFen());
+
+        game.makeMove(new ChessMove(new ChessPosition(8, 7), new ChessPosition(6, 6), null));
+        game.makeMove(new ChessMove(new ChessPosition(1, 5), new ChessPosition(2, 5), null));
+        game.makeMove(new ChessMove(new ChessPosition(8, 8), new ChessPosition(8, 7), null));
+        assertEquals("rnbqkbr1/pppppppp/5n2/8/4P3/8/PPPPKPPP/RNBQ1BNR w q - 3 3", game.toFen());
+    }
+
+    @Test
+    void rejectsMalformedFen() {
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen(""));
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen("8/8/8/8/8/8/8 w - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen("9/8/8/8/8/8/8/8 w - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen("8/8/8/8/8/8/8/7x w - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen("8/8/8/8/8/8/8/8 x - - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen("8/8/8/8/8/8/8/8 w KX - 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen("8/8/8/8/8/8/8/8 w - e4 0 1"));
+        assertThrows(IllegalArgumentException.class, () -> ChessGame.fromFen("8/8/8/8/8/8/8/8 w - - a 1"));
+    }
+
+    @Test
+    void pgnCarriesTheStartPosition() throws Exception {
+        String fen = "4k3/8/8/8/8/8/4P3/4K3 w - - 0 40";
+        ChessGame game = ChessGame.fromFen(fen);
+        game.makeMove(new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null));
+
+        StringBuilder pgn = new StringBuilder();
+        PgnWriter.write(pgn, new LinkedHashMap<>(Map.of("Event", "endgame")), game);
+        assertTrue(pgn.toString().contains("[FEN \"" + fen + "\"]"));
+        assertTrue(pgn.toString().contains("40. e4 *"));
+
+        ChessGame replayed = PgnReader.replay(new PgnReader(new StringReader(pgn.toString())).next());
+        assertEquals(game.toFen(), replayed.toFen());
+        assertEquals(fen, replayed.startingPosition().toFen());
+    }
+}
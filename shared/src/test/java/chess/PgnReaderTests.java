@@ -0,0 +1,85 @@
+package chess;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PgnReaderTests {
+
+    @Test
+    void readsGamesSkippingCommentsAndVariations() throws Exception {
+        PgnReader reader = new PgnReader(new StringReader("""
+                [Event "first"]
+                [White "a \\"b\\" c"]
+
+                1. e4 {best by test} e5 (1... c5 2. Nf3) 2. Nf3 $1 Nc6 ; the usual
+                3.Bb5 1/2-1/2
+
+                [Event "second"]
+
+                1. d4 *
+                """));
+
+        PgnReader.PgnGame first = reader.next();
+        assertEquals("first", first.tags().get("Event"));
+        assertEquals("a \"b\" c", first.tags().get("White"));
+        assertEquals(List.of("e4", "e5", "Nf3", "Nc6", "Bb5"), first.moves());
+        assertEquals("1/2-1/2", first.result());
+
+        PgnReader.PgnGame second = reader.next();
+        assertEquals(List.of("d4"), second.moves());
+        assertEquals("*", second.result());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    void replaysWhatTheWriterWrote() throws Exception {
+        ChessGame game = new ChessGame();
+        for (String san : List.of("e4", "e5", "Bc4", "Nc6", "Qh5", "Nf6", "Qxf7#")) {
+            game.makeMove(PgnReader.parseSan(game, san));
+        }
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "casual");
+        StringBuilder pgn = new StringBuilder();
+        PgnWriter.write(pgn, tags, game);
+
+        ChessGame replayed = PgnReader.replay(new PgnReader(new StringReader(pgn.toString())).next());
+
+        assertEquals(game.getBoard(), replayed.getBoard());
+        assertEquals(game.getMoveHistory(), replayed.getMoveHistory());
+        assertTrue(replayed.isGameOver());
+    }
+
+    @Test
+    void rejectsIllegalAndAmbiguousMoves() {
+        PgnReader.PgnGame illegal = new PgnReader.PgnGame(Map.of(), List.of("e4", "e5", "Ke3"), "*");
+        InvalidMoveException ex = assertThrows(InvalidMoveException.class, () -> PgnReader.replay(illegal));
+        assertTrue(ex.getMessage().startsWith("Move 2 (Ke3)"));
+
+        PgnReader.PgnGame ambiguous = new PgnReader.PgnGame(Map.of(),
+                List.of("Nf3", "Nf6", "d3", "d6", "Nd2"), "*");
+        assertThrows(InvalidMoveException.class, () -> PgnReader.replay(ambiguous));
+    }
+
+    @Test
+    void rejectsSetupsNoGameCouldReach() {
+        for (String fen : List.of(
+                "8/8/8/8/8/8/8/R7 w - - 0 1",
+                "4k3/8/8/8/8/8/8/P3K3 w - - 0 1",
+                "p3k3/8/8/8/8/8/8/4K3 b - - 0 1",
+                "4k3/8/8/8/8/8/8/3KK3 w - - 0 1")) {
+            PgnReader.PgnGame setup = new PgnReader.PgnGame(Map.of("FEN", fen), List.of(), "*");
+            assertThrows(InvalidMoveException.class, () -> PgnReader.replay(setup), fen);
+        }
+
+        PgnReader.PgnGame endgame = new PgnReader.PgnGame(Map.of("FEN", "4k3/8/8/8/8/8/P7/4K3 w - - 0 1"),
+                List.of("a4"), "*");
+        assertDoesNotThrow(() -> PgnReader.replay(endgame));
+    }
+}
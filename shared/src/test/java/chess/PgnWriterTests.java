@@ -0,0 +1,87 @@
+package chess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PgnWriterTests {
+
+    @Test
+    void writesScholarsMate() throws Exception {
+        ChessGame game = new ChessGame();
+        play(game, "e2e4", "e7e5", "f1c4", "b8c6", "d1h5", "g8f6", "h5f7");
+
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("Event", "casual");
+        tags.put("White", "devin");
+        tags.put("Black", "jake");
+        StringBuilder out = new StringBuilder();
+        PgnWriter.write(out, tags, game);
+
+        assertEquals("""
+                [Event "casual"]
+                [White "devin"]
+                [Black "jake"]
+                [Result "1-0"]
+
+                1. e4 e5 2. Bc4 Nc6 3. Qh5 Nf6 4. Qxf7# 1-0
+
+                """, out.toString());
+    }
+
+    @Test
+    void disambiguatesByFileThenRank() throws Exception {
+        ChessBoard board = new ChessBoard();
+        board.addPiece(new ChessPosition(1, 5), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KING));
+        board.addPiece(new ChessPosition(8, 5), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KING));
+        board.addPiece(new ChessPosition(1, 1), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK));
+        board.addPiece(new ChessPosition(5, 1), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK));
+        board.addPiece(new ChessPosition(3, 8), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK));
+        ChessGame game = new ChessGame();
+        game.setBoard(board);
+
+        assertEquals("R1a3", PgnWriter.toSan(game, move("a1a3")));
+        assertEquals("R5a3", PgnWriter.toSan(game, move("a5a3")));
+        assertEquals("Rha3", PgnWriter.toSan(game, move("h3a3")));
+        assertEquals("Rh8+", PgnWriter.toSan(game, move("h3h8")));
+    }
+
+    @Test
+    void historyRestartsFromSetBoard() throws Exception {
+        ChessGame game = new ChessGame();
+        play(game, "e2e4");
+        ChessBoard board = new ChessBoard();
+        board.resetBoard();
+        game.setBoard(board);
+        game.setTeamTurn(ChessGame.TeamColor.WHITE);
+        play(game, "d2d4");
+
+        assertEquals(1, game.getMoveHistory().size());
+        assertEquals(game.getBoard(), playFromStart(game).getBoard());
+    }
+
+    private static ChessGame playFromStart(ChessGame game) throws InvalidMoveException {
+        ChessGame replay = game.startingPosition();
+        for (ChessMove move : game.getMoveHistory()) {
+            replay.makeMove(move);
+        }
+        return replay;
+    }
+
+    private static void play(ChessGame game, String... moves) throws InvalidMoveException {
+        for (String move : moves) {
+            game.makeMove(move(move));
+        }
+    }
+
+    private static ChessMove move(String uci) {
+        return new ChessMove(square(uci.substring(0, 2)), square(uci.substring(2, 4)), null);
+    }
+
+    private static ChessPosition square(String name) {
+        return new ChessPosition(name.charAt(1) - '0', name.charAt(0) - 'a' + 1);
+    }
+}
@@ -0,0 +1,112 @@
+package websocket;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+import org.junit.jupiter.api.Test;
+import websocket.commands.UserGameCommand;
+import websocket.messages.ServerMessage;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolTests {
+
+    @Test
+    void commandsRoundTrip() {
+        UserGameCommand connect = roundTrip(
+                new UserGameCommand(UserGameCommand.CommandType.CONNECT, "token-1", 300, true));
+        assertEquals(UserGameCommand.CommandType.CONNECT, connect.getCommandType());
+        assertEquals("token-1", connect.getAuthToken());
+        assertEquals(300, connect.getGameID());
+        assertTrue(connect.wantsMoveUpdates());
+        assertNull(connect.getMove());
+
+        ChessMove promotion = new ChessMove(new ChessPosition(7, 2), new ChessPosition(8, 1), ChessPiece.PieceType.KNIGHT);
+        UserGameCommand move = roundTrip(new UserGameCommand("token-2", 7, promotion));
+        assertEquals(UserGameCommand.CommandType.MAKE_MOVE, move.getCommandType());
+        assertEquals(promotion, move.getMove());
+        assertFalse(move.wantsMoveUpdates());
+
+        UserGameCommand leave = roundTrip(new UserGameCommand(UserGameCommand.CommandType.LEAVE, null, null));
+        assertNull(leave.getAuthToken());
+        assertNull(leave.getGameID());
+    }
+
+    @Test
+    void commandsAreSmall() {
+        byte[] frame = BinaryProtocol.encode(new UserGameCommand("0123456789abcdef0123456789abcdef", 42,
+                new ChessMove(new ChessPosition(2, 5), new ChessPosition(4, 5), null)));
+        // Type, flags, one-byte id, length byte, 32-byte token, two-byte move.
+        assertEquals(38, frame.length);
+    }
+
+    @Test
+    void loadGameCarriesThePosition() throws Exception {
+        ChessGame game = ChessGame.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w Kq - 3 20");
+        game.makeMove(new ChessMove(new ChessPosition(2, 1), new ChessPosition(4, 1), null));
+
+        byte[] frame = BinaryProtocol.encode(new ServerMessage(ServerMessage.ServerMessageType.LOAD_GAME, game, null, null));
+        assertEquals(1 + ChessGame.SNAPSHOT_SIZE, frame.length);
+
+        ChessGame decoded = BinaryProtocol.decodeServerMessage(ByteBuffer.wrap(frame)).getGame();
+        assertEquals(game.toFen(), decoded.toFen());
+        assertEquals(game.getPositionHash(), decoded.getPositionHash());
+        assertFalse(decoded.isGameOver());
+        assertTrue(decoded.getMoveHistory().isEmpty());
+
+        // The en passant capture the snapshot recorded is playable on the decoded game.
+        decoded.makeMove(new ChessMove(new ChessPosition(4, 2), new ChessPosition(3, 1), null));
+    }
+
+    @Test
+    void messagesRoundTrip() {
+        ServerMessage error = decode(new ServerMessage(ServerMessage.ServerMessageType.ERROR, null, "Error: ünïcode", null));
+        assertEquals("Error: ünïcode", error.getErrorMessage());
+
+        ServerMessage notification = decode(new ServerMessage(ServerMessage.ServerMessageType.NOTIFICATION, null, null, ""));
+        assertEquals("", notification.getMessage());
+
+        ChessMove castle = new ChessMove(new ChessPosition(1, 5), new ChessPosition(1, 7), null);
+        ServerMessage applied = decode(ServerMessage.moveApplied(castle, -1234567890123L, ServerMessage.GameStatus.CHECK));
+        assertEquals(ServerMessage.ServerMessageType.MOVE_APPLIED, applied.getServerMessageType());
+        assertEquals(castle, applied.getMove());
+        assertEquals(-1234567890123L, applied.getPositionHash());
+        assertEquals(ServerMessage.GameStatus.CHECK, applied.getStatus());
+    }
+
+    @Test
+    void malformedFramesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(new byte[] {})));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(new byte[] {99, 0, 1})));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(new byte[] {0, 1, 5, 50})));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeServerMessage(ByteBuffer.wrap(new byte[] {0, 1, 2})));
+    }
+
+    @Test
+    void oversizedVarintsAreRejected() {
+        // A string length whose five-byte varint wraps to a negative int.
+        byte[] negativeLength = {0, 0, (byte) 0xFB, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(negativeLength)));
+
+        byte[] tooWide = {0, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10};
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.decodeCommand(ByteBuffer.wrap(tooWide)));
+    }
+
+    @Test
+    void binaryMustBeOffered() {
+        assertTrue(BinaryProtocol.isOffered("chess.json, " + BinaryProtocol.SUBPROTOCOL));
+        assertFalse(BinaryProtocol.isOffered("chess.binary.v2"));
+        assertFalse(BinaryProtocol.isOffered(null));
+    }
+
+    private static UserGameCommand roundTrip(UserGameCommand command) {
+        return BinaryProtocol.decodeCommand(ByteBuffer.wrap(BinaryProtocol.encode(command)));
+    }
+
+    private static ServerMessage decode(ServerMessage message) {
+        return BinaryProtocol.decodeServerMessage(ByteBuffer.wrap(BinaryProtocol.encode(message)));
+    }
+}